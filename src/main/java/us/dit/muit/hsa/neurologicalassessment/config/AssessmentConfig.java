@@ -0,0 +1,12 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Registra las propiedades {@code assessment.*} de la API de tareas.
+ */
+@Configuration
+@EnableConfigurationProperties(AssessmentProperties.class)
+public class AssessmentConfig {
+}
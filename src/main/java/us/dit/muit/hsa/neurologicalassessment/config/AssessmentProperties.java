@@ -0,0 +1,272 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.time.Duration;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Propiedades de configuración de la API de tareas de la evaluación
+ * (prefijo {@code assessment} en application.properties).
+ */
+@ConfigurationProperties(prefix = "assessment")
+public class AssessmentProperties {
+
+    private final Inbox inbox = new Inbox();
+
+    private final Stream stream = new Stream();
+
+    private final Bulk bulk = new Bulk();
+
+    private final Token token = new Token();
+
+    private final Svg svg = new Svg();
+
+    public Inbox getInbox() {
+        return inbox;
+    }
+
+    public Stream getStream() {
+        return stream;
+    }
+
+    public Bulk getBulk() {
+        return bulk;
+    }
+
+    public Token getToken() {
+        return token;
+    }
+
+    public Svg getSvg() {
+        return svg;
+    }
+
+    /**
+     * Índice en memoria de las tareas activas por usuario y por grupo.
+     */
+    public static class Inbox {
+
+        /**
+         * Cada cuánto se compara el índice con las instancias del proceso y se
+         * corrigen las diferencias (0 = sólo al arrancar).
+         */
+        private Duration consistencyCheckInterval = Duration.ofMinutes(10);
+
+        public Duration getConsistencyCheckInterval() {
+            return consistencyCheckInterval;
+        }
+
+        public void setConsistencyCheckInterval(Duration consistencyCheckInterval) {
+            this.consistencyCheckInterval = consistencyCheckInterval;
+        }
+    }
+
+    /**
+     * Flujo Server-Sent Events de cambios de tareas e instancias
+     * ({@code /assessment/tasks/stream}).
+     */
+    public static class Stream {
+
+        /** Conexiones abiertas simultáneamente; el resto se rechaza con 503. */
+        private int maxSubscribers = 500;
+
+        /**
+         * Eventos pendientes de enviar por conexión; si se llena se descartan y
+         * se envía un único evento {@code resync}.
+         */
+        private int queueCapacity = 100;
+
+        /** Cada cuánto se envía un comentario para mantener viva la conexión. */
+        private Duration heartbeatInterval = Duration.ofSeconds(15);
+
+        /** Duración máxima de una conexión; el cliente vuelve a conectarse. */
+        private Duration timeout = Duration.ofMinutes(30);
+
+        public int getMaxSubscribers() {
+            return maxSubscribers;
+        }
+
+        public void setMaxSubscribers(int maxSubscribers) {
+            this.maxSubscribers = maxSubscribers;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getHeartbeatInterval() {
+            return heartbeatInterval;
+        }
+
+        public void setHeartbeatInterval(Duration heartbeatInterval) {
+            this.heartbeatInterval = heartbeatInterval;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    /**
+     * Cumplimentación de tareas en bloque
+     * ({@code POST /assessment/tasks/complete}).
+     */
+    public static class Bulk {
+
+        /** Tareas admitidas en una misma petición. */
+        private int maxItems = 500;
+
+        /**
+         * Instancias distintas que se procesan a la vez; las tareas de una
+         * misma instancia se completan siempre de una en una.
+         */
+        private int parallelism = 4;
+
+        public int getMaxItems() {
+            return maxItems;
+        }
+
+        public void setMaxItems(int maxItems) {
+            this.maxItems = maxItems;
+        }
+
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        public void setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+        }
+    }
+
+    /**
+     * Autenticación con tokens firmados ({@code POST /auth/token}), para no
+     * comprobar la contraseña en cada petición.
+     */
+    public static class Token {
+
+        /** Activa la emisión de tokens y su aceptación como {@code Bearer}. */
+        private boolean enabled = false;
+
+        /** Validez de cada token; al caducar se pide otro. */
+        private Duration ttl = Duration.ofMinutes(15);
+
+        /**
+         * Clave HMAC en Base64 estándar (al menos 32 bytes). Vacía: se genera una al
+         * arrancar y los tokens dejan de valer con cada reinicio; con varias
+         * réplicas debe ser la misma en todas.
+         */
+        private String secret = "";
+
+        /** Tokens ya verificados que se recuerdan para no volver a calcular su firma. */
+        private int cacheSize = 10_000;
+
+        /**
+         * Sólo admite Basic para pedir tokens; el resto de la API exige
+         * {@code Bearer}.
+         */
+        private boolean basicLoginOnly = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        public void setSecret(String secret) {
+            this.secret = secret;
+        }
+
+        public int getCacheSize() {
+            return cacheSize;
+        }
+
+        public void setCacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+        }
+
+        public boolean isBasicLoginOnly() {
+            return basicLoginOnly;
+        }
+
+        public void setBasicLoginOnly(boolean basicLoginOnly) {
+            this.basicLoginOnly = basicLoginOnly;
+        }
+    }
+
+    /**
+     * SVG de instancias ({@code /svg/{processId}/{instanceId}}): caché y
+     * colores con los que se marcan sus nodos.
+     */
+    public static class Svg {
+
+        /**
+         * Caracteres de SVG que se guardan como máximo entre todas las
+         * instancias; al superarlo se descartan las menos usadas.
+         */
+        private long cacheMaxChars = 20_000_000;
+
+        /** Relleno de los nodos completados; por defecto, el de Kogito. */
+        private String completedColor = "#C0C0C0";
+
+        /** Borde de los nodos completados. */
+        private String completedBorderColor = "#030303";
+
+        /** Borde de los nodos activos. */
+        private String activeBorderColor = "#FF0000";
+
+        public long getCacheMaxChars() {
+            return cacheMaxChars;
+        }
+
+        public void setCacheMaxChars(long cacheMaxChars) {
+            this.cacheMaxChars = cacheMaxChars;
+        }
+
+        public String getCompletedColor() {
+            return completedColor;
+        }
+
+        public void setCompletedColor(String completedColor) {
+            this.completedColor = completedColor;
+        }
+
+        public String getCompletedBorderColor() {
+            return completedBorderColor;
+        }
+
+        public void setCompletedBorderColor(String completedBorderColor) {
+            this.completedBorderColor = completedBorderColor;
+        }
+
+        public String getActiveBorderColor() {
+            return activeBorderColor;
+        }
+
+        public void setActiveBorderColor(String activeBorderColor) {
+            this.activeBorderColor = activeBorderColor;
+        }
+    }
+}
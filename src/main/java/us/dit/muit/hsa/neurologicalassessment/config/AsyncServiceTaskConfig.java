@@ -0,0 +1,60 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import org.kie.kogito.Application;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItemHandler;
+import org.kie.kogito.process.Processes;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.services.AppointmentDAOService;
+import us.dit.muit.hsa.neurologicalassessment.services.AsyncAppointmentWorkItemInterceptor;
+
+/**
+ * Activa ({@code fhir.async.enabled=true}) la ejecución asíncrona de la tarea
+ * de servicio "Solving Appointment Data".
+ * <p>
+ * Kogito registra el handler generado directamente en el proceso, por lo que
+ * no basta con registrar otro handler con el mismo nombre: se envuelve el bean
+ * generado con un proxy de clase, identificándolo por su nombre para no
+ * referenciar tipos generados en compile-time.
+ */
+@Configuration
+public class AsyncServiceTaskConfig {
+
+    private static final String HANDLER_PREFIX = AppointmentDAOService.class.getName() + "_getAppointmentAttributes_";
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnProperty(prefix = "fhir.async", name = "enabled", havingValue = "true")
+    public static AsyncAppointmentWorkItemInterceptor asyncAppointmentWorkItemInterceptor(
+            ObjectProvider<AppointmentDAOService> service, ObjectProvider<Processes> processes,
+            ObjectProvider<Application> application, ObjectProvider<FhirProperties> properties,
+            ObjectProvider<MeterRegistry> meterRegistry) {
+        return new AsyncAppointmentWorkItemInterceptor(service, processes, application,
+                properties.getObject(), meterRegistry.getObject());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "fhir.async", name = "enabled", havingValue = "true")
+    public static BeanPostProcessor asyncAppointmentServiceTask(
+            ObjectProvider<AsyncAppointmentWorkItemInterceptor> interceptor) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (!(bean instanceof KogitoWorkItemHandler)
+                        || !((KogitoWorkItemHandler) bean).getName().startsWith(HANDLER_PREFIX)) {
+                    return bean;
+                }
+                ProxyFactory proxyFactory = new ProxyFactory(bean);
+                // Proxy de clase: el proceso generado inyecta el handler por su tipo concreto
+                proxyFactory.setProxyTargetClass(true);
+                proxyFactory.addAdvice(interceptor.getObject());
+                return proxyFactory.getProxy(bean.getClass().getClassLoader());
+            }
+        };
+    }
+}
@@ -0,0 +1,207 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Emisión y validación de tokens de acceso firmados con HMAC-SHA256.
+ * <p>
+ * El token lleva el nombre del usuario, sus authorities y la fecha de
+ * caducidad, de modo que validarlo no requiere consultar el almacén de
+ * usuarios ni comprobar la contraseña: basta con recalcular la firma. Los
+ * tokens ya verificados se guardan en una caché acotada
+ * ({@code assessment.token.cache-size}) hasta que caducan, así que la mayoría
+ * de las peticiones ni siquiera calculan el HMAC.
+ * <p>
+ * Formato: {@code base64url(usuario).caducidad.base64url(authorities).firma},
+ * con la caducidad en segundos desde la época y las authorities separadas por
+ * saltos de línea.
+ */
+@Component
+@ConditionalOnProperty(prefix = "assessment.token", name = "enabled", havingValue = "true")
+public class AuthTokenService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthTokenService.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final SecretKeySpec key;
+    private final Duration ttl;
+    private final Clock clock;
+    private final Cache<String, Verified> verified;
+    private final Counter issued;
+    private final Counter rejected;
+
+    @Autowired
+    public AuthTokenService(AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this(properties.getToken(), meterRegistry, Clock.systemUTC());
+    }
+
+    AuthTokenService(AssessmentProperties.Token config, MeterRegistry meterRegistry, Clock clock) {
+        this.key = new SecretKeySpec(secret(config.getSecret()), ALGORITHM);
+        this.ttl = config.getTtl();
+        this.clock = clock;
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(config.getCacheSize())
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        this.issued = Counter.builder("assessment.token.issued")
+                .description("Tokens de acceso emitidos")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("assessment.token.rejected")
+                .description("Tokens de acceso rechazados por firma incorrecta, formato o caducidad")
+                .register(meterRegistry);
+    }
+
+    private static byte[] secret(String configured) {
+        if (configured == null || configured.isBlank()) {
+            logger.warn("assessment.token.secret not set, using a random key: tokens will not survive a restart");
+            byte[] random = new byte[32];
+            new SecureRandom().nextBytes(random);
+            return random;
+        }
+        byte[] secret;
+        try {
+            secret = Base64.getDecoder().decode(configured.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("assessment.token.secret must be standard Base64 (e.g. the output of "
+                    + "'openssl rand -base64 32')", e);
+        }
+        if (secret.length < 32) {
+            throw new IllegalStateException("assessment.token.secret must be at least 32 bytes");
+        }
+        return secret;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /** Emite un token para un usuario ya autenticado. */
+    public String issue(Authentication authentication) {
+        long expires = Instant.now(clock).plus(ttl).getEpochSecond();
+        List<String> authorities = new ArrayList<>();
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            authorities.add(authority.getAuthority());
+        }
+        String payload = encode(authentication.getName()) + "." + expires + "."
+                + encode(String.join("\n", authorities));
+        issued.increment();
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+
+    /**
+     * Valida un token.
+     *
+     * @return la autenticación que representa, o {@code null} si la firma no
+     *         coincide, el formato no es válido o ha caducado
+     */
+    public Authentication verify(String token) {
+        long now = Instant.now(clock).getEpochSecond();
+        Verified cached = verified.getIfPresent(token);
+        if (cached != null) {
+            if (cached.expires > now) {
+                return cached.authentication;
+            }
+            verified.invalidate(token);
+            rejected.increment();
+            return null;
+        }
+
+        Verified checked = check(token, now);
+        if (checked == null) {
+            rejected.increment();
+            return null;
+        }
+        verified.put(token, checked);
+        return checked.authentication;
+    }
+
+    private Verified check(String token, long now) {
+        String[] parts = token.split("\\.", -1);
+        if (parts.length != 4) {
+            return null;
+        }
+        try {
+            String payload = parts[0] + "." + parts[1] + "." + parts[2];
+            if (!MessageDigest.isEqual(sign(payload), DECODER.decode(parts[3]))) {
+                return null;
+            }
+            long expires = Long.parseLong(parts[1]);
+            if (expires <= now) {
+                return null;
+            }
+            String authorities = decode(parts[2]);
+            Collection<GrantedAuthority> granted = new ArrayList<>();
+            if (!authorities.isEmpty()) {
+                for (String authority : authorities.split("\n")) {
+                    granted.add(new SimpleGrantedAuthority(authority));
+                }
+            }
+            return new Verified(new UsernamePasswordAuthenticationToken(decode(parts[0]), null, granted), expires);
+        } catch (IllegalArgumentException e) {
+            // Base64 o caducidad mal formados
+            return null;
+        }
+    }
+
+    private byte[] sign(String payload) {
+        try {
+            // Mac no es seguro entre hilos y crearlo cuesta menos que sincronizarlo
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC not available", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return ENCODER.encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return new String(DECODER.decode(value), StandardCharsets.UTF_8);
+    }
+
+    private static final class Verified {
+        private final Authentication authentication;
+        private final long expires;
+
+        private Verified(Authentication authentication, long expires) {
+            this.authentication = authentication;
+            this.expires = expires;
+        }
+    }
+}
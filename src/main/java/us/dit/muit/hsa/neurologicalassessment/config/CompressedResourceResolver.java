@@ -0,0 +1,159 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.lang.Nullable;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.servlet.resource.AbstractResourceResolver;
+import org.springframework.web.servlet.resource.HttpResource;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+/**
+ * Sirve los recursos estáticos de texto (HTML, CSS, JS, SVG, JSON) desde
+ * memoria, comprimidos con gzip cuando el cliente lo acepta.
+ * <p>
+ * La primera vez que se pide un recurso se lee, se comprime y se calcula su
+ * ETag; las siguientes se reutiliza mientras el fichero no cambie. Cada
+ * codificación tiene su propia ETag fuerte, así que una caché intermedia
+ * nunca confunde la versión comprimida con la original. Los recursos
+ * pequeños o binarios (imágenes) se dejan pasar sin tocar.
+ * <p>
+ * El recurso devuelto depende de la petición, así que no debe ir detrás de
+ * un {@code CachingResourceResolver}.
+ */
+public class CompressedResourceResolver extends AbstractResourceResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompressedResourceResolver.class);
+
+    private static final Set<String> EXTENSIONS = Set.of("html", "css", "js", "svg", "json", "txt");
+
+    /** Por debajo de este tamaño la cabecera gzip se come lo que se ahorra. */
+    private static final int MIN_COMPRESS_SIZE = 1024;
+
+    private final Map<String, Encoded> encoded = new ConcurrentHashMap<>();
+
+    @Override
+    protected Resource resolveResourceInternal(@Nullable HttpServletRequest request, String requestPath,
+            List<? extends Resource> locations, ResourceResolverChain chain) {
+        Resource resource = chain.resolveResource(request, requestPath, locations);
+        if (resource == null || request == null || !isText(resource)) {
+            return resource;
+        }
+        try {
+            Encoded variants = encoded(resource);
+            boolean gzip = variants.gzip != null
+                    && GzipEncoding.isAccepted(request.getHeader(HttpHeaders.ACCEPT_ENCODING));
+            return new Variant(resource, variants, gzip);
+        } catch (IOException e) {
+            logger.warn("Could not read static resource {}: {}", requestPath, e.getMessage());
+            return resource;
+        }
+    }
+
+    @Override
+    protected String resolveUrlPathInternal(String resourceUrlPath, List<? extends Resource> locations,
+            ResourceResolverChain chain) {
+        return chain.resolveUrlPath(resourceUrlPath, locations);
+    }
+
+    private static boolean isText(Resource resource) {
+        String filename = resource.getFilename();
+        int dot = filename != null ? filename.lastIndexOf('.') : -1;
+        return dot >= 0 && EXTENSIONS.contains(filename.substring(dot + 1).toLowerCase());
+    }
+
+    private Encoded encoded(Resource resource) throws IOException {
+        String key = resource.getURL().toString();
+        long lastModified = resource.lastModified();
+        Encoded current = encoded.get(key);
+        if (current == null || current.lastModified != lastModified) {
+            byte[] content;
+            try (InputStream in = resource.getInputStream()) {
+                content = StreamUtils.copyToByteArray(in);
+            }
+            current = new Encoded(content, lastModified);
+            encoded.put(key, current);
+        }
+        return current;
+    }
+
+    /**
+     * ETag de la codificación que se serviría para esta petición, o
+     * {@code null} si el recurso no lo gestiona este resolver.
+     */
+    static String etagOf(Resource resource) {
+        return resource instanceof Variant ? ((Variant) resource).getETag() : null;
+    }
+
+    /** Contenido de un recurso en sus dos codificaciones. */
+    private static final class Encoded {
+        private final byte[] identity;
+        /** {@code null} si el recurso es demasiado pequeño para comprimirlo. */
+        private final byte[] gzip;
+        private final String hash;
+        private final long lastModified;
+
+        private Encoded(byte[] identity, long lastModified) {
+            this.identity = identity;
+            this.gzip = identity.length >= MIN_COMPRESS_SIZE ? GzipEncoding.compress(identity) : null;
+            this.hash = DigestUtils.md5DigestAsHex(identity);
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Una de las codificaciones del recurso, con su ETag y las cabeceras de
+     * negociación que añade el manejador de recursos de Spring.
+     */
+    private static final class Variant extends ByteArrayResource implements HttpResource {
+        private final Resource original;
+        private final boolean gzip;
+        private final String etag;
+
+        private Variant(Resource original, Encoded encoded, boolean gzip) {
+            super(gzip ? encoded.gzip : encoded.identity, original.getDescription());
+            this.original = original;
+            this.gzip = gzip;
+            this.etag = "\"" + encoded.hash + (gzip ? "-gzip" : "") + "\"";
+        }
+
+        String getETag() {
+            return etag;
+        }
+
+        @Override
+        public String getFilename() {
+            // El tipo de contenido se deduce de la extensión
+            return original.getFilename();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            return original.lastModified();
+        }
+
+        @Override
+        public HttpHeaders getResponseHeaders() {
+            HttpHeaders headers = new HttpHeaders();
+            headers.setETag(etag);
+            headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            if (gzip) {
+                headers.add(HttpHeaders.CONTENT_ENCODING, GzipEncoding.GZIP);
+            }
+            return headers;
+        }
+    }
+}
@@ -1,33 +1,77 @@
 package us.dit.muit.hsa.neurologicalassessment.config;
 
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.crypto.password.NoOpPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
 @EnableMethodSecurity(jsr250Enabled = true)
 public class DefaultWebSecurityConfig {
 
+    /** Endpoint que emite tokens a cambio de credenciales Basic. */
+    public static final String TOKEN_PATH = "/auth/token";
+
+    /**
+     * Con tokens activos, la emisión de tokens tiene su propia cadena que sólo
+     * admite Basic.
+     */
     @Bean
-    public SecurityFilterChain configure(HttpSecurity http) throws Exception {
+    @Order(1)
+    @ConditionalOnProperty(prefix = "assessment.token", name = "enabled", havingValue = "true")
+    public SecurityFilterChain tokenLogin(HttpSecurity http) throws Exception {
         http
+                .antMatcher(TOKEN_PATH)
                 .csrf().disable()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and()
                 .authorizeRequests()
-                .antMatchers("/**").authenticated()
+                .anyRequest().authenticated()
                 .and()
                 .httpBasic();
 
         return http.build();
     }
 
+    @Bean
+    public SecurityFilterChain configure(HttpSecurity http, ObjectProvider<AuthTokenService> tokens,
+            AssessmentProperties properties) throws Exception {
+        http
+                .csrf().disable()
+                // Cada petición trae sus credenciales: no se guarda el contexto en sesión
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
+                .and()
+                .authorizeRequests()
+                .antMatchers("/**").authenticated();
+
+        AuthTokenService tokenService = tokens.getIfAvailable();
+        if (tokenService != null) {
+            http.addFilterBefore(new TokenAuthenticationFilter(tokenService), BasicAuthenticationFilter.class);
+        }
+        if (tokenService == null || !properties.getToken().isBasicLoginOnly()) {
+            http.httpBasic();
+        } else {
+            http.exceptionHandling().authenticationEntryPoint((request, response, e) -> {
+                response.setHeader("WWW-Authenticate", "Bearer");
+                response.sendError(401, "Bearer token required, see " + TOKEN_PATH);
+            });
+        }
+
+        return http.build();
+    }
+
     @Autowired
     public void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
         // Nota: En Kogito, los grupos (GroupId) no llevan el prefijo ROLE_
@@ -49,4 +93,4 @@ public class DefaultWebSecurityConfig {
     public PasswordEncoder passwordEncoder() {
         return NoOpPasswordEncoder.getInstance();
     }
-}
\ No newline at end of file
+}
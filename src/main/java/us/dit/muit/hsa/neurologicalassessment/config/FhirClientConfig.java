@@ -0,0 +1,22 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Crea un único {@link FhirContext} R5 para toda la aplicación.
+ * Construir el contexto escanea el modelo completo de R5, por lo que se hace
+ * una sola vez al arrancar y se comparte entre todos los clientes.
+ */
+@Configuration
+@EnableConfigurationProperties(FhirProperties.class)
+public class FhirClientConfig {
+
+    @Bean
+    public FhirContext fhirContext() {
+        return FhirContext.forR5();
+    }
+}
@@ -0,0 +1,536 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+
+/**
+ * Propiedades de configuración de la integración con el servidor FHIR
+ * (prefijo {@code fhir} en application.properties).
+ */
+@ConfigurationProperties(prefix = "fhir")
+public class FhirProperties {
+
+    private final Client client = new Client();
+
+    private final Cache cache = new Cache();
+
+    private final Batch batch = new Batch();
+
+    private final Async async = new Async();
+
+    private final Lean lean = new Lean();
+
+    private final PractitionerIndex practitionerIndex = new PractitionerIndex();
+
+    private final Resilience resilience = new Resilience();
+
+    public Client getClient() {
+        return client;
+    }
+
+    public Cache getCache() {
+        return cache;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public Async getAsync() {
+        return async;
+    }
+
+    public Lean getLean() {
+        return lean;
+    }
+
+    public PractitionerIndex getPractitionerIndex() {
+        return practitionerIndex;
+    }
+
+    public Resilience getResilience() {
+        return resilience;
+    }
+
+    /**
+     * Configuración de los clientes REST de HAPI FHIR y de su pool de conexiones.
+     */
+    public static class Client {
+
+        /** Número máximo de clientes (uno por URL base de servidor) en el registro. */
+        private int maxClients = 16;
+
+        /** Conexiones HTTP máximas en el pool compartido. */
+        private int poolMaxTotal = 40;
+
+        /** Conexiones HTTP máximas por servidor. */
+        private int poolMaxPerRoute = 20;
+
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        private Duration socketTimeout = Duration.ofSeconds(10);
+
+        /** Tiempo máximo de espera para obtener una conexión del pool. */
+        private Duration connectionRequestTimeout = Duration.ofSeconds(5);
+
+        /** Tiempo de vida de las conexiones persistentes (keep-alive) del pool. */
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+        /** Validación del CapabilityStatement del servidor al crear clientes. */
+        private ServerValidationModeEnum serverValidation = ServerValidationModeEnum.ONCE;
+
+        public int getMaxClients() {
+            return maxClients;
+        }
+
+        public void setMaxClients(int maxClients) {
+            this.maxClients = maxClients;
+        }
+
+        public int getPoolMaxTotal() {
+            return poolMaxTotal;
+        }
+
+        public void setPoolMaxTotal(int poolMaxTotal) {
+            this.poolMaxTotal = poolMaxTotal;
+        }
+
+        public int getPoolMaxPerRoute() {
+            return poolMaxPerRoute;
+        }
+
+        public void setPoolMaxPerRoute(int poolMaxPerRoute) {
+            this.poolMaxPerRoute = poolMaxPerRoute;
+        }
+
+        public Duration getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public Duration getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public void setSocketTimeout(Duration socketTimeout) {
+            this.socketTimeout = socketTimeout;
+        }
+
+        public Duration getConnectionRequestTimeout() {
+            return connectionRequestTimeout;
+        }
+
+        public void setConnectionRequestTimeout(Duration connectionRequestTimeout) {
+            this.connectionRequestTimeout = connectionRequestTimeout;
+        }
+
+        public Duration getKeepAlive() {
+            return keepAlive;
+        }
+
+        public void setKeepAlive(Duration keepAlive) {
+            this.keepAlive = keepAlive;
+        }
+
+        public ServerValidationModeEnum getServerValidation() {
+            return serverValidation;
+        }
+
+        public void setServerValidation(ServerValidationModeEnum serverValidation) {
+            this.serverValidation = serverValidation;
+        }
+    }
+
+    /**
+     * Caché de citas ya resueltas (AppointmentDTO y versiones de los recursos).
+     */
+    public static class Cache {
+
+        private boolean enabled = true;
+
+        /** Número máximo de citas en caché. */
+        private long maxSize = 1000;
+
+        /** Tiempo durante el que una entrada se sirve sin consultar al servidor. */
+        private Duration ttl = Duration.ofSeconds(60);
+
+        /** Las entradas no usadas durante este tiempo se descartan definitivamente. */
+        private Duration maxIdle = Duration.ofMinutes(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+
+        public Duration getMaxIdle() {
+            return maxIdle;
+        }
+
+        public void setMaxIdle(Duration maxIdle) {
+            this.maxIdle = maxIdle;
+        }
+    }
+
+    /**
+     * Resolución de citas en lotes con una única búsqueda multi-id por servidor.
+     */
+    public static class Batch {
+
+        /**
+         * Ventana durante la que se acumulan las citas pedidas por los inicios de
+         * proceso antes de lanzar la búsqueda. Cero desactiva los micro-lotes.
+         */
+        private Duration window = Duration.ZERO;
+
+        /** Número máximo de citas por búsqueda (limita el tamaño de la URL). */
+        private int maxSize = 50;
+
+        public Duration getWindow() {
+            return window;
+        }
+
+        public void setWindow(Duration window) {
+            this.window = window;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    /**
+     * Ejecución asíncrona de la tarea de servicio "Solving Appointment Data":
+     * la consulta FHIR se hace en un pool acotado de E/S y la instancia
+     * continúa cuando llega el resultado, sin bloquear el hilo del motor.
+     */
+    public static class Async {
+
+        private boolean enabled = false;
+
+        /** Consultas FHIR simultáneas como máximo. */
+        private int maxConcurrency = 16;
+
+        /** Consultas en espera como máximo; por encima se ejecutan en el hilo llamante. */
+        private int queueCapacity = 500;
+
+        /** Espera entre intentos de completar la tarea si la instancia aún no se ha guardado. */
+        private Duration completionRetry = Duration.ofMillis(50);
+
+        /** Tiempo máximo para completar la tarea una vez obtenido el resultado. */
+        private Duration completionTimeout = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxConcurrency() {
+            return maxConcurrency;
+        }
+
+        public void setMaxConcurrency(int maxConcurrency) {
+            this.maxConcurrency = maxConcurrency;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Duration getCompletionRetry() {
+            return completionRetry;
+        }
+
+        public void setCompletionRetry(Duration completionRetry) {
+            this.completionRetry = completionRetry;
+        }
+
+        public Duration getCompletionTimeout() {
+            return completionTimeout;
+        }
+
+        public void setCompletionTimeout(Duration completionTimeout) {
+            this.completionTimeout = completionTimeout;
+        }
+    }
+
+    /**
+     * Modo ligero de resolución: la búsqueda pide sólo los elementos
+     * necesarios ({@code _elements}) y la respuesta se lee en streaming sin
+     * construir el modelo R5. Si falla, se repite con el modelo completo.
+     */
+    public static class Lean {
+
+        private boolean enabled = false;
+
+        /** Elementos pedidos al servidor; id y meta se devuelven siempre. */
+        private List<String> elements = new ArrayList<>(List.of("subject", "participant", "name", "identifier"));
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getElements() {
+            return elements;
+        }
+
+        public void setElements(List<String> elements) {
+            this.elements = elements;
+        }
+    }
+
+    /**
+     * Índice local de practitioners (referencia → id de actor en Kogito) de
+     * los servidores indicados. Se precarga al arrancar y se mantiene al día
+     * con consultas incrementales {@code Practitioner/_history?_since=}.
+     * Mientras está al día, las búsquedas de citas no incluyen a los
+     * practitioners.
+     */
+    public static class PractitionerIndex {
+
+        private boolean enabled = false;
+
+        /** URLs base de los servidores FHIR cuyos practitioners se indexan. */
+        private List<String> servers = new ArrayList<>();
+
+        /** Intervalo entre consultas incrementales. */
+        private Duration refreshInterval = Duration.ofMinutes(1);
+
+        /** Antigüedad máxima del índice; por encima se vuelven a incluir los practitioners. */
+        private Duration maxLag = Duration.ofMinutes(10);
+
+        /** Solape de cada consulta con la anterior, para cubrir desfases de reloj. */
+        private Duration overlap = Duration.ofSeconds(5);
+
+        /** Tamaño de página de la precarga y de las consultas incrementales. */
+        private int pageSize = 500;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getServers() {
+            return servers;
+        }
+
+        public void setServers(List<String> servers) {
+            this.servers = servers;
+        }
+
+        public Duration getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
+
+        public Duration getMaxLag() {
+            return maxLag;
+        }
+
+        public void setMaxLag(Duration maxLag) {
+            this.maxLag = maxLag;
+        }
+
+        public Duration getOverlap() {
+            return overlap;
+        }
+
+        public void setOverlap(Duration overlap) {
+            this.overlap = overlap;
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public void setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+        }
+    }
+
+    /**
+     * Protección de las llamadas a cada servidor FHIR: tiempo máximo por
+     * llamada, límite de llamadas concurrentes (bulkhead), circuit breaker y,
+     * opcionalmente, petición duplicada (hedging) cuando la primera tarda más
+     * que el percentil 95 reciente.
+     */
+    public static class Resilience {
+
+        private boolean enabled = true;
+
+        /** Tiempo máximo de una llamada completa (incluidas las páginas siguientes). */
+        private Duration timeout = Duration.ofSeconds(10);
+
+        /** Llamadas concurrentes permitidas por servidor. */
+        private int maxConcurrentCalls = 20;
+
+        /** Espera máxima por un hueco del bulkhead antes de rechazar la llamada. */
+        private Duration maxWait = Duration.ofMillis(100);
+
+        /** Porcentaje de fallos en la ventana a partir del cual se abre el circuito. */
+        private int failureRateThreshold = 50;
+
+        /** Número de llamadas recientes que se tienen en cuenta. */
+        private int slidingWindowSize = 20;
+
+        /** Llamadas mínimas en la ventana antes de evaluar el porcentaje de fallos. */
+        private int minimumCalls = 10;
+
+        /** Tiempo que el circuito permanece abierto antes de dejar pasar llamadas de prueba. */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /** Llamadas de prueba en semiabierto; si todas van bien se cierra el circuito. */
+        private int halfOpenCalls = 3;
+
+        private boolean hedgeEnabled = false;
+
+        /** Espera mínima antes de lanzar la petición duplicada. */
+        private Duration hedgeMinDelay = Duration.ofMillis(50);
+
+        /** Muestras de latencia necesarias antes de usar el percentil 95. */
+        private int hedgeMinSamples = 50;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+
+        public int getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(int failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public void setSlidingWindowSize(int slidingWindowSize) {
+            this.slidingWindowSize = slidingWindowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+
+        public boolean isHedgeEnabled() {
+            return hedgeEnabled;
+        }
+
+        public void setHedgeEnabled(boolean hedgeEnabled) {
+            this.hedgeEnabled = hedgeEnabled;
+        }
+
+        public Duration getHedgeMinDelay() {
+            return hedgeMinDelay;
+        }
+
+        public void setHedgeMinDelay(Duration hedgeMinDelay) {
+            this.hedgeMinDelay = hedgeMinDelay;
+        }
+
+        public int getHedgeMinSamples() {
+            return hedgeMinSamples;
+        }
+
+        public void setHedgeMinSamples(int hedgeMinSamples) {
+            this.hedgeMinSamples = hedgeMinSamples;
+        }
+    }
+}
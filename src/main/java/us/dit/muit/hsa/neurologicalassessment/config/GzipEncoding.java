@@ -0,0 +1,65 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresión gzip de las respuestas que se guardan ya comprimidas (recursos
+ * estáticos y SVG) y negociación con la cabecera {@code Accept-Encoding}.
+ */
+public final class GzipEncoding {
+
+    public static final String GZIP = "gzip";
+
+    private GzipEncoding() {
+    }
+
+    /**
+     * Indica si el cliente acepta gzip: lo nombra con un peso distinto de 0
+     * o, si no lo nombra, acepta {@code *}. Un {@code gzip;q=0} explícito
+     * prevalece sobre {@code *}.
+     */
+    public static boolean isAccepted(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        boolean any = false;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            boolean accepted = parts.length < 2 || !isZeroWeight(parts[1]);
+            if (name.equalsIgnoreCase(GZIP)) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                any = accepted;
+            }
+        }
+        return any;
+    }
+
+    private static boolean isZeroWeight(String parameter) {
+        String value = parameter.trim();
+        if (!value.startsWith("q=")) {
+            return false;
+        }
+        try {
+            return Double.parseDouble(value.substring(2)) == 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public static byte[] compress(byte[] content) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, content.length / 4));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        } catch (IOException e) {
+            // En memoria no se producen errores de E/S
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
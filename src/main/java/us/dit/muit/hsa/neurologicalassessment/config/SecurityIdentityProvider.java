@@ -0,0 +1,102 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.kie.kogito.auth.IdentityProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * {@link IdentityProvider} sobre el contexto de Spring Security.
+ * <p>
+ * El nombre y los roles del usuario se calculan una sola vez por cada
+ * {@link Authentication} (en la práctica, una vez por petición) y se guardan en
+ * una instantánea inmutable, de modo que las llamadas repetidas a
+ * {@link #getName()}, {@link #getRoles()} o {@link #hasRole(String)} durante
+ * una petición no vuelven a recorrer las authorities. Los roles se guardan en
+ * un conjunto para que comprobar el GroupId de cada tarea no sea una búsqueda
+ * lineal.
+ */
+public class SecurityIdentityProvider implements IdentityProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(SecurityIdentityProvider.class);
+
+    private static final Identity ANONYMOUS = new Identity(null, "anonymous", Collections.emptySet());
+
+    /** Última instantánea calculada en cada hilo; vale mientras no cambie la autenticación. */
+    private final ThreadLocal<Identity> last = new ThreadLocal<>();
+
+    /** Identidad del usuario autenticado en el hilo actual. */
+    public Identity identity() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return ANONYMOUS;
+        }
+        Identity cached = last.get();
+        if (cached != null && cached.authentication == authentication) {
+            return cached;
+        }
+        Identity identity = Identity.of(authentication);
+        last.set(identity);
+        logger.debug("Identity for user {}: roles {}", identity.getName(), identity.getRoles());
+        return identity;
+    }
+
+    @Override
+    public String getName() {
+        return identity().getName();
+    }
+
+    @Override
+    public Set<String> getRoles() {
+        return identity().getRoles();
+    }
+
+    @Override
+    public boolean hasRole(String role) {
+        return identity().hasRole(role);
+    }
+
+    /**
+     * Nombre y roles de un usuario, sin el prefijo {@code ROLE_} de Spring
+     * Security.
+     */
+    public static final class Identity {
+        private final Authentication authentication;
+        private final String name;
+        private final Set<String> roles;
+
+        private Identity(Authentication authentication, String name, Set<String> roles) {
+            this.authentication = authentication;
+            this.name = name;
+            this.roles = roles;
+        }
+
+        static Identity of(Authentication authentication) {
+            Set<String> roles = new LinkedHashSet<>();
+            for (GrantedAuthority authority : authentication.getAuthorities()) {
+                String role = authority.getAuthority();
+                roles.add(role.startsWith("ROLE_") ? role.substring(5) : role);
+            }
+            return new Identity(authentication, authentication.getName(), Collections.unmodifiableSet(roles));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /** Roles en el orden de las authorities, sin repetir; no modificable. */
+        public Set<String> getRoles() {
+            return roles;
+        }
+
+        public boolean hasRole(String role) {
+            return roles.contains(role);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import org.springframework.web.servlet.resource.ResourceHttpRequestHandler;
+import org.springframework.web.servlet.resource.ResourceResolver;
+import org.springframework.web.servlet.resource.ResourceResolverChain;
+
+/**
+ * Entrega de las páginas de {@code static/}: comprimidas con gzip si el
+ * cliente lo acepta ({@link CompressedResourceResolver}) y con ETag fuerte.
+ * <p>
+ * Las páginas no llevan un hash en su nombre, así que el navegador las
+ * revalida en cada uso ({@code no-cache}); mientras no cambien la respuesta
+ * es un 304 sin cuerpo. El manejador de recursos de Spring sólo compara
+ * {@code If-Modified-Since}, por lo que {@code If-None-Match} se comprueba
+ * aquí antes de llegar a él.
+ * <p>
+ * La cadena de recursos no usa la caché de Spring: ésta guarda el recurso
+ * resuelto por ruta y por las codificaciones que ve en {@code Accept-Encoding},
+ * sin mirar los pesos, y serviría a un cliente la variante elegida para otro.
+ * El contenido ya lo guarda en memoria {@link CompressedResourceResolver}.
+ * <p>
+ * Se registra antes que la configuración de Spring Boot para que ésta no
+ * añada su propio manejador para {@code /**}.
+ */
+@Configuration
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StaticResourceConfig implements WebMvcConfigurer {
+
+    private final String[] locations;
+
+    public StaticResourceConfig() {
+        this("classpath:/static/");
+    }
+
+    StaticResourceConfig(String... locations) {
+        this.locations = locations;
+    }
+
+    @Override
+    public void addResourceHandlers(ResourceHandlerRegistry registry) {
+        registry.addResourceHandler("/**")
+                .addResourceLocations(locations)
+                .setCacheControl(CacheControl.noCache().cachePrivate())
+                .resourceChain(false)
+                .addResolver(new CompressedResourceResolver());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ETagInterceptor());
+    }
+
+    private static final class ETagInterceptor implements HandlerInterceptor {
+
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            if (!(handler instanceof ResourceHttpRequestHandler)) {
+                return true;
+            }
+            Object path = request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+            if (!(path instanceof String)) {
+                return true;
+            }
+            ResourceHttpRequestHandler resources = (ResourceHttpRequestHandler) handler;
+            // El resolver guarda el contenido, así que resolver aquí sólo vuelve a comprobar la ruta
+            Resource resource = new Chain(resources.getResourceResolvers(), 0)
+                    .resolveResource(request, (String) path, resources.getLocations());
+            String etag = resource != null ? CompressedResourceResolver.etagOf(resource) : null;
+            return etag == null || !new ServletWebRequest(request, response).checkNotModified(etag);
+        }
+    }
+
+    /**
+     * Recorre los resolvers del manejador igual que él; la implementación de
+     * Spring no es pública.
+     */
+    private static final class Chain implements ResourceResolverChain {
+        private final List<ResourceResolver> resolvers;
+        private final int index;
+
+        private Chain(List<ResourceResolver> resolvers, int index) {
+            this.resolvers = resolvers;
+            this.index = index;
+        }
+
+        @Override
+        public Resource resolveResource(HttpServletRequest request, String requestPath,
+                List<? extends Resource> locations) {
+            return index < resolvers.size()
+                    ? resolvers.get(index).resolveResource(request, requestPath, locations, next())
+                    : null;
+        }
+
+        @Override
+        public String resolveUrlPath(String resourcePath, List<? extends Resource> locations) {
+            return index < resolvers.size()
+                    ? resolvers.get(index).resolveUrlPath(resourcePath, locations, next())
+                    : null;
+        }
+
+        private Chain next() {
+            return new Chain(resolvers, index + 1);
+        }
+    }
+}
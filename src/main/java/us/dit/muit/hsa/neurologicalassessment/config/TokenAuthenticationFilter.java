@@ -0,0 +1,53 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Autentica las peticiones con {@code Authorization: Bearer <token>} usando
+ * {@link AuthTokenService}. Un token inválido o caducado se responde con 401
+ * sin pasar al resto de la cadena; las peticiones sin token siguen su curso
+ * (Basic, si está permitido, o 401).
+ * <p>
+ * No se declara como bean para que Spring Boot no lo registre también como
+ * filtro de servlet fuera de la cadena de seguridad.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+
+    private static final String BEARER = "Bearer ";
+
+    private final AuthTokenService tokens;
+
+    public TokenAuthenticationFilter(AuthTokenService tokens) {
+        this.tokens = tokens;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            Authentication authentication = tokens.verify(header.substring(BEARER.length()).trim());
+            if (authentication == null) {
+                SecurityContextHolder.clearContext();
+                response.setHeader(HttpHeaders.WWW_AUTHENTICATE, "Bearer error=\"invalid_token\"");
+                response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Invalid or expired token");
+                return;
+            }
+            SecurityContext context = SecurityContextHolder.createEmptyContext();
+            context.setAuthentication(authentication);
+            SecurityContextHolder.setContext(context);
+        }
+        chain.doFilter(request, response);
+    }
+}
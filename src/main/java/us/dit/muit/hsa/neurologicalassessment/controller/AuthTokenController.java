@@ -0,0 +1,58 @@
+package us.dit.muit.hsa.neurologicalassessment.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import us.dit.muit.hsa.neurologicalassessment.config.AuthTokenService;
+import us.dit.muit.hsa.neurologicalassessment.config.DefaultWebSecurityConfig;
+
+/**
+ * Issues short-lived access tokens in exchange for HTTP Basic credentials.
+ *
+ * <p>
+ * Only available with {@code assessment.token.enabled=true}. The token is sent
+ * back as {@code Authorization: Bearer <token>} on every other request and is
+ * validated with an HMAC check instead of the password encoder, so clients
+ * that poll the API pay the credential check once per token rather than once
+ * per request. Clients request a new token when the current one expires (the
+ * API answers 401).
+ *
+ * <p>
+ * <b>Response:</b>
+ * {@code {"access_token": "...", "token_type": "Bearer", "expires_in": 900}}
+ *
+ * @see AuthTokenService
+ */
+@RestController
+@ConditionalOnProperty(prefix = "assessment.token", name = "enabled", havingValue = "true")
+public class AuthTokenController {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuthTokenController.class);
+
+    @Autowired
+    private AuthTokenService tokens;
+
+    @PostMapping(DefaultWebSecurityConfig.TOKEN_PATH)
+    public ResponseEntity<Map<String, Object>> issueToken() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String token = tokens.issue(authentication);
+        logger.info("Access token issued for user {}", authentication.getName());
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("access_token", token);
+        response.put("token_type", "Bearer");
+        response.put("expires_in", tokens.getTtl().getSeconds());
+        return ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(response);
+    }
+}
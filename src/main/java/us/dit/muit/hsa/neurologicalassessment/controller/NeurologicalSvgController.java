@@ -1,6 +1,12 @@
 package us.dit.muit.hsa.neurologicalassessment.controller;
 
+import java.util.Iterator;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
 
 import org.kie.kogito.process.Process;
 import org.kie.kogito.process.Processes;
@@ -8,13 +14,29 @@ import org.kie.kogito.svg.ProcessSvgService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import us.dit.muit.hsa.neurologicalassessment.config.GzipEncoding;
+import us.dit.muit.hsa.neurologicalassessment.entities.NodeStateOverlay;
+import us.dit.muit.hsa.neurologicalassessment.services.ProcessSvgCache;
 
 @RestController
 @RequestMapping("/svg")
@@ -22,78 +44,91 @@ public class NeurologicalSvgController {
 
     private static final Logger logger = LoggerFactory.getLogger(NeurologicalSvgController.class);
 
+    private static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /** Instance SVGs and states may be kept by the client but must be revalidated with their ETag. */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
+    /** Instances written to an NDJSON stream between flushes. */
+    private static final int NDJSON_FLUSH_EVERY = 50;
+
     @Autowired
     private Processes processes;
 
     @Autowired(required = false)
     private ProcessSvgService processSvgService;
 
+    @Autowired
+    private ProcessSvgCache svgCache;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Writer resolved once for every NDJSON line; it leaves the response open. */
+    private ObjectWriter overlayWriter;
+
+    @PostConstruct
+    void initOverlayWriter() {
+        overlayWriter = objectMapper.writerFor(NodeStateOverlay.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
     /**
      * Obtiene el SVG de una instancia específica del proceso, mostrando su estado
-     * actual
+     * actual. Mientras la instancia no avance se sirve el SVG ya generado
+     * ({@link ProcessSvgCache}).
      * 
      * @param processId  El nombre del proceso (ej: "assessment")
      * @param instanceId El ID de la instancia del proceso
      * @return SVG con el estado actual de la instancia
      */
     @GetMapping(value = "/{processId}/{instanceId}", produces = MediaType.APPLICATION_XML_VALUE)
-    public ResponseEntity<String> getProcessInstanceSvg(
+    public ResponseEntity<?> getProcessInstanceSvg(
             @PathVariable("processId") String processId,
-            @PathVariable("instanceId") String instanceId) {
+            @PathVariable("instanceId") String instanceId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
-        logger.info("Request for SVG of process '{}' instance '{}'", processId, instanceId);
+        logger.debug("Request for SVG of process '{}' instance '{}'", processId, instanceId);
 
-        if (processSvgService == null) {
+        if (!svgCache.isAvailable()) {
             logger.error("ProcessSvgService is not available");
             return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
                     .body("<!-- SVG service not available. Ensure kogito-addons-springboot-process-svg is configured correctly -->");
         }
 
-        Process<?> process = processes.processById(processId);
-        if (process == null) {
+        Optional<String> resolved = svgCache.resolve(processId);
+        if (resolved.isEmpty()) {
             logger.error("Process with id '{}' not found", processId);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("<!-- Process with id '" + processId + "' not found -->");
         }
+        String fullProcessId = resolved.get();
+
+        ProcessSvgCache.Svg cached = svgCache.cachedInstanceSvg(fullProcessId, instanceId);
+        if (cached != null) {
+            return svg(cached, acceptEncoding, REVALIDATE);
+        }
 
         // Verificar que la instancia existe
-        if (!process.instances().findById(instanceId).isPresent()) {
+        Process<?> process = processes.processById(fullProcessId);
+        if (process == null || !process.instances().findById(instanceId).isPresent()) {
             logger.error("Process instance '{}' not found", instanceId);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("<!-- Process instance with id '" + instanceId + "' not found -->");
         }
 
         try {
-            // Intentar primero con el processId tal cual llega
-            logger.debug("Calling processSvgService.getProcessInstanceSvg('{}', '{}', '')", processId, instanceId);
-            Optional<String> svgOptional = processSvgService.getProcessInstanceSvg(processId, instanceId, "");
-
-            if (!svgOptional.isPresent() || svgOptional.get().isEmpty()) {
-                logger.warn("SVG generation returned empty result for process '{}' instance '{}'", processId,
+            ProcessSvgCache.Svg svg = svgCache.renderInstanceSvg(fullProcessId, instanceId);
+            if (svg == null) {
+                logger.error("SVG generation returned empty result for process '{}' instance '{}'", fullProcessId,
                         instanceId);
-
-                // Si el processId parece ser corto (sin punto), intentar con el prefijo
-                // completo
-                if (!processId.contains(".")) {
-                    String fullProcessId = "neurologicalassessment." + processId;
-                    logger.debug("Trying with full processId: '{}'", fullProcessId);
-                    svgOptional = processSvgService.getProcessInstanceSvg(fullProcessId, instanceId, "");
-                }
-
-                if (!svgOptional.isPresent() || svgOptional.get().isEmpty()) {
-                    logger.error("SVG generation failed with both full and short processId");
-                    return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                            .body("<!-- Failed to generate SVG for process instance. The BPMN file may not contain diagram information (BPMNDiagram section), or the process-svg addon is not working correctly. -->");
-                }
+                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                        .body("<!-- Failed to generate SVG for process instance. The BPMN file may not contain diagram information (BPMNDiagram section), or the process-svg addon is not working correctly. -->");
             }
 
-            String svg = svgOptional.get();
-            logger.info("Successfully generated SVG ({} chars) for process '{}' instance '{}'", svg.length(), processId,
-                    instanceId);
-
-            return ResponseEntity.ok()
-                    .contentType(MediaType.valueOf("image/svg+xml"))
-                    .body(svg);
+            logger.info("Successfully generated SVG ({} chars) for process '{}' instance '{}'", svg.text().length(),
+                    fullProcessId, instanceId);
+            return svg(svg, acceptEncoding, REVALIDATE);
 
         } catch (Exception e) {
             logger.error("Error generating SVG for process '{}' instance '{}': {}", processId, instanceId,
@@ -104,62 +139,160 @@ public class NeurologicalSvgController {
     }
 
     /**
-     * Obtiene el SVG del proceso completo (sin estado de instancia específica)
+     * Obtiene el SVG del proceso completo (sin estado de instancia específica),
+     * generado al arrancar la aplicación. No cambia mientras no se despliegue
+     * otra versión del proceso, así que el navegador lo guarda un día y después
+     * lo revalida con su ETag
      * 
      * @param processId El nombre del proceso (ej: "assessment")
      * @return SVG del proceso
      */
     @GetMapping(value = "/processes/{processId}", produces = MediaType.APPLICATION_XML_VALUE)
-    public ResponseEntity<String> getProcessSvg(@PathVariable("processId") String processId) {
+    public ResponseEntity<?> getProcessSvg(@PathVariable("processId") String processId,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
 
-        logger.info("Request for SVG of process definition '{}'", processId);
+        logger.debug("Request for SVG of process definition '{}'", processId);
 
-        if (processSvgService == null) {
+        if (!svgCache.isAvailable()) {
             logger.error("ProcessSvgService is not available");
             return ResponseEntity.status(HttpStatus.NOT_IMPLEMENTED)
                     .body("<!-- SVG service not available -->");
         }
 
-        Process<?> process = processes.processById(processId);
-        if (process == null) {
+        if (svgCache.resolve(processId).isEmpty()) {
             logger.error("Process with id '{}' not found", processId);
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body("<!-- Process with id '" + processId + "' not found -->");
         }
 
-        try {
-            // Intentar primero con el processId tal cual llega
-            logger.debug("Trying to get process SVG with processId: '{}'", processId);
-            Optional<String> svgOptional = processSvgService.getProcessSvg(processId);
-
-            if (!svgOptional.isPresent() || svgOptional.get().isEmpty()) {
-                // Si el processId parece ser corto (sin punto), intentar con el prefijo
-                // completo
-                if (!processId.contains(".")) {
-                    String fullProcessId = "neurologicalassessment." + processId;
-                    logger.debug("Failed with short processId, trying with full: '{}'", fullProcessId);
-                    svgOptional = processSvgService.getProcessSvg(fullProcessId);
-                }
-            }
+        Optional<ProcessSvgCache.Svg> svgOptional = svgCache.processSvg(processId);
+        if (svgOptional.isEmpty()) {
+            logger.error("Failed to generate SVG for process '{}'", processId);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("<!-- Failed to generate SVG for process -->");
+        }
+        return svg(svgOptional.get(), acceptEncoding, CacheControl.maxAge(1, TimeUnit.DAYS).cachePrivate());
+    }
 
-            if (!svgOptional.isPresent() || svgOptional.get().isEmpty()) {
-                logger.error("Failed to generate SVG for process '{}'", processId);
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                        .body("<!-- Failed to generate SVG for process -->");
-            }
+    /**
+     * Obtiene el estado de los nodos de una instancia (activos, con su hora de
+     * activación, y completados) para colorear en el cliente el SVG de
+     * {@code /svg/processes/{processId}}. Son unos cientos de bytes frente a
+     * las decenas de KB del SVG de la instancia. Lleva una ETag con la
+     * versión del estado de la instancia: si no ha avanzado, se responde 304
+     * sin leerla
+     * 
+     * @param processId  El nombre del proceso (ej: "assessment")
+     * @param instanceId El ID de la instancia del proceso
+     * @return JSON con el estado de los nodos
+     */
+    @GetMapping(value = "/{processId}/{instanceId}/state", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getProcessInstanceState(
+            @PathVariable("processId") String processId,
+            @PathVariable("instanceId") String instanceId,
+            WebRequest request) {
 
-            String svg = svgOptional.get();
-            logger.info("Successfully generated process SVG ({} chars) for '{}'", svg.length(), processId);
+        Optional<String> resolved = svgCache.resolve(processId);
+        if (resolved.isEmpty()) {
+            logger.error("Process with id '{}' not found", processId);
+            return ResponseEntity.notFound().build();
+        }
 
-            return ResponseEntity.ok()
-                    .contentType(MediaType.valueOf("image/svg+xml"))
-                    .body(svg);
+        String etag = "\"" + instanceId + "-" + svgCache.instanceVersion(instanceId) + "\"";
+        if (request.checkNotModified(etag)) {
+            return null;
+        }
 
-        } catch (Exception e) {
-            logger.error("Error generating process SVG for '{}': {}", processId, e.getMessage(), e);
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                    .body("<!-- Error generating SVG: " + e.getMessage() + " -->");
+        Optional<NodeStateOverlay> overlay = svgCache.overlay(resolved.get(), instanceId);
+        if (overlay.isEmpty()) {
+            logger.error("Process instance '{}' not found", instanceId);
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok()
+                .cacheControl(REVALIDATE)
+                .eTag(etag)
+                .body(overlay.get());
+    }
+
+    /**
+     * Obtiene en una sola respuesta el estado de los nodos y las variables de
+     * varias instancias, como NDJSON (una instancia por línea) que se escribe
+     * a medida que se leen. Sin {@code ids} devuelve todas las instancias del
+     * proceso
+     * 
+     * @param processId El nombre del proceso (ej: "assessment")
+     * @param state     Estado de las instancias que se quieren (ej: "active")
+     * @return NDJSON con un {@link NodeStateOverlay} por instancia
+     */
+    @GetMapping(value = "/{processId}/states", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> getProcessInstanceStates(
+            @PathVariable("processId") String processId,
+            @RequestParam(value = "state", required = false) String state) {
+        return instanceStates(processId, null, state);
+    }
+
+    /**
+     * Igual que {@link #getProcessInstanceStates(String, String)} para una
+     * lista de instancias, que se envía en el cuerpo para no superar el límite
+     * de longitud de la URL; las que no existen se omiten
+     * 
+     * @param processId   El nombre del proceso (ej: "assessment")
+     * @param instanceIds Los IDs de las instancias
+     * @param state       Estado de las instancias que se quieren (ej: "active")
+     * @return NDJSON con un {@link NodeStateOverlay} por instancia encontrada
+     */
+    @PostMapping(value = "/{processId}/states", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> findProcessInstanceStates(
+            @PathVariable("processId") String processId,
+            @RequestBody List<String> instanceIds,
+            @RequestParam(value = "state", required = false) String state) {
+        return instanceStates(processId, instanceIds, state);
+    }
+
+    private ResponseEntity<StreamingResponseBody> instanceStates(String processId, List<String> instanceIds,
+            String state) {
+        Optional<String> resolved = svgCache.resolve(processId);
+        if (resolved.isEmpty()) {
+            logger.error("Process with id '{}' not found", processId);
+            return ResponseEntity.notFound().build();
+        }
+        StreamingResponseBody body = out -> {
+            int written = 0;
+            try (Stream<NodeStateOverlay> overlays = svgCache.overlays(resolved.get(), instanceIds, state)) {
+                Iterator<NodeStateOverlay> iterator = overlays.iterator();
+                while (iterator.hasNext()) {
+                    overlayWriter.writeValue(out, iterator.next());
+                    out.write('\n');
+                    if (++written % NDJSON_FLUSH_EVERY == 0) {
+                        out.flush();
+                    }
+                }
+            }
+            out.flush();
+            logger.debug("Streamed state of {} instances of process '{}'", written, processId);
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .cacheControl(REVALIDATE)
+                .body(body);
+    }
+
+    /**
+     * Respuesta con el SVG comprimido con gzip si el cliente lo acepta; cada
+     * codificación lleva su propia ETag, y Spring responde 304 cuando coincide
+     * con If-None-Match.
+     */
+    private static ResponseEntity<?> svg(ProcessSvgCache.Svg svg, String acceptEncoding, CacheControl cacheControl) {
+        boolean gzip = GzipEncoding.isAccepted(acceptEncoding);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.valueOf("image/svg+xml"))
+                .cacheControl(cacheControl)
+                .eTag(svg.etag(gzip))
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, GzipEncoding.GZIP).body(svg.gzip());
         }
+        return response.body(svg.text());
     }
 
     /**
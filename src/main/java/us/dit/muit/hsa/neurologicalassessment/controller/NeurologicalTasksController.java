@@ -1,29 +1,56 @@
 package us.dit.muit.hsa.neurologicalassessment.controller;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
 
 import org.kie.kogito.auth.IdentityProvider;
 import org.kie.kogito.process.Process;
 import org.kie.kogito.process.ProcessInstance;
-import org.kie.kogito.process.WorkItem;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
+import us.dit.muit.hsa.neurologicalassessment.config.SecurityIdentityProvider;
+import us.dit.muit.hsa.neurologicalassessment.entities.AssessmentStats;
 import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskCompletion;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskPage;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskSummary;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskCompletionService;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskEventStream;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskInbox;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskStatistics;
 
 /**
  * Custom REST controller for user task management in Kogito processes.
@@ -51,7 +78,9 @@ import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
  * and roles from the Spring Security context</li>
  * <li>Filters tasks by matching the task's ActorId (assigned user) or GroupId
  * (assigned group)
- * against the authenticated user's identity and roles</li>
+ * against the authenticated user's identity and roles; the task list across
+ * all instances is read from the {@link TaskInbox} index instead of scanning
+ * every process instance</li>
  * <li>Returns only active tasks (phaseStatus="active") that the user has
  * permission to see</li>
  * <li>Provides detailed logging for debugging task assignment and filtering
@@ -59,6 +88,36 @@ import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
  * </ul>
  * 
  * <p>
+ * <b>Pagination:</b> both task listings are sorted by task creation time and
+ * accept {@code limit} and {@code after} parameters. Every task carries an
+ * opaque {@code cursor}; passing the cursor of the last task received as
+ * {@code after} returns the next page, and JSON responses include it as
+ * {@code nextCursor} while more tasks remain. Requests with
+ * {@code Accept: application/x-ndjson} receive one task per line, written to
+ * the response as the tasks are read instead of being collected first.
+ * 
+ * <p>
+ * <b>Field selection:</b> the listings also accept {@code fields}, a
+ * comma-separated subset of {@code id, name, processInstanceId, phase,
+ * phaseStatus, parameters, cursor}; only those fields are returned for each
+ * task. Without it every field is returned, including the full work item
+ * {@code parameters}, which are by far the largest part of each task.
+ * 
+ * <p>
+ * <b>Conditional requests:</b> task listings carry an {@code ETag} built
+ * from the version of the user's inbox (or of the process instance) kept by
+ * {@link TaskInbox}. A request whose {@code If-None-Match} still matches is
+ * answered with 304 Not Modified without reading the tasks.
+ * 
+ * <p>
+ * <b>Live updates:</b> GET /assessment/tasks/stream is a Server-Sent Events
+ * stream that pushes {@code task-created}, {@code task-updated} and
+ * {@code task-completed} events for the tasks the user can see (same
+ * ActorId/GroupId rules as the listings), {@code instance-state} events when
+ * an assessment instance starts or ends, and {@code resync} when the client
+ * fell behind and should reload its list. See {@link TaskEventStream}.
+ * 
+ * <p>
  * <b>Endpoints:</b>
  * <ul>
  * <li>GET /assessment/tasks - Returns all tasks across all process instances
@@ -66,13 +125,26 @@ import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
  * <li>GET /assessment/{processInstanceId}/tasks - Returns tasks for a specific
  * process instance
  * filtered by the current user</li>
+ * <li>GET /assessment/tasks/stream - Server-Sent Events with the changes to
+ * the current user's tasks and to process instance states</li>
+ * <li>POST /assessment/{processInstanceId}/tasks/{taskId} - Completes a task
+ * with a DN4 questionnaire</li>
+ * <li>POST /assessment/tasks/complete - Completes many tasks in one request,
+ * returning one result per task</li>
+ * <li>GET /assessment/tasks/{taskId} - Returns one of the current user's
+ * tasks, found by id alone</li>
+ * <li>POST /assessment/tasks/{taskId} - Completes a task found by id alone</li>
+ * <li>GET /assessment/stats - Pending task counts per group and practitioner,
+ * oldest pending task age and instance counts by state</li>
  * </ul>
  * 
  * <p>
- * <b>Authentication:</b> All endpoints require HTTP Basic Authentication. The
- * controller uses
- * Spring Security's authentication context to determine user identity and
- * roles.
+ * <b>Authentication:</b> All endpoints require an authenticated user, either
+ * with HTTP Basic or, when {@code assessment.token.enabled} is set, with a
+ * {@code Bearer} token issued by {@code POST /auth/token}. With
+ * {@code assessment.token.basic-login-only} Basic is only accepted to obtain
+ * a token. The controller uses Spring Security's authentication context to
+ * determine user identity and roles.
  * 
  * <p>
  * <b>Note:</b> This controller uses @Order(0) to ensure it takes precedence
@@ -90,17 +162,84 @@ public class NeurologicalTasksController {
 
     private static final Logger logger = LoggerFactory.getLogger(NeurologicalTasksController.class);
 
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
+    /** Maximum page size accepted in the {@code limit} parameter. */
+    private static final int MAX_LIMIT = 1000;
+
+    /** Tasks written to an NDJSON stream between flushes. */
+    private static final int NDJSON_FLUSH_EVERY = 100;
+
+    /**
+     * Task listings may be kept by the client but must be revalidated; this
+     * replaces Spring Security's default {@code no-store} so that browsers send
+     * {@code If-None-Match}.
+     */
+    private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
     @Autowired
-    private IdentityProvider identityProvider;
+    private SecurityIdentityProvider identityProvider;
 
     @Autowired(required = false)
     @Qualifier("neurologicalassessment.assessment")
     private Process<?> assessmentProcess;
 
+    @Autowired
+    private TaskInbox taskInbox;
+
+    @Autowired
+    private TaskEventStream taskEventStream;
+
+    @Autowired
+    private TaskCompletionService taskCompletion;
+
+    @Autowired
+    private TaskStatistics taskStatistics;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /** Writer resolved once for every NDJSON line; it leaves the response open. */
+    private ObjectWriter taskWriter;
+
+    /**
+     * Writer resolved once for the JSON listings, which clients poll; the
+     * message converter would look up the serializer of each response again.
+     */
+    private ObjectWriter pageWriter;
+
+    @PostConstruct
+    void initTaskWriter() {
+        taskWriter = objectMapper.writerFor(TaskSummary.class)
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        pageWriter = objectMapper.writerFor(TaskPage.class);
+    }
+
     @GetMapping("/tasks")
-    public ResponseEntity<?> getAllTasksForUser() {
+    public ResponseEntity<?> getAllTasksForUser(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String userName = identityProvider.getName();
-        List<String> userRoles = new ArrayList<>(identityProvider.getRoles());
+        Set<String> userRoles = identityProvider.getRoles();
+        TaskInbox.Cursor cursor;
+        Set<String> projection;
+        try {
+            cursor = parseCursor(after);
+            pageSize(limit);
+            projection = TaskSummary.fields(fields);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+
+        // Read before the tasks: a change in between only makes the next request miss
+        String etag = etag(taskInbox.versionFor(userName, userRoles), userName, userRoles, limit, after, fields,
+                "json");
+        if (matches(ifNoneMatch, etag)) {
+            logger.debug("Tasks for user {} not modified", userName);
+            return notModified(etag);
+        }
 
         logger.info("=== Getting all tasks for user: {} ===", userName);
         logger.info("User roles: {}", userRoles);
@@ -116,35 +255,13 @@ public class NeurologicalTasksController {
         }
 
         try {
-            List<Map<String, Object>> allTasks = new ArrayList<>();
-
-            assessmentProcess.instances().stream()
-                    .filter(pi -> pi.status() == ProcessInstance.STATE_ACTIVE)
-                    .forEach(pi -> {
-                        logger.debug("Checking process instance: {}", pi.id());
-                        pi.workItems().stream()
-                                .peek(wi -> logger.debug("Work item found: id={}, name={}, phase={}, phaseStatus={}",
-                                        wi.getId(), wi.getName(), wi.getPhase(), wi.getPhaseStatus()))
-                                .filter(wi -> "active".equalsIgnoreCase(wi.getPhaseStatus()) ||
-                                        wi.getPhase() == null ||
-                                        wi.getPhase().equals("active"))
-                                .filter(wi -> isTaskAssignedToUser(wi, userName, userRoles))
-                                .forEach(wi -> {
-                                    Map<String, Object> taskMap = workItemToMap(wi, pi.id());
-                                    allTasks.add(taskMap);
-                                    logger.info("Added task: {}", taskMap);
-                                });
-                    });
-
-            logger.info("Total tasks found for user {}: {}", userName, allTasks.size());
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("tasks", allTasks);
-            response.put("userName", userName);
-            response.put("userRoles", userRoles);
-            response.put("totalTasks", allTasks.size());
-
-            return ResponseEntity.ok(response);
+            // O(tareas devueltas): el índice se mantiene con los eventos del proceso
+            TaskPage page = readPage(taskInbox.tasksFor(userName, userRoles, cursor), limit, projection, null,
+                    userName, userRoles);
+
+            logger.info("Total tasks found for user {}: {}", userName, page.totalTasks());
+
+            return json(page, etag);
 
         } catch (Exception e) {
             logger.error("Error getting tasks", e);
@@ -157,10 +274,133 @@ public class NeurologicalTasksController {
         }
     }
 
+    /**
+     * NDJSON variant of {@link #getAllTasksForUser(Integer, String, String, String)}: tasks are
+     * streamed from the inbox index one per line.
+     */
+    @GetMapping(value = "/tasks", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamAllTasksForUser(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
+        TaskInbox.Cursor cursor;
+        Set<String> projection;
+        try {
+            cursor = parseCursor(after);
+            pageSize(limit);
+            projection = TaskSummary.fields(fields);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected task stream request for user {}: {}", userName, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        String etag = etag(taskInbox.versionFor(userName, userRoles), userName, userRoles, limit, after, fields,
+                "ndjson");
+        if (matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        logger.info("=== Streaming tasks for user: {} ===", userName);
+        return ndjson(taskInbox.tasksFor(userName, userRoles, cursor), limit, projection, etag);
+    }
+
+    /**
+     * Returns aggregate workload figures for dashboards: pending tasks per
+     * GroupId and per ActorId with the age of the oldest one, and assessment
+     * instances by state. The figures come from counters kept up to date by
+     * {@link TaskStatistics}, so the cost does not depend on the number of
+     * tasks or instances.
+     */
+    @GetMapping("/stats")
+    public ResponseEntity<AssessmentStats> getStats() {
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(taskStatistics.snapshot());
+    }
+
+    /**
+     * Opens a Server-Sent Events stream with the changes to the current user's
+     * tasks. Answers 503 when the configured number of open streams is reached;
+     * clients should retry later.
+     */
+    @GetMapping(value = "/tasks/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamTaskEvents() {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
+        SseEmitter emitter = taskEventStream.subscribe(userName, userRoles);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        logger.info("=== Task event stream opened for user: {} ===", userName);
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Returns an active task by id, without knowing its process instance. The
+     * task is read from the {@link TaskInbox} index, so tasks that are finished
+     * or not assigned to anybody are not found.
+     * 
+     * @param taskId the work item id
+     * @param fields optional projection, as in the task listings
+     * @return the task, 403 if it is not assigned to the current user, or 404
+     */
+    @GetMapping("/tasks/{taskId}")
+    public ResponseEntity<?> getTask(
+            @PathVariable String taskId,
+            @RequestParam(required = false) String fields) {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
+        Set<String> projection;
+        try {
+            projection = TaskSummary.fields(fields);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+
+        TaskInbox.Task task = taskInbox.find(taskId).orElse(null);
+        if (task == null) {
+            logger.warn("Task {} not found in the task inbox", taskId);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Task not found");
+            error.put("taskId", taskId);
+            return ResponseEntity.status(404).body(error);
+        }
+        if (!task.isAssignedTo(userName, userRoles)) {
+            logger.warn("User {} not authorized to see task {}", userName, taskId);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Not authorized to see this task");
+            error.put("taskId", taskId);
+            error.put("userName", userName);
+            return ResponseEntity.status(403).body(error);
+        }
+        return ResponseEntity.ok(task.toSummary(projection));
+    }
+
     @GetMapping("/{processInstanceId}/tasks")
-    public ResponseEntity<?> getTasksForProcess(@PathVariable String processInstanceId) {
+    public ResponseEntity<?> getTasksForProcess(
+            @PathVariable String processInstanceId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         String userName = identityProvider.getName();
-        List<String> userRoles = new ArrayList<>(identityProvider.getRoles());
+        Set<String> userRoles = identityProvider.getRoles();
+        TaskInbox.Cursor cursor;
+        Set<String> projection;
+        try {
+            cursor = parseCursor(after);
+            pageSize(limit);
+            projection = TaskSummary.fields(fields);
+        } catch (IllegalArgumentException e) {
+            return badRequest(e);
+        }
+
+        // Instances without indexed tasks are at version 0 and still need the lookup
+        long version = taskInbox.instanceVersion(processInstanceId);
+        String etag = etag(version, userName, userRoles, limit, after, fields, "json:" + processInstanceId);
+        if (version > 0 && matches(ifNoneMatch, etag)) {
+            logger.debug("Tasks for process {} and user {} not modified", processInstanceId, userName);
+            return notModified(etag);
+        }
 
         logger.info("=== Getting tasks for process: {} and user: {} ===", processInstanceId, userName);
         logger.info("User roles: {}", userRoles);
@@ -185,31 +425,19 @@ public class NeurologicalTasksController {
                 error.put("tasks", new ArrayList<>());
                 return ResponseEntity.ok(error);
             }
+            if (matches(ifNoneMatch, etag)) {
+                return notModified(etag);
+            }
 
             logger.info("Process instance status: {}", instance.status());
 
-            List<Map<String, Object>> tasks = instance.workItems().stream()
-                    .peek(wi -> logger.debug("Work item: id={}, name={}, phase={}, phaseStatus={}, params={}",
-                            wi.getId(), wi.getName(), wi.getPhase(), wi.getPhaseStatus(), wi.getParameters()))
-                    .filter(wi -> "active".equalsIgnoreCase(wi.getPhaseStatus()) ||
-                            wi.getPhase() == null ||
-                            wi.getPhase().equals("active"))
-                    .peek(wi -> logger.debug("Filtering task {} for user {} with roles {}",
-                            wi.getName(), userName, userRoles))
-                    .filter(wi -> isTaskAssignedToUser(wi, userName, userRoles))
-                    .map(wi -> workItemToMap(wi, processInstanceId))
-                    .collect(Collectors.toList());
-
-            logger.info("Found {} tasks for process {} and user {}", tasks.size(), processInstanceId, userName);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("tasks", tasks);
-            response.put("processInstanceId", processInstanceId);
-            response.put("userName", userName);
-            response.put("userRoles", userRoles);
-            response.put("totalTasks", tasks.size());
-
-            return ResponseEntity.ok(response);
+            TaskPage page = readPage(instanceTasks(instance, userName, userRoles, cursor), limit, projection,
+                    processInstanceId, userName, userRoles);
+
+            logger.info("Found {} tasks for process {} and user {}", page.totalTasks(), processInstanceId,
+                    userName);
+
+            return json(page, etag);
 
         } catch (Exception e) {
             logger.error("Error getting tasks for process " + processInstanceId, e);
@@ -220,51 +448,169 @@ public class NeurologicalTasksController {
         }
     }
 
-    private boolean isTaskAssignedToUser(WorkItem workItem, String userName, List<String> userRoles) {
-        logger.debug("=== Checking assignment for task: {} ===", workItem.getName());
-        logger.debug("User: {}, Roles: {}", userName, userRoles);
-        logger.debug("Task parameters: {}", workItem.getParameters());
-
-        // Verificar si estÃ¡ asignado al usuario especÃ­fico
-        if (workItem.getParameters().containsKey("ActorId")) {
-            String actorId = (String) workItem.getParameters().get("ActorId");
-            logger.debug("Task ActorId: {}", actorId);
-            if (userName.equals(actorId)) {
-                logger.info("âœ“ Task {} assigned to user {} by ActorId", workItem.getName(), userName);
-                return true;
-            }
+    /**
+     * NDJSON variant of {@link #getTasksForProcess(String, Integer, String, String, String)}.
+     */
+    @GetMapping(value = "/{processInstanceId}/tasks", produces = APPLICATION_NDJSON)
+    public ResponseEntity<StreamingResponseBody> streamTasksForProcess(
+            @PathVariable String processInstanceId,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String after,
+            @RequestParam(required = false) String fields,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
+        TaskInbox.Cursor cursor;
+        Set<String> projection;
+        try {
+            cursor = parseCursor(after);
+            pageSize(limit);
+            projection = TaskSummary.fields(fields);
+        } catch (IllegalArgumentException e) {
+            logger.warn("Rejected task stream request for process {}: {}", processInstanceId, e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        if (assessmentProcess == null) {
+            return ResponseEntity.status(500).build();
         }
+        long version = taskInbox.instanceVersion(processInstanceId);
+        String etag = etag(version, userName, userRoles, limit, after, fields, "ndjson:" + processInstanceId);
+        if (version > 0 && matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        ProcessInstance<?> instance = assessmentProcess.instances()
+                .findById(processInstanceId)
+                .orElse(null);
+        if (instance == null) {
+            logger.warn("Process instance {} not found", processInstanceId);
+            return ResponseEntity.notFound().build();
+        }
+        if (matches(ifNoneMatch, etag)) {
+            return notModified(etag);
+        }
+        return ndjson(instanceTasks(instance, userName, userRoles, cursor), limit, projection, etag);
+    }
 
-        // Verificar si estÃ¡ asignado a un grupo del usuario
-        if (workItem.getParameters().containsKey("GroupId")) {
-            Object groupIdObj = workItem.getParameters().get("GroupId");
-            logger.debug("Task GroupId (raw): {} (type: {})", groupIdObj,
-                    groupIdObj != null ? groupIdObj.getClass().getName() : "null");
+    /**
+     * Active tasks of one instance assigned to the user, in creation order and
+     * after {@code cursor} when given.
+     */
+    private Iterator<TaskInbox.Task> instanceTasks(ProcessInstance<?> instance, String userName,
+            Collection<String> userRoles, TaskInbox.Cursor cursor) {
+        logger.info("Process instance status: {}", instance.status());
+        return TaskInbox.tasksOf(instance).stream()
+                .peek(task -> logger.debug("Work item: id={}, name={}, phase={}, phaseStatus={}, params={}",
+                        task.getId(), task.getName(), task.getPhase(), task.getPhaseStatus(),
+                        task.getParameters()))
+                .filter(task -> cursor == null || task.cursor().compareTo(cursor) > 0)
+                .filter(task -> task.isAssignedTo(userName, userRoles))
+                .iterator();
+    }
+
+    private static TaskInbox.Cursor parseCursor(String after) {
+        return after != null && !after.isEmpty() ? TaskInbox.Cursor.parse(after) : null;
+    }
+
+    private static int pageSize(Integer limit) {
+        if (limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be a positive number");
+        }
+        return Math.min(limit, MAX_LIMIT);
+    }
+
+    private static ResponseEntity<?> badRequest(IllegalArgumentException e) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", e.getMessage());
+        error.put("tasks", new ArrayList<>());
+        return ResponseEntity.badRequest().body(error);
+    }
 
-            String groupId = groupIdObj != null ? groupIdObj.toString() : null;
+    /**
+     * Entity tag of a task listing: the inbox version plus everything else the
+     * response depends on (user, roles, paging, projection and format).
+     */
+    private static String etag(long version, String userName, Collection<String> userRoles, Integer limit,
+            String after, String fields, String variant) {
+        List<String> roles = new ArrayList<>(userRoles);
+        Collections.sort(roles);
+        int request = Objects.hash(userName, roles, limit, after, fields, variant);
+        return "\"" + Long.toString(version, 36) + "-" + Integer.toHexString(request) + "\"";
+    }
 
-            if (groupId != null && userRoles.contains(groupId)) {
-                logger.info("âœ“ Task {} assigned to user {} by GroupId: {}",
-                        workItem.getName(), userName, groupId);
+    /** Whether an {@code If-None-Match} header matches {@code etag}, weakly compared. */
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
                 return true;
-            } else {
-                logger.debug("âœ— GroupId '{}' not in user roles: {}", groupId, userRoles);
             }
         }
-
-        logger.debug("âœ— Task {} NOT assigned to user {}", workItem.getName(), userName);
         return false;
     }
 
-    private Map<String, Object> workItemToMap(WorkItem wi, String processInstanceId) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", wi.getId());
-        map.put("name", wi.getName());
-        map.put("processInstanceId", processInstanceId);
-        map.put("phase", wi.getPhase());
-        map.put("phaseStatus", wi.getPhaseStatus());
-        map.put("parameters", wi.getParameters());
-        return map;
+    private static <T> ResponseEntity<T> notModified(String etag) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+    }
+
+    /**
+     * Reads at most {@code limit} tasks, with the cursor of the next page or
+     * {@code null} if there are no more tasks.
+     */
+    private static TaskPage readPage(Iterator<TaskInbox.Task> tasks, Integer limit, Set<String> fields,
+            String processInstanceId, String userName, Set<String> userRoles) {
+        int pageSize = pageSize(limit);
+        List<TaskSummary> page = new ArrayList<>(Math.min(pageSize, 64));
+        TaskInbox.Task last = null;
+        while (page.size() < pageSize && tasks.hasNext()) {
+            last = tasks.next();
+            page.add(last.toSummary(fields));
+        }
+        String nextCursor = last != null && tasks.hasNext() ? last.cursor().token() : null;
+        return new TaskPage(page, nextCursor, page.size(), processInstanceId, userName, userRoles);
+    }
+
+    /** Writes a JSON listing with {@link #pageWriter}, bypassing the message converter. */
+    private ResponseEntity<byte[]> json(TaskPage page, String etag) throws JsonProcessingException {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(etag)
+                .cacheControl(REVALIDATE)
+                .body(pageWriter.writeValueAsBytes(page));
+    }
+
+    /**
+     * Streams at most {@code limit} tasks as NDJSON, flushing every
+     * {@value #NDJSON_FLUSH_EVERY} tasks so that clients can start processing
+     * before the listing ends.
+     */
+    private ResponseEntity<StreamingResponseBody> ndjson(Iterator<TaskInbox.Task> tasks, Integer limit,
+            Set<String> fields, String etag) {
+        int pageSize = pageSize(limit);
+        StreamingResponseBody body = out -> {
+            int written = 0;
+            while (written < pageSize && tasks.hasNext()) {
+                taskWriter.writeValue(out, tasks.next().toSummary(fields));
+                out.write('\n');
+                if (++written % NDJSON_FLUSH_EVERY == 0) {
+                    out.flush();
+                }
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(APPLICATION_NDJSON))
+                .eTag(etag)
+                .cacheControl(REVALIDATE)
+                .body(body);
     }
 
     /**
@@ -290,81 +636,82 @@ public class NeurologicalTasksController {
             @RequestBody DN4 dn4) {
 
         String userName = identityProvider.getName();
-        List<String> userRoles = new ArrayList<>(identityProvider.getRoles());
-
-        logger.info("=== Completing task {} for process {} by user {} ===", taskId, processInstanceId, userName);
-        logger.debug("DN4 data received: {}", dn4);
+        Set<String> userRoles = identityProvider.getRoles();
 
-        if (assessmentProcess == null) {
-            logger.error("Assessment process not found");
-            Map<String, Object> error = new HashMap<>();
-            error.put("error", "Assessment process not initialized");
-            return ResponseEntity.status(500).body(error);
-        }
+        TaskCompletionService.Outcome outcome = taskCompletion.complete(processInstanceId, taskId, dn4, userName,
+                userRoles);
+        return ResponseEntity.status(outcome.getStatus()).body(outcome.getBody());
+    }
 
-        try {
-            ProcessInstance<?> instance = assessmentProcess.instances()
-                    .findById(processInstanceId)
-                    .orElse(null);
+    /**
+     * Completes a pain assessment task found by id alone, with the same checks
+     * and responses as
+     * {@link #completeTask(String, String, DN4)}.
+     * 
+     * @param taskId the work item id
+     * @param dn4    the DN4 questionnaire data
+     * @return ResponseEntity with the completion details, or 404/403 if the task
+     *         is not in the task inbox or not assigned to the current user
+     */
+    @PostMapping("/tasks/{taskId}")
+    public ResponseEntity<?> completeTaskById(
+            @PathVariable String taskId,
+            @RequestBody DN4 dn4) {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
 
-            if (instance == null) {
-                logger.warn("Process instance {} not found", processInstanceId);
-                Map<String, Object> error = new HashMap<>();
-                error.put("error", "Process instance not found");
-                error.put("processInstanceId", processInstanceId);
-                return ResponseEntity.status(404).body(error);
-            }
+        TaskCompletionService.Outcome outcome = taskCompletion.complete(taskId, dn4, userName, userRoles);
+        return ResponseEntity.status(outcome.getStatus()).body(outcome.getBody());
+    }
 
-            // Find the task
-            WorkItem task = instance.workItems().stream()
-                    .filter(wi -> wi.getId().equals(taskId))
-                    .findFirst()
-                    .orElse(null);
+    /**
+     * Completes several pain assessment tasks in one request, e.g. when
+     * questionnaires transcribed from paper are entered in batches.
+     * 
+     * <p>
+     * Each item is checked exactly like a single completion (instance and task
+     * must exist and the task must be assigned to the current user) and a
+     * failure in one item does not stop the others. Tasks of different process
+     * instances are completed in parallel; tasks of the same instance are
+     * completed one after another, in the order received.
+     * 
+     * @param items the (processInstanceId, taskId, dn4) tuples to complete; the
+     *              process instance may be omitted for tasks in the inbox
+     * @return ResponseEntity with one result per item, in request order, each
+     *         carrying the {@code status} the single-task endpoint would have
+     *         answered plus its response body; 400 if the list is empty or
+     *         longer than {@code assessment.bulk.max-items}
+     */
+    @PostMapping("/tasks/complete")
+    public ResponseEntity<?> completeTasks(@RequestBody List<TaskCompletion> items) {
+        String userName = identityProvider.getName();
+        Set<String> userRoles = identityProvider.getRoles();
 
-            if (task == null) {
-                logger.warn("Task {} not found in process instance {}", taskId, processInstanceId);
-                Map<String, Object> error = new HashMap<>();
-                error.put("error", "Task not found");
-                error.put("taskId", taskId);
-                error.put("processInstanceId", processInstanceId);
-                return ResponseEntity.status(404).body(error);
-            }
+        if (items == null || items.isEmpty() || items.size() > taskCompletion.getMaxItems()) {
+            logger.warn("Rejected bulk completion of {} tasks by user {}", items != null ? items.size() : 0,
+                    userName);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Between 1 and " + taskCompletion.getMaxItems() + " tasks are accepted per request");
+            return ResponseEntity.badRequest().body(error);
+        }
 
-            // Verify user has permission to complete this task
-            if (!isTaskAssignedToUser(task, userName, userRoles)) {
-                logger.warn("User {} not authorized to complete task {}", userName, taskId);
-                Map<String, Object> error = new HashMap<>();
-                error.put("error", "Not authorized to complete this task");
-                error.put("taskId", taskId);
-                error.put("userName", userName);
-                return ResponseEntity.status(403).body(error);
+        List<Map<String, Object>> results = new ArrayList<>(items.size());
+        int completed = 0;
+        for (TaskCompletionService.Outcome outcome : taskCompletion.completeAll(items, userName, userRoles)) {
+            Map<String, Object> result = new HashMap<>(outcome.getBody());
+            result.put("status", outcome.getStatus());
+            results.add(result);
+            if (outcome.isCompleted()) {
+                completed++;
             }
-
-            // Complete the task with DN4 data
-            Map<String, Object> outputData = new HashMap<>();
-            outputData.put("dn4", dn4);
-
-            logger.info("Completing task {} with DN4 data", taskId);
-            instance.completeWorkItem(taskId, outputData);
-
-            logger.info("âœ“ Task {} completed successfully by user {}", taskId, userName);
-
-            Map<String, Object> response = new HashMap<>();
-            response.put("message", "Task completed successfully");
-            response.put("taskId", taskId);
-            response.put("processInstanceId", processInstanceId);
-            response.put("completedBy", userName);
-            response.put("dn4", dn4);
-
-            return ResponseEntity.ok(response);
-
-        } catch (Exception e) {
-            logger.error("Error completing task {} in process {}", taskId, processInstanceId, e);
-            Map<String, Object> error = new HashMap<>();
-            error.put("error", "Error completing task: " + e.getMessage());
-            error.put("taskId", taskId);
-            error.put("processInstanceId", processInstanceId);
-            return ResponseEntity.status(500).body(error);
         }
+        logger.info("✓ {} of {} tasks completed by user {}", completed, items.size(), userName);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("completedBy", userName);
+        response.put("completed", completed);
+        response.put("failed", items.size() - completed);
+        response.put("results", results);
+        return ResponseEntity.ok(response);
     }
 }
@@ -0,0 +1,24 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Resumen de la carga de trabajo que devuelve {@code /assessment/stats}.
+ * <p>
+ * {@code instances} cuenta las instancias por estado: las activas son las
+ * que hay ahora mismo, y las completadas y abortadas, las que han terminado
+ * desde que arrancó la aplicación. Las tareas pendientes se agrupan por
+ * GroupId y por ActorId; la antigüedad se da en segundos y falta cuando no
+ * hay tareas pendientes.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record AssessmentStats(Map<String, Long> instances, long pendingTasks, Long oldestPendingAgeSeconds,
+        Map<String, Pending> groups, Map<String, Pending> actors) {
+
+    /** Tareas pendientes de un grupo o de un usuario. */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public record Pending(long pending, Long oldestAgeSeconds) {
+    }
+}
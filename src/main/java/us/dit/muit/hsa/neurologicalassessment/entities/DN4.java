@@ -1,29 +1,63 @@
 package us.dit.muit.hsa.neurologicalassessment.entities;
 
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdSerializer;
+
+/**
+ * Cuestionario DN4 (Douleur Neuropathique 4 Questions).
+ * <p>
+ * Las diez respuestas se guardan empaquetadas en un único {@code int}: los
+ * bits 0-9 son las respuestas, en el orden de {@link #ITEMS}, y los bits
+ * 16-25 indican qué preguntas se han contestado. Una pregunta sin contestar
+ * se ve como {@code null} en su getter y en el JSON, y cuenta como síntoma
+ * ausente en la puntuación, que es el número de respuestas afirmativas.
+ * <p>
+ * El JSON mantiene un campo por pregunta con los nombres de siempre; lo
+ * escriben y leen directamente {@link Serializer} y {@link Deserializer} a
+ * partir de los bits.
+ */
+@JsonSerialize(using = DN4.Serializer.class)
+@JsonDeserialize(using = DN4.Deserializer.class)
 public class DN4 {
 
     static final long serialVersionUID = 1L;
-    private java.lang.Long id;
-
-    private java.lang.Boolean burningPain;
-
-    private java.lang.Boolean painfulCold;
-
-    private java.lang.Boolean electricShock;
-
-    private java.lang.Boolean tingling;
-
-    private java.lang.Boolean pinsAndNeedles;
-
-    private java.lang.Boolean numbness;
 
-    private java.lang.Boolean itching;
+    /** Nombre de cada pregunta en el JSON; su posición es su bit. */
+    static final String[] ITEMS = { "burningPain", "painfulCold", "electricShock", "tingling",
+            "pinsAndNeedles", "numbness", "itching", "touchHypoesthesia", "prickHypoesthesia",
+            "brushingPain" };
+
+    private static final int BURNING_PAIN = 1;
+    private static final int PAINFUL_COLD = 1 << 1;
+    private static final int ELECTRIC_SHOCK = 1 << 2;
+    private static final int TINGLING = 1 << 3;
+    private static final int PINS_AND_NEEDLES = 1 << 4;
+    private static final int NUMBNESS = 1 << 5;
+    private static final int ITCHING = 1 << 6;
+    private static final int TOUCH_HYPOESTHESIA = 1 << 7;
+    private static final int PRICK_HYPOESTHESIA = 1 << 8;
+    private static final int BRUSHING_PAIN = 1 << 9;
+
+    private static final int ALL = (1 << ITEMS.length) - 1;
+    /** Desplazamiento de la máscara de preguntas contestadas. */
+    private static final int ANSWERED = 16;
 
-    private java.lang.Boolean touchHypoesthesia;
-
-    private java.lang.Boolean prickHypoesthesia;
+    private java.lang.Long id;
 
-    private java.lang.Boolean brushingPain;
+    /** Respuestas y máscara de contestadas; una respuesta sólo vale 1 si está contestada. */
+    private int answers;
 
     private java.lang.Integer score;
 
@@ -39,83 +73,83 @@ public class DN4 {
     }
 
     public java.lang.Boolean isBurningPain() {
-        return this.burningPain;
+        return get(BURNING_PAIN);
     }
 
     public void setBurningPain(java.lang.Boolean burningPain) {
-        this.burningPain = burningPain;
+        set(BURNING_PAIN, burningPain);
     }
 
     public java.lang.Boolean isPainfulCold() {
-        return this.painfulCold;
+        return get(PAINFUL_COLD);
     }
 
     public void setPainfulCold(java.lang.Boolean painfulCold) {
-        this.painfulCold = painfulCold;
+        set(PAINFUL_COLD, painfulCold);
     }
 
     public java.lang.Boolean isElectricShock() {
-        return this.electricShock;
+        return get(ELECTRIC_SHOCK);
     }
 
     public void setElectricShock(java.lang.Boolean electricShock) {
-        this.electricShock = electricShock;
+        set(ELECTRIC_SHOCK, electricShock);
     }
 
     public java.lang.Boolean isTingling() {
-        return this.tingling;
+        return get(TINGLING);
     }
 
     public void setTingling(java.lang.Boolean tingling) {
-        this.tingling = tingling;
+        set(TINGLING, tingling);
     }
 
     public java.lang.Boolean isPinsAndNeedles() {
-        return this.pinsAndNeedles;
+        return get(PINS_AND_NEEDLES);
     }
 
     public void setPinsAndNeedles(java.lang.Boolean pinsAndNeedles) {
-        this.pinsAndNeedles = pinsAndNeedles;
+        set(PINS_AND_NEEDLES, pinsAndNeedles);
     }
 
     public java.lang.Boolean isNumbness() {
-        return this.numbness;
+        return get(NUMBNESS);
     }
 
     public void setNumbness(java.lang.Boolean numbness) {
-        this.numbness = numbness;
+        set(NUMBNESS, numbness);
     }
 
     public java.lang.Boolean isItching() {
-        return this.itching;
+        return get(ITCHING);
     }
 
     public void setItching(java.lang.Boolean itching) {
-        this.itching = itching;
+        set(ITCHING, itching);
     }
 
     public java.lang.Boolean isTouchHypoesthesia() {
-        return this.touchHypoesthesia;
+        return get(TOUCH_HYPOESTHESIA);
     }
 
     public void setTouchHypoesthesia(java.lang.Boolean touchHypoesthesia) {
-        this.touchHypoesthesia = touchHypoesthesia;
+        set(TOUCH_HYPOESTHESIA, touchHypoesthesia);
     }
 
     public java.lang.Boolean isPrickHypoesthesia() {
-        return this.prickHypoesthesia;
+        return get(PRICK_HYPOESTHESIA);
     }
 
     public void setPrickHypoesthesia(java.lang.Boolean prickHypoesthesia) {
-        this.prickHypoesthesia = prickHypoesthesia;
+        set(PRICK_HYPOESTHESIA, prickHypoesthesia);
     }
 
     public java.lang.Boolean isBrushingPain() {
-        return this.brushingPain;
+        return get(BRUSHING_PAIN);
     }
 
     public void setBrushingPain(java.lang.Boolean brushingPain) {
-        this.brushingPain = brushingPain;
+        set(BRUSHING_PAIN, brushingPain);
     }
 
     public java.lang.Integer getScore() {
@@ -126,17 +160,42 @@ public class DN4 {
         this.score = score; // Permite que Jackson/Kogito establezca el score
     }
 
+    /**
+     * Puntúa el cuestionario: una respuesta afirmativa suma un punto y una
+     * pregunta sin contestar no suma nada.
+     */
     public void calculateScore() {
-        this.score = burningPain.compareTo(false) +
-                painfulCold.compareTo(false) +
-                electricShock.compareTo(false) +
-                tingling.compareTo(false) +
-                pinsAndNeedles.compareTo(false) +
-                numbness.compareTo(false) +
-                itching.compareTo(false) +
-                touchHypoesthesia.compareTo(false) +
-                prickHypoesthesia.compareTo(false) +
-                brushingPain.compareTo(false);
+        this.score = Integer.bitCount(answers & ALL);
+    }
+
+    /** Indica si las diez preguntas están contestadas. */
+    public boolean isComplete() {
+        return (answers >>> ANSWERED) == ALL;
+    }
+
+    /** Respuestas y máscara de contestadas tal como se guardan. */
+    public int getAnswers() {
+        return answers;
+    }
+
+    public void setAnswers(int answers) {
+        int answered = (answers >>> ANSWERED) & ALL;
+        this.answers = answered << ANSWERED | answers & answered;
+    }
+
+    private java.lang.Boolean get(int item) {
+        if ((answers & item << ANSWERED) == 0) {
+            return null;
+        }
+        return (answers & item) != 0;
+    }
+
+    private void set(int item, java.lang.Boolean value) {
+        int mask = item | item << ANSWERED;
+        answers &= ~mask;
+        if (value != null) {
+            answers |= value ? mask : item << ANSWERED;
+        }
     }
 
     public DN4(java.lang.Long id, java.lang.Boolean burningPain,
@@ -145,17 +204,8 @@ public class DN4 {
             java.lang.Boolean pinsAndNeedles, java.lang.Boolean numbness,
             java.lang.Boolean itching, java.lang.Boolean touchHypoesthesia,
             java.lang.Boolean prickHypoesthesia, java.lang.Boolean brushingPain) {
-        this.id = id;
-        this.burningPain = burningPain;
-        this.painfulCold = painfulCold;
-        this.electricShock = electricShock;
-        this.tingling = tingling;
-        this.pinsAndNeedles = pinsAndNeedles;
-        this.numbness = numbness;
-        this.itching = itching;
-        this.touchHypoesthesia = touchHypoesthesia;
-        this.prickHypoesthesia = prickHypoesthesia;
-        this.brushingPain = brushingPain;
+        this(id, burningPain, painfulCold, electricShock, tingling, pinsAndNeedles, numbness, itching,
+                touchHypoesthesia, prickHypoesthesia, brushingPain, null);
     }
 
     public DN4(java.lang.Long id, java.lang.Boolean burningPain,
@@ -166,16 +216,133 @@ public class DN4 {
             java.lang.Boolean prickHypoesthesia,
             java.lang.Boolean brushingPain, java.lang.Integer score) {
         this.id = id;
-        this.burningPain = burningPain;
-        this.painfulCold = painfulCold;
-        this.electricShock = electricShock;
-        this.tingling = tingling;
-        this.pinsAndNeedles = pinsAndNeedles;
-        this.numbness = numbness;
-        this.itching = itching;
-        this.touchHypoesthesia = touchHypoesthesia;
-        this.prickHypoesthesia = prickHypoesthesia;
-        this.brushingPain = brushingPain;
+        set(BURNING_PAIN, burningPain);
+        set(PAINFUL_COLD, painfulCold);
+        set(ELECTRIC_SHOCK, electricShock);
+        set(TINGLING, tingling);
+        set(PINS_AND_NEEDLES, pinsAndNeedles);
+        set(NUMBNESS, numbness);
+        set(ITCHING, itching);
+        set(TOUCH_HYPOESTHESIA, touchHypoesthesia);
+        set(PRICK_HYPOESTHESIA, prickHypoesthesia);
+        set(BRUSHING_PAIN, brushingPain);
         this.score = score;
     }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("DN4{id=").append(id);
+        for (int i = 0; i < ITEMS.length; i++) {
+            sb.append(", ").append(ITEMS[i]).append('=').append(get(1 << i));
+        }
+        return sb.append(", score=").append(score).append('}').toString();
+    }
+
+    /** Escribe el cuestionario con un campo por pregunta, sin pasar por los getters. */
+    static final class Serializer extends StdSerializer<DN4> {
+        private static final long serialVersionUID = 1L;
+
+        /** Nombres ya codificados, como los que usa Jackson con los beans. */
+        private static final SerializedString ID = new SerializedString("id");
+        private static final SerializedString SCORE = new SerializedString("score");
+        private static final SerializedString[] NAMES = new SerializedString[ITEMS.length];
+
+        static {
+            for (int i = 0; i < ITEMS.length; i++) {
+                NAMES[i] = new SerializedString(ITEMS[i]);
+            }
+        }
+
+        Serializer() {
+            super(DN4.class);
+        }
+
+        @Override
+        public void serialize(DN4 dn4, JsonGenerator gen, SerializerProvider provider) throws IOException {
+            gen.writeStartObject(dn4);
+            gen.writeFieldName(ID);
+            if (dn4.id != null) {
+                gen.writeNumber(dn4.id);
+            } else {
+                gen.writeNull();
+            }
+            for (int i = 0; i < ITEMS.length; i++) {
+                int item = 1 << i;
+                gen.writeFieldName(NAMES[i]);
+                if ((dn4.answers & item << ANSWERED) != 0) {
+                    gen.writeBoolean((dn4.answers & item) != 0);
+                } else {
+                    gen.writeNull();
+                }
+            }
+            gen.writeFieldName(SCORE);
+            if (dn4.score != null) {
+                gen.writeNumber(dn4.score);
+            } else {
+                gen.writeNull();
+            }
+            gen.writeEndObject();
+        }
+    }
+
+    /** Lee el JSON de {@link Serializer} directamente a los bits. */
+    static final class Deserializer extends StdDeserializer<DN4> {
+        private static final long serialVersionUID = 1L;
+
+        private static final Map<String, Integer> BITS = new HashMap<>();
+
+        static {
+            for (int i = 0; i < ITEMS.length; i++) {
+                BITS.put(ITEMS[i], 1 << i);
+            }
+        }
+
+        Deserializer() {
+            super(DN4.class);
+        }
+
+        @Override
+        public DN4 deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            JsonToken token = p.currentToken();
+            if (token == JsonToken.START_OBJECT) {
+                token = p.nextToken();
+            } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {
+                // Array o escalar: igual que el deserializador de beans de Jackson
+                return (DN4) ctxt.handleUnexpectedToken(DN4.class, p);
+            }
+            DN4 dn4 = new DN4();
+            for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+                String name = p.currentName();
+                token = p.nextToken();
+                Integer item = BITS.get(name);
+                if (item != null) {
+                    dn4.set(item, booleanValue(p, token, ctxt));
+                } else if ("id".equals(name)) {
+                    dn4.id = token == JsonToken.VALUE_NUMBER_INT ? Long.valueOf(p.getLongValue())
+                            : token == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, Long.class);
+                } else if ("score".equals(name)) {
+                    dn4.score = token == JsonToken.VALUE_NUMBER_INT ? Integer.valueOf(p.getIntValue())
+                            : token == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, Integer.class);
+                } else {
+                    ctxt.handleUnknownProperty(p, this, DN4.class, name);
+                }
+            }
+            return dn4;
+        }
+
+        /** Lee un booleano; las coerciones ("true", 1...) se dejan en manos de Jackson. */
+        private static Boolean booleanValue(JsonParser p, JsonToken token, DeserializationContext ctxt)
+                throws IOException {
+            switch (token) {
+            case VALUE_TRUE:
+                return Boolean.TRUE;
+            case VALUE_FALSE:
+                return Boolean.FALSE;
+            case VALUE_NULL:
+                return null;
+            default:
+                return ctxt.readValue(p, Boolean.class);
+            }
+        }
+    }
 }
@@ -0,0 +1,26 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Estado de los nodos de una instancia, para colorear en el cliente el SVG de
+ * la definición del proceso en lugar de descargar un SVG por instancia.
+ * <p>
+ * Los ids son los del BPMN, que coinciden con los de los grupos del SVG.
+ * {@code completed} no lleva horas porque el motor sólo guarda los ids de los
+ * nodos completados. Las variables de la instancia sólo se incluyen en las
+ * consultas de varias instancias, donde sustituyen al listado de
+ * {@code /assessment}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record NodeStateOverlay(String processInstanceId, String state, Date start, Map<String, Object> variables,
+        List<ActiveNode> active, List<String> completed) {
+
+    /** Nodo activo y hora en que se activó. */
+    public record ActiveNode(String id, Date triggered) {
+    }
+}
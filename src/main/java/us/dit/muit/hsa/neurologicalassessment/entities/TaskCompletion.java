@@ -0,0 +1,45 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+/**
+ * Elemento de una cumplimentación en bloque: el cuestionario DN4 con el que se
+ * completa la tarea {@code taskId} de la instancia {@code processInstanceId}.
+ * La instancia puede omitirse si la tarea está en la bandeja de tareas.
+ */
+public class TaskCompletion {
+    private String processInstanceId;
+    private String taskId;
+    private DN4 dn4;
+
+    public TaskCompletion() {
+    }
+
+    public TaskCompletion(String processInstanceId, String taskId, DN4 dn4) {
+        this.processInstanceId = processInstanceId;
+        this.taskId = taskId;
+        this.dn4 = dn4;
+    }
+
+    public String getProcessInstanceId() {
+        return processInstanceId;
+    }
+
+    public void setProcessInstanceId(String processInstanceId) {
+        this.processInstanceId = processInstanceId;
+    }
+
+    public String getTaskId() {
+        return taskId;
+    }
+
+    public void setTaskId(String taskId) {
+        this.taskId = taskId;
+    }
+
+    public DN4 getDn4() {
+        return dn4;
+    }
+
+    public void setDn4(DN4 dn4) {
+        this.dn4 = dn4;
+    }
+}
@@ -0,0 +1,19 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import java.util.List;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Página de un listado de tareas en JSON ({@code /assessment/tasks} y
+ * {@code /assessment/{processInstanceId}/tasks}).
+ * <p>
+ * {@code nextCursor} es el valor de {@code after} para pedir la página
+ * siguiente y vale {@code null} en la última. {@code processInstanceId} sólo
+ * aparece en el listado de una instancia.
+ */
+public record TaskPage(List<TaskSummary> tasks, String nextCursor, int totalTasks,
+        @JsonInclude(JsonInclude.Include.NON_NULL) String processInstanceId, String userName,
+        Set<String> userRoles) {
+}
@@ -0,0 +1,49 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Tarea tal como la devuelven los listados de tareas.
+ * <p>
+ * Con el parámetro {@code fields} el cliente elige qué campos recibe; los que
+ * no pide quedan a {@code null} y no se serializan. Los parámetros del work
+ * item (cuestionario DN4, TaskName, GroupId...) son lo más costoso de
+ * serializar, así que conviene pedirlos sólo cuando se van a usar.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TaskSummary(String id, String name, String processInstanceId, String phase, String phaseStatus,
+        Map<String, Object> parameters, String cursor) {
+
+    /** Campos que se pueden pedir en {@code fields}. */
+    public static final List<String> FIELDS = List.of("id", "name", "processInstanceId", "phase", "phaseStatus",
+            "parameters", "cursor");
+
+    /** Todos los campos, cuando no se indica {@code fields}. */
+    public static final Set<String> ALL_FIELDS = Collections.unmodifiableSet(new LinkedHashSet<>(FIELDS));
+
+    /**
+     * Interpreta el parámetro {@code fields}, una lista separada por comas.
+     *
+     * @throws IllegalArgumentException si pide un campo que no existe
+     */
+    public static Set<String> fields(String fields) {
+        if (fields == null || fields.isBlank()) {
+            return ALL_FIELDS;
+        }
+        Set<String> selected = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!ALL_FIELDS.contains(name)) {
+                throw new IllegalArgumentException("Unknown field '" + name + "', expected some of " + FIELDS);
+            }
+            selected.add(name);
+        }
+        return selected.size() == ALL_FIELDS.size() ? ALL_FIELDS : Collections.unmodifiableSet(selected);
+    }
+}
@@ -0,0 +1,114 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Agrupa en micro-lotes las citas pedidas por distintos inicios de proceso.
+ * <p>
+ * La primera petición abre una ventana de {@code fhir.batch.window}; todas las
+ * URLs recibidas durante la ventana (o hasta llenar {@code fhir.batch.max-size})
+ * se resuelven con una única búsqueda multi-id por servidor, de modo que N citas
+ * cuestan un viaje de ida y vuelta en lugar de N.
+ */
+final class AppointmentBatcher {
+
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentBatcher.class);
+
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Function<List<String>, Map<String, ResolvedAppointment>> loader;
+    private final ScheduledExecutorService scheduler;
+    private final DistributionSummary batchSizes;
+
+    private final Object lock = new Object();
+    private Map<String, CompletableFuture<ResolvedAppointment>> pending = new LinkedHashMap<>();
+    private long generation;
+
+    AppointmentBatcher(long windowNanos, int maxBatchSize,
+            Function<List<String>, Map<String, ResolvedAppointment>> loader, MeterRegistry meterRegistry) {
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.loader = loader;
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "appointment-batcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.batchSizes = DistributionSummary.builder("fhir.appointment.batch.size")
+                .description("Citas resueltas por cada búsqueda agrupada")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Encola la URL en el lote en curso.
+     *
+     * @return futuro que se completa cuando se resuelve el lote, con
+     *         {@code null} si el servidor no conoce la cita
+     */
+    CompletableFuture<ResolvedAppointment> submit(String url) {
+        Map<String, CompletableFuture<ResolvedAppointment>> full = null;
+        CompletableFuture<ResolvedAppointment> future;
+        synchronized (lock) {
+            future = pending.computeIfAbsent(url, key -> new CompletableFuture<>());
+            if (pending.size() >= maxBatchSize) {
+                full = takePending();
+            } else if (pending.size() == 1) {
+                long scheduled = generation;
+                scheduler.schedule(() -> flush(scheduled), windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            Map<String, CompletableFuture<ResolvedAppointment>> batch = full;
+            scheduler.execute(() -> load(batch));
+        }
+        return future;
+    }
+
+    void shutdown() {
+        scheduler.shutdown();
+    }
+
+    private void flush(long scheduled) {
+        Map<String, CompletableFuture<ResolvedAppointment>> batch;
+        synchronized (lock) {
+            // El lote de esta ventana ya se envió al llenarse
+            if (scheduled != generation || pending.isEmpty()) {
+                return;
+            }
+            batch = takePending();
+        }
+        load(batch);
+    }
+
+    private Map<String, CompletableFuture<ResolvedAppointment>> takePending() {
+        Map<String, CompletableFuture<ResolvedAppointment>> batch = pending;
+        pending = new LinkedHashMap<>();
+        generation++;
+        return batch;
+    }
+
+    private void load(Map<String, CompletableFuture<ResolvedAppointment>> batch) {
+        batchSizes.record(batch.size());
+        try {
+            Map<String, ResolvedAppointment> resolved = loader.apply(new ArrayList<>(batch.keySet()));
+            batch.forEach((url, future) -> future.complete(resolved.get(url)));
+        } catch (RuntimeException e) {
+            logger.warn("Batch resolution of {} appointments failed: {}", batch.size(), e.getMessage());
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+}
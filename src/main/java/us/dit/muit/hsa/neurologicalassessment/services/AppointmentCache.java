@@ -0,0 +1,152 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Caché acotada de citas resueltas, indexada por la URL del Appointment.
+ * <p>
+ * Una entrada se sirve directamente mientras no supere el TTL. Una vez
+ * caducada no se descarta: se devuelve como "stale" para que el servicio la
+ * revalide con un Bundle {@code batch} de lecturas condicionales en lugar de
+ * repetir la búsqueda completa. Las entradas sólo desaparecen por tamaño o
+ * por no usarse durante {@code fhir.cache.max-idle}.
+ */
+@Component
+public class AppointmentCache {
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Cache<String, Entry> entries;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter stale;
+    private final Counter unchanged;
+    private final Counter modified;
+    private final Counter evictions;
+
+    @Autowired
+    public AppointmentCache(FhirProperties properties, MeterRegistry meterRegistry) {
+        FhirProperties.Cache config = properties.getCache();
+        this.enabled = config.isEnabled();
+        this.ttlNanos = config.getTtl().toNanos();
+
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.stale = requests(meterRegistry, "stale");
+        this.unchanged = revalidations(meterRegistry, "unchanged");
+        this.modified = revalidations(meterRegistry, "modified");
+        this.evictions = Counter.builder("fhir.appointment.cache.evictions")
+                .description("Citas descartadas de la caché por tamaño o inactividad")
+                .register(meterRegistry);
+
+        this.entries = Caffeine.newBuilder()
+                .maximumSize(config.getMaxSize())
+                .expireAfterAccess(config.getMaxIdle().toNanos(), TimeUnit.NANOSECONDS)
+                .removalListener((String url, Entry entry, RemovalCause cause) -> {
+                    if (cause.wasEvicted()) {
+                        evictions.increment();
+                    }
+                })
+                .build();
+        meterRegistry.gauge("fhir.appointment.cache.size", entries, Cache::estimatedSize);
+    }
+
+    /**
+     * Caché con la configuración por defecto, para uso fuera de Spring.
+     */
+    public static AppointmentCache createDefault() {
+        return new AppointmentCache(new FhirProperties(), Metrics.globalRegistry);
+    }
+
+    /**
+     * Busca la cita en caché.
+     *
+     * @return la entrada (vigente o caducada) o {@code null} si no está
+     */
+    Entry get(String url) {
+        Entry entry = enabled ? entries.getIfPresent(url) : null;
+        if (entry == null) {
+            misses.increment();
+        } else if (entry.isFresh()) {
+            hits.increment();
+        } else {
+            stale.increment();
+        }
+        return entry;
+    }
+
+    /**
+     * Indica si hay una entrada vigente para la URL, sin contabilizar la
+     * consulta en las métricas.
+     */
+    boolean containsFresh(String url) {
+        Entry entry = enabled ? entries.getIfPresent(url) : null;
+        return entry != null && entry.isFresh();
+    }
+
+    void put(String url, ResolvedAppointment appointment) {
+        if (enabled) {
+            entries.put(url, new Entry(appointment, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    /**
+     * Registra el resultado de revalidar una entrada caducada. Si el servidor
+     * confirma que nada ha cambiado, la entrada vuelve a estar vigente un TTL
+     * más; si no, se elimina y el llamante debe volver a resolverla.
+     */
+    void revalidated(String url, Entry entry, boolean isUnchanged) {
+        if (isUnchanged) {
+            unchanged.increment();
+            put(url, entry.getAppointment());
+        } else {
+            modified.increment();
+            entries.invalidate(url);
+        }
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("fhir.appointment.cache.requests")
+                .description("Consultas a la caché de citas")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static Counter revalidations(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("fhir.appointment.cache.revalidations")
+                .description("Revalidaciones condicionales de citas caducadas")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    static final class Entry {
+        private final ResolvedAppointment appointment;
+        private final long expiresAt;
+
+        private Entry(ResolvedAppointment appointment, long expiresAt) {
+            this.appointment = appointment;
+            this.expiresAt = expiresAt;
+        }
+
+        ResolvedAppointment getAppointment() {
+            return appointment;
+        }
+
+        boolean isFresh() {
+            return System.nanoTime() - expiresAt < 0;
+        }
+    }
+}
@@ -1,24 +1,60 @@
 package us.dit.muit.hsa.neurologicalassessment.services;
 
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
 import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.logging.Logger;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.annotation.PreDestroy;
 
 import org.hl7.fhir.r5.model.Appointment;
 import org.hl7.fhir.r5.model.Appointment.AppointmentParticipantComponent;
 import org.hl7.fhir.r5.model.Bundle;
 import org.hl7.fhir.r5.model.Bundle.BundleEntryComponent;
 import org.hl7.fhir.r5.model.HumanName;
+import org.hl7.fhir.r5.model.IdType;
 import org.hl7.fhir.r5.model.Patient;
 import org.hl7.fhir.r5.model.Practitioner;
+import org.hl7.fhir.r5.model.Reference;
 import org.hl7.fhir.r5.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service; // Importante: Anotación de Spring
 
 import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.EncodingEnum;
+import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IHttpClient;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+import ca.uhn.fhir.rest.client.exceptions.FhirClientConnectionException;
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
 import ca.uhn.fhir.util.UrlUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
 
 /**
  * Servicio Spring para interactuar con recursos FHIR Appointment.
@@ -28,94 +64,521 @@ import ca.uhn.fhir.util.UrlUtil;
 @Service // 1. Anotación de Spring para inyectabilidad
 public class AppointmentDAOService {
 
-    private static final Logger logger = Logger.getLogger(AppointmentDAOService.class.getName());
+    private static final Logger logger = LoggerFactory.getLogger(AppointmentDAOService.class);
+
+    /** {@code _include=Appointment:actor:Patient}: los practitioners se toman del índice local. */
+    private static final Include INCLUDE_PATIENT_ACTOR = Appointment.INCLUDE_ACTOR.withType("Patient");
+
+    private final FhirClientRegistry clientRegistry;
+    private final FhirResilience resilience;
+    private final AppointmentCache appointmentCache;
+    private final int maxBatchSize;
+    /** {@code null} si la ventana de micro-lotes está desactivada. */
+    private final AppointmentBatcher batcher;
+    /** {@code null} si la ejecución asíncrona está desactivada. */
+    private final ThreadPoolExecutor lookupExecutor;
+    /** Valor de {@code _elements} del modo ligero; {@code null} si está desactivado. */
+    private final String leanElements;
+    private final Counter leanFallbacks;
+    /** Servidores que han rechazado la revalidación con un Bundle {@code batch}. */
+    private final Set<String> noBatchServers = ConcurrentHashMap.newKeySet();
+    private final AppointmentMetrics metrics;
+    /** {@code null} fuera de Spring: siempre se incluyen los practitioners. */
+    private final PractitionerIndex practitionerIndex;
+    /**
+     * Resoluciones en curso por URL de la cita: las llamadas concurrentes a la
+     * misma cita esperan a la primera en lugar de repetir la petición.
+     */
+    private final Map<String, CompletableFuture<ResolvedAppointment>> inFlight = new ConcurrentHashMap<>();
+    private final Counter coalesced;
+
+    /**
+     * Constructor usado fuera de Spring (tests y constructor por defecto del
+     * handler generado por Kogito): crea su propio registro de clientes y su
+     * propia caché.
+     */
+    public AppointmentDAOService() {
+        this(FhirClientRegistry.createDefault(), AppointmentCache.createDefault(), new FhirProperties(),
+                Metrics.globalRegistry, null, FhirResilience.createDefault());
+    }
+
+    @Autowired
+    public AppointmentDAOService(FhirClientRegistry clientRegistry, AppointmentCache appointmentCache,
+            FhirProperties properties, MeterRegistry meterRegistry, PractitionerIndex practitionerIndex,
+            FhirResilience resilience) {
+        this.clientRegistry = clientRegistry;
+        this.resilience = resilience;
+        this.appointmentCache = appointmentCache;
+        this.maxBatchSize = Math.max(1, properties.getBatch().getMaxSize());
+        long windowNanos = properties.getBatch().getWindow().toNanos();
+        this.batcher = windowNanos > 0
+                ? new AppointmentBatcher(windowNanos, maxBatchSize, this::fetchAppointments, meterRegistry)
+                : null;
+        this.lookupExecutor = properties.getAsync().isEnabled()
+                ? createLookupExecutor(properties.getAsync(), meterRegistry)
+                : null;
+        this.leanElements = properties.getLean().isEnabled()
+                ? String.join(",", properties.getLean().getElements())
+                : null;
+        this.metrics = new AppointmentMetrics(meterRegistry);
+        this.leanFallbacks = Counter.builder("fhir.appointment.lean.fallbacks")
+                .description("Búsquedas en modo ligero repetidas con el modelo completo")
+                .register(meterRegistry);
+        this.practitionerIndex = practitionerIndex;
+        this.coalesced = Counter.builder("fhir.appointment.coalesced")
+                .description("Consultas de citas servidas por una resolución ya en curso de la misma URL")
+                .register(meterRegistry);
+        meterRegistry.gauge("fhir.appointment.inflight", inFlight, Map::size);
+    }
+
+    private static ThreadPoolExecutor createLookupExecutor(FhirProperties.Async config, MeterRegistry meterRegistry) {
+        int threads = Math.max(1, config.getMaxConcurrency());
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity())), runnable -> {
+                    Thread thread = new Thread(runnable, "appointment-lookup-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        // executor.active / executor.queued / executor.queue.remaining con name=fhir.appointment.lookup
+        ExecutorServiceMetrics.monitor(meterRegistry, executor, "fhir.appointment.lookup");
+        return executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (batcher != null) {
+            batcher.shutdown();
+        }
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Variante asíncrona de {@link #getAppointmentAttributes(String)} para la
+     * tarea de servicio: la consulta al servidor FHIR se ejecuta en un pool
+     * acotado ({@code fhir.async.max-concurrency}) en lugar de en el hilo que
+     * avanza la instancia.
+     * <p>
+     * Si la cita está vigente en caché, o la ejecución asíncrona está
+     * desactivada, el futuro se devuelve ya completado. Si la cola del pool
+     * está llena, la consulta se hace en el hilo llamante, de modo que la
+     * carga se frena en origen en lugar de acumularse. Si la misma cita ya se
+     * está resolviendo, se devuelve esa resolución sin ocupar un hilo del pool.
+     */
+    public CompletableFuture<AppointmentDTO> getAppointmentAttributesAsync(String appointmentURL) {
+        if (lookupExecutor == null || appointmentCache.containsFresh(appointmentURL)) {
+            return completedLookup(appointmentURL);
+        }
+        CompletableFuture<ResolvedAppointment> running = inFlight.get(appointmentURL);
+        if (running != null) {
+            coalesced.increment();
+            return running.handle((resolved, error) -> {
+                if (error != null) {
+                    throw serverError(appointmentURL, error);
+                }
+                return toDTO(appointmentURL, resolved);
+            });
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> getAppointmentAttributes(appointmentURL), lookupExecutor);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Appointment lookup pool saturated, resolving in caller thread: {}", appointmentURL);
+            return completedLookup(appointmentURL);
+        }
+    }
+
+    private CompletableFuture<AppointmentDTO> completedLookup(String appointmentURL) {
+        try {
+            return CompletableFuture.completedFuture(getAppointmentAttributes(appointmentURL));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 
     /**
      * Método de servicio principal llamado desde la tarea de servicio del BPMN.
      * En lugar de WorkItem, recibe directamente los parámetros necesarios y
      * devuelve el mapa de resultados.
-     * 
+     *
      * @param appointmentURL La URL del recurso FHIR Appointment.
      * @return Mapa que contiene los atributos "Practitioner" y "Subject".
      */
     public AppointmentDTO getAppointmentAttributes(String appointmentURL) {
 
-        AppointmentDTO appointmentDTO = new AppointmentDTO();
+        try {
+            // 2. Cita ya resuelta y vigente: se sirve sin ir al servidor
+            AppointmentCache.Entry cached = appointmentCache.get(appointmentURL);
+            if (cached != null && cached.isFresh()) {
+                return cached.getAppointment().toDTO();
+            }
+            return toDTO(appointmentURL, loadOnce(appointmentURL, cached));
+
+        } catch (Exception e) {
+            throw serverError(appointmentURL, e);
+        }
+    }
+
+    private static AppointmentDTO toDTO(String appointmentURL, ResolvedAppointment resolved) {
+        if (resolved == null) {
+            logger.warn("Unknown appointment for URL: {}", appointmentURL);
+            return new AppointmentDTO();
+        }
+        return resolved.toDTO();
+    }
+
+    private static RuntimeException serverError(String appointmentURL, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        // Manejo de excepciones (ej: URISyntaxException, errores de cliente FHIR)
+        logger.error("Error processing WorkItem for URL {}: {}", appointmentURL, cause.getMessage());
+        // En Kogito, lanzar una RuntimeException permite que el proceso falle
+        return new RuntimeException("Server error for FHIR Appointment.", cause);
+    }
 
+    /**
+     * Carga la cita una sola vez aunque la pidan varios hilos a la vez: el
+     * primero la resuelve y el resto espera su resultado, o su fallo.
+     */
+    private ResolvedAppointment loadOnce(String appointmentURL, AppointmentCache.Entry cached) throws Exception {
+        CompletableFuture<ResolvedAppointment> load = new CompletableFuture<>();
+        CompletableFuture<ResolvedAppointment> running = inFlight.putIfAbsent(appointmentURL, load);
+        if (running != null) {
+            coalesced.increment();
+            logger.debug("Waiting for in-flight resolution of {}", appointmentURL);
+            return running.join();
+        }
         try {
-            // 3. Validación y obtención de datos con Bundle (_include)
-            Bundle bundle = getAppointmentBundle(appointmentURL);
-            if (bundle != null && bundle.hasEntry()) {
-                // Extraer Appointment y recursos relacionados del Bundle
-                Appointment appointment = null;
-                Patient patient = null;
-                Practitioner practitioner = null;
+            ResolvedAppointment resolved = load(appointmentURL, cached);
+            load.complete(resolved);
+            return resolved;
+        } catch (Throwable e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(appointmentURL, load);
+        }
+    }
 
-                for (BundleEntryComponent entry : bundle.getEntry()) {
-                    Resource resource = entry.getResource();
-                    if (resource instanceof Appointment) {
-                        appointment = (Appointment) resource;
-                    } else if (resource instanceof Patient) {
-                        patient = (Patient) resource;
-                    } else if (resource instanceof Practitioner) {
-                        practitioner = (Practitioner) resource;
-                    }
+    /**
+     * Revalida la cita caducada con un Bundle {@code batch} o, si no está en
+     * caché o ha cambiado, la resuelve de nuevo y la guarda en caché.
+     *
+     * @return la cita resuelta o {@code null} si el servidor no la conoce
+     */
+    private ResolvedAppointment load(String appointmentURL, AppointmentCache.Entry cached) throws Exception {
+        if (cached != null) {
+            ResolvedAppointment previous = cached.getAppointment();
+            boolean unchanged = resilience.call(previous.getServerBase(), () -> isUnchanged(previous));
+            appointmentCache.revalidated(appointmentURL, cached, unchanged);
+            if (unchanged) {
+                logger.debug("Appointment revalidated without changes: {}", appointmentURL);
+                return previous;
+            }
+        }
+
+        // 3. Validación y obtención de datos con Bundle (_include)
+        if (batcher != null) {
+            // Se valida aquí para que una URL errónea no haga fallar el lote
+            getServerBase(appointmentURL);
+            return batcher.submit(appointmentURL).join();
+        }
+        ResolvedAppointment resolved = resolveAppointment(appointmentURL);
+        if (resolved != null) {
+            appointmentCache.put(appointmentURL, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Resuelve varias citas a la vez. Las URLs se agrupan por servidor y cada
+     * grupo se resuelve con una única búsqueda
+     * {@code Appointment?_id=a,b,c&_include=Appointment:actor&_include=Appointment:subject}
+     * (siguiendo la paginación), en lugar de una petición por cita. Las citas
+     * vigentes en caché no se vuelven a pedir.
+     *
+     * @param appointmentURLs URLs de recursos FHIR Appointment
+     * @return un DTO por URL, en el mismo orden; vacío si la cita no existe
+     */
+    public Map<String, AppointmentDTO> getAppointmentAttributesBatch(List<String> appointmentURLs) {
+        Map<String, AppointmentDTO> result = new LinkedHashMap<>();
+        List<String> toFetch = new ArrayList<>();
+        for (String url : appointmentURLs) {
+            if (result.containsKey(url) || toFetch.contains(url)) {
+                continue;
+            }
+            AppointmentCache.Entry cached = appointmentCache.get(url);
+            if (cached != null && cached.isFresh()) {
+                result.put(url, cached.getAppointment().toDTO());
+            } else {
+                result.put(url, null);
+                toFetch.add(url);
+            }
+        }
+
+        if (!toFetch.isEmpty()) {
+            try {
+                Map<String, ResolvedAppointment> fetched = fetchAppointments(toFetch);
+                for (String url : toFetch) {
+                    ResolvedAppointment resolved = fetched.get(url);
+                    result.put(url, resolved != null ? resolved.toDTO() : new AppointmentDTO());
                 }
+            } catch (RuntimeException e) {
+                logger.error("Error processing appointment batch of {} URLs: {}", toFetch.size(), e.getMessage());
+                throw new RuntimeException("Server error for FHIR Appointment.", e);
+            }
+        }
+        return result;
+    }
 
-                if (appointment != null) {
-                    logger.info("Localized Appointment with ID: " + appointment.getId());
+    /**
+     * Resuelve un lote de URLs agrupándolas por servidor y guarda el resultado
+     * en caché. Usado por la API de lotes y por la ventana de micro-lotes.
+     */
+    private Map<String, ResolvedAppointment> fetchAppointments(List<String> appointmentURLs) {
+        // URL base del servidor → (id de la cita → URL pedida)
+        Map<String, Map<String, String>> byServer = new LinkedHashMap<>();
+        long start = System.nanoTime();
+        for (String url : appointmentURLs) {
+            try {
+                byServer.computeIfAbsent(getServerBase(url), base -> new LinkedHashMap<>())
+                        .put(getAppointmentId(url), url);
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid appointment URL: " + url, e);
+            }
+        }
+        metrics.record(AppointmentMetrics.VALIDATION, start);
+
+        Map<String, ResolvedAppointment> resolved = new HashMap<>();
+        byServer.forEach((serverBase, urlsById) -> {
+            List<String> ids = new ArrayList<>(urlsById.keySet());
+            for (int from = 0; from < ids.size(); from += maxBatchSize) {
+                List<String> chunk = ids.subList(from, Math.min(ids.size(), from + maxBatchSize));
+                Map<String, ResolvedAppointment> byId = searchAppointments(serverBase, chunk);
+                byId.forEach((id, appointment) -> {
+                    String url = urlsById.get(id);
+                    resolved.put(url, appointment);
+                    appointmentCache.put(url, appointment);
+                });
+            }
+        });
+        return resolved;
+    }
 
-                    // Obtaining patient name if available in the Bundle
-                    if (patient != null && patient.hasName()) {
-                        String patientName = getPatientName(patient);
-                        logger.info("Patient name: " + patientName);
-                        // Puedes agregar el nombre al DTO si lo necesitas:
-                        appointmentDTO.setPatient(patientName);
-                    }
+    /**
+     * Busca la cita con sus recursos relacionados y extrae los datos del DTO,
+     * guardando la versión de cada recurso utilizado.
+     *
+     * @return la cita resuelta o {@code null} si el servidor no la conoce
+     */
+    private ResolvedAppointment resolveAppointment(String appointmentURL) throws URISyntaxException {
+        long start = System.nanoTime();
+        String serverBase = getServerBase(appointmentURL);
+        String appointmentId = getAppointmentId(appointmentURL);
+        metrics.record(AppointmentMetrics.VALIDATION, start);
+        if (leanElements != null) {
+            return searchAppointments(serverBase, Collections.singletonList(appointmentId)).get(appointmentId);
+        }
+        Function<String, PractitionerIndex.Identity> practitioners = practitioners(serverBase);
+        Bundle bundle = resilience.call(serverBase,
+                () -> getAppointmentBundle(serverBase, appointmentId, practitioners != null));
+        if (bundle == null || !bundle.hasEntry()) {
+            return null;
+        }
+
+        start = System.nanoTime();
+        try {
+            Map<String, Resource> included = indexResources(bundle.getEntry());
+            for (Resource resource : included.values()) {
+                if (resource instanceof Appointment) {
+                    Appointment appointment = (Appointment) resource;
+                    logger.debug("Localized Appointment with ID: {}", appointment.getIdElement().getValue());
+                    return toResolvedAppointment(serverBase, appointment, included, practitioners);
+                }
+            }
+            return null;
+        } finally {
+            metrics.record(AppointmentMetrics.MAPPING, start);
+        }
+    }
 
-                    // Obtaining practitioner Id if available in the Bundle
-                    if (practitioner != null && practitioner.hasName()) {
-                        String practitionerId = getPractitionerId(practitioner);
-                        logger.info("Practitioner Id: " + practitionerId);
-                        appointmentDTO.setPractitioner(practitionerId);
+    /**
+     * Búsqueda de practitioners en el índice local, o {@code null} si hay que
+     * incluirlos en la búsqueda de la cita.
+     */
+    private Function<String, PractitionerIndex.Identity> practitioners(String serverBase) {
+        return practitionerIndex != null ? practitionerIndex.resolver(serverBase) : null;
+    }
+
+    /**
+     * Extrae los datos de una cita a partir de los recursos incluidos en el
+     * Bundle, siguiendo sus referencias: el paciente es el subject (o, en su
+     * defecto, el primer participante Patient) y el practitioner el primer
+     * participante Practitioner. Si los practitioners no se han incluido, se
+     * toma el primero que conozca el índice {@code practitioners}.
+     */
+    private static ResolvedAppointment toResolvedAppointment(String serverBase, Appointment appointment,
+            Map<String, Resource> included, Function<String, PractitionerIndex.Identity> practitioners) {
+        Patient patient = null;
+        Practitioner practitioner = null;
+        List<String> notIncluded = new ArrayList<>(1);
+
+        if (appointment.hasSubject()) {
+            Resource subject = included.get(referenceKey(appointment.getSubject()));
+            if (subject instanceof Patient) {
+                patient = (Patient) subject;
+            }
+        }
+        for (AppointmentParticipantComponent participant : appointment.getParticipant()) {
+            if (!participant.hasActor()) {
+                continue;
+            }
+            String reference = referenceKey(participant.getActor());
+            Resource actor = included.get(reference);
+            if (patient == null && actor instanceof Patient) {
+                patient = (Patient) actor;
+            } else if (practitioner == null && actor instanceof Practitioner) {
+                practitioner = (Practitioner) actor;
+            } else if (actor == null && reference != null && reference.startsWith("Practitioner/")) {
+                notIncluded.add(reference);
+            }
+        }
+
+        Map<String, String> versions = new LinkedHashMap<>();
+        recordVersion(versions, appointment);
+
+        String patientName = null;
+        String practitionerId = null;
+
+        // Obtaining patient name if available in the Bundle
+        if (patient != null && patient.hasName()) {
+            patientName = getPatientName(patient);
+            recordVersion(versions, patient);
+        }
+
+        // Obtaining practitioner Id if available in the Bundle
+        if (practitioner != null && practitioner.hasName()) {
+            practitionerId = getPractitionerId(practitioner);
+            recordVersion(versions, practitioner);
+        } else if (practitioner == null && practitioners != null) {
+            for (String reference : notIncluded) {
+                PractitionerIndex.Identity identity = practitioners.apply(reference);
+                if (identity != null) {
+                    practitionerId = identity.getPractitionerId();
+                    if (practitionerId != null) {
+                        versions.put(reference, identity.getVersionId());
                     }
-                    logger.info("Results: Practitioner=" + appointmentDTO.getPractitioner() + ", Patient="
-                            + appointmentDTO.getPatient());
+                    break;
                 }
-            } else {
-                logger.warning("Unknown appointment for URL: " + appointmentURL);
             }
+        }
+        logger.debug("Results: Practitioner={}, Patient={}", practitionerId, patientName);
 
-        } catch (Exception e) {
-            // Manejo de excepciones (ej: URISyntaxException, errores de cliente FHIR)
-            logger.severe("Error processing WorkItem for URL " + appointmentURL + ": " + e.getMessage());
-            // En Kogito, lanzar una RuntimeException permite que el proceso falle
-            throw new RuntimeException("Server error for FHIR Appointment.", e);
+        return new ResolvedAppointment(serverBase, practitionerId, patientName, versions);
+    }
+
+    /**
+     * Indexa los recursos de un Bundle por su referencia relativa sin versión
+     * ("Patient/2"), que es como los referencian las citas.
+     */
+    private static Map<String, Resource> indexResources(List<BundleEntryComponent> entries) {
+        Map<String, Resource> resources = new LinkedHashMap<>();
+        for (BundleEntryComponent entry : entries) {
+            Resource resource = entry.getResource();
+            if (resource != null) {
+                resources.put(resource.getIdElement().toUnqualifiedVersionless().getValue(), resource);
+            }
         }
+        return resources;
+    }
 
-        return appointmentDTO;
+    private static String referenceKey(Reference reference) {
+        return reference.hasReference()
+                ? new IdType(reference.getReference()).toUnqualifiedVersionless().getValue()
+                : null;
+    }
+
+    private static void recordVersion(Map<String, String> versions, Resource resource) {
+        String version = resource.getIdElement().getVersionIdPart();
+        if (version == null && resource.hasMeta()) {
+            version = resource.getMeta().getVersionId();
+        }
+        versions.put(resource.getIdElement().toUnqualifiedVersionless().getValue(), version);
+    }
+
+    /**
+     * Comprueba si alguno de los recursos usados para resolver la cita ha
+     * cambiado, con una sola petición: un Bundle {@code batch} con una lectura
+     * condicional ({@code If-None-Match}) por recurso. Los que no han cambiado
+     * vuelven como 304 sin cuerpo, así que cuesta lo mismo que la búsqueda con
+     * {@code _include} que evita, pero sin transferir los recursos.
+     * <p>
+     * Si el servidor no admite {@code batch} se recuerda y sus citas caducadas
+     * se vuelven a buscar directamente.
+     *
+     * @return {@code true} si todos los recursos siguen en la misma versión
+     */
+    private boolean isUnchanged(ResolvedAppointment appointment) {
+        Map<String, String> versions = appointment.getVersions();
+        // Sin versión no hay validador con el que preguntar
+        if (versions.isEmpty() || versions.containsValue(null)
+                || noBatchServers.contains(appointment.getServerBase())) {
+            return false;
+        }
+        Bundle batch = new Bundle().setType(Bundle.BundleType.BATCH);
+        for (Map.Entry<String, String> version : versions.entrySet()) {
+            batch.addEntry().getRequest()
+                    .setMethod(Bundle.HTTPVerb.GET)
+                    .setUrl(version.getKey())
+                    .setIfNoneMatch("W/\"" + version.getValue() + "\"");
+        }
+
+        IGenericClient client = clientRegistry.getClient(appointment.getServerBase());
+        Bundle response;
+        try {
+            response = client.transaction().withBundle(batch).execute();
+        } catch (BaseServerResponseException e) {
+            if (FhirResilience.isServerFailure(e) && e.getStatusCode() != 501) {
+                throw e;
+            }
+            noBatchServers.add(appointment.getServerBase());
+            logger.warn("FHIR server {} does not accept batch revalidation ({}); stale appointments will be "
+                    + "searched again", appointment.getServerBase(), e.getMessage());
+            return false;
+        }
+        if (response.getEntry().size() != versions.size()) {
+            return false;
+        }
+        for (BundleEntryComponent entry : response.getEntry()) {
+            String status = entry.getResponse().getStatus();
+            if (status == null || !status.startsWith("304")) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // --- Métodos Privados de Lógica (Mantenidos) ---
 
     private String getSubject(Appointment appointment) {
         String attributeValue = null;
-        logger.info("Looking for subject");
+        logger.trace("Looking for subject");
         if (appointment.hasSubject()) {
             attributeValue = appointment.getSubject().getReference();
-            logger.info("Appointment includes subject " + attributeValue);
+            logger.debug("Appointment includes subject {}", attributeValue);
         }
         return attributeValue;
     }
 
     /**
      * Extrae el nombre completo del paciente.
-     * 
+     *
      * @param patient Recurso Patient de FHIR
      * @return Nombre formateado como "Apellido, Nombre" o el primer nombre
      *         disponible
      */
-    private String getPatientName(Patient patient) {
+    private static String getPatientName(Patient patient) {
         String patientName = "Unknown Patient";
         if (patient.hasName() && !patient.getName().isEmpty()) {
             HumanName name = patient.getName().get(0);
@@ -139,7 +602,7 @@ public class AppointmentDAOService {
 
     /**
      * Extrae el nombre completo del practitioner.
-     * 
+     *
      * @param practitioner Recurso Practitioner de FHIR
      * @return Nombre formateado como "Apellido, Nombre" o el primer nombre
      *         disponible
@@ -168,12 +631,12 @@ public class AppointmentDAOService {
 
     /**
      * Extrae el Id para kogito
-     * 
+     *
      * @param practitioner Recurso Practitioner de FHIR
      * @return Id del practitioner en kogito
      *         disponible
      */
-    private String getPractitionerId(Practitioner practitioner) {
+    private static String getPractitionerId(Practitioner practitioner) {
         String practitionerId = "Unknown Practitioner";
         // Versión con stream para obtener directamente el valor
         practitionerId = practitioner.getIdentifier().stream()
@@ -182,28 +645,28 @@ public class AppointmentDAOService {
                 .findFirst()
                 .orElse(practitionerId);
 
-        logger.info("Practitioner kogito identifier: " + practitionerId);
+        logger.trace("Practitioner kogito identifier: {}", practitionerId);
         return practitionerId;
     }
 
     private String getPractitioner(Appointment appointment) {
         String attributeValue = null;
-        logger.fine("Buscando practitioner");
+        logger.trace("Buscando practitioner");
         List<AppointmentParticipantComponent> participants = appointment.getParticipant();
         for (AppointmentParticipantComponent participant : participants) {
             if (participant.hasActor() && participant.hasType()) {
-                logger.fine("Localizado participante con actor y tipo " + participant.getActor().getDisplay());
+                logger.trace("Localizado participante con actor y tipo {}", participant.getActor().getDisplay());
 
                 // Nota: Usamos getCode() en el primer tipo para verificar si es un Practitioner
                 // (ATND)
                 String code = participant.getTypeFirstRep().getCodingFirstRep().getCode();
-                logger.fine("Codigo de participación: " + code);
+                logger.trace("Codigo de participación: {}", code);
 
                 // El código V3-ParticipationType 'ATND' significa "Attender"
                 // (Practicante/Personal)
                 if (code != null && code.equals("ATND")) {
                     attributeValue = participant.getActor().getReference();
-                    logger.info("Appointment practitioner y es " + attributeValue);
+                    logger.debug("Appointment practitioner y es {}", attributeValue);
                     // Detener después de encontrar el primer Practitioner (ATND)
                     break;
                 }
@@ -212,60 +675,228 @@ public class AppointmentDAOService {
         return attributeValue;
     }
 
-    // Instead of multiple read() calls, we use search with _include to fetch
-    // related resources in one request
-    private Bundle getAppointmentBundle(String url) throws URISyntaxException {
-        FhirContext ctx = FhirContext.forR5();
-        String serverBase;
-        Bundle bundle = null;
-
-        logger.fine("Finding appointment by URL: " + url);
+    /**
+     * Valida la URL y obtiene la URL base del servidor FHIR.
+     * FHIR URL is usually [base]/[Resource]/[ID]
+     */
+    private static String getServerBase(String url) throws URISyntaxException {
         // Verifying URL format
         new URI(url); // Validate URL format
 
-        // FHIR URL is usually [base]/[Resource]/[ID]
         int pos = url.indexOf("Appointment");
         if (pos == -1) {
             throw new URISyntaxException(url, "URL does not contain 'Appointment' resource");
         }
+        return url.substring(0, pos);
+    }
 
-        serverBase = url.substring(0, pos);
-
+    private static String getAppointmentId(String url) {
         // We use UrlUtil to extract the ID, but ensuring it does not include the
         // resource type
         String fullResourceId = UrlUtil.parseUrl(url).getResourceId();
         // The ID should be only the value, not "Appointment/ID"
-        String appointmentId = fullResourceId.contains("/")
+        return fullResourceId.contains("/")
                 ? fullResourceId.substring(fullResourceId.lastIndexOf('/') + 1)
                 : fullResourceId;
+    }
 
-        logger.fine("serverBase: " + serverBase);
-        logger.fine("appointment id: " + appointmentId);
+    // Instead of multiple read() calls, we use search with _include to fetch
+    // related resources in one request
+    private Bundle getAppointmentBundle(String serverBase, String appointmentId, boolean indexedPractitioners) {
+        Bundle bundle = null;
+
+        logger.trace("serverBase: {}, appointment id: {}", serverBase, appointmentId);
 
-        IGenericClient client = ctx.newRestfulGenericClient(serverBase);
+        // Reutilizamos el cliente (y el FhirContext compartido) del registro
+        long start = System.nanoTime();
+        IGenericClient client = clientRegistry.getClient(serverBase);
+        metrics.record(AppointmentMetrics.CLIENT, start);
+        FhirResponseStats stats = FhirResponseStats.reset();
+        start = System.nanoTime();
 
         // Use search with _include to get the Appointment and its referenced resources
         // in a single HTTP request (more efficient than multiple read())
         bundle = client.search()
                 .forResource(Appointment.class)
                 .where(Appointment.RES_ID.exactly().code(appointmentId))
-                .include(Appointment.INCLUDE_ACTOR) // Incluye practitioners y otros actores
+                // Incluye practitioners y otros actores; con el índice local, sólo pacientes
+                .include(indexedPractitioners ? INCLUDE_PATIENT_ACTOR : Appointment.INCLUDE_ACTOR)
                 .include(Appointment.INCLUDE_SUBJECT) // Incluye el patient (subject)
                 .returnBundle(Bundle.class)
                 .execute();
+        metrics.search(start, stats, bundle.getEntry().size(), stats.getBytes());
 
         // Log de recursos incluidos en el Bundle
         if (bundle.hasEntry() && !bundle.getEntry().isEmpty()) {
-            logger.info("Located Bundle with " + bundle.getEntry().size() + " resources");
-            for (BundleEntryComponent entry : bundle.getEntry()) {
-                Resource resource = entry.getResource();
-                logger.info("Resource included in Bundle: " + resource.getResourceType() + "/"
-                        + resource.getIdElement().getIdPart());
+            if (logger.isDebugEnabled()) {
+                logger.debug("Located Bundle with {} resources", bundle.getEntry().size());
+                for (BundleEntryComponent entry : bundle.getEntry()) {
+                    Resource resource = entry.getResource();
+                    logger.debug("Resource included in Bundle: {}/{}", resource.getResourceType(),
+                            resource.getIdElement().getIdPart());
+                }
             }
         } else {
-            logger.warning("No Appointment found with ID: " + appointmentId);
+            logger.warn("No Appointment found with ID: {}", appointmentId);
         }
 
         return bundle;
     }
+
+    /**
+     * Búsqueda multi-id: una sola petición (más las páginas siguientes, si las
+     * hay) para todas las citas de un mismo servidor.
+     *
+     * @return cita resuelta por id; las citas no encontradas no aparecen
+     */
+    private Map<String, ResolvedAppointment> searchAppointments(String serverBase, List<String> appointmentIds) {
+        return resilience.call(serverBase, () -> doSearchAppointments(serverBase, appointmentIds));
+    }
+
+    private Map<String, ResolvedAppointment> doSearchAppointments(String serverBase, List<String> appointmentIds) {
+        Function<String, PractitionerIndex.Identity> practitioners = practitioners(serverBase);
+        if (leanElements != null) {
+            try {
+                return searchAppointmentsLean(serverBase, appointmentIds, practitioners);
+            } catch (IOException e) {
+                // Sólo fallos del propio modo ligero; los de red y los 5xx se propagan sin repetir la búsqueda
+                leanFallbacks.increment();
+                logger.warn("Lean appointment search failed, falling back to the full model: {}", e.getMessage());
+            }
+        }
+
+        long start = System.nanoTime();
+        IGenericClient client = clientRegistry.getClient(serverBase);
+        metrics.record(AppointmentMetrics.CLIENT, start);
+
+        FhirResponseStats stats = FhirResponseStats.reset();
+        start = System.nanoTime();
+        Bundle page = client.search()
+                .forResource(Appointment.class)
+                .where(Appointment.RES_ID.exactly().codes(appointmentIds))
+                .include(practitioners != null ? INCLUDE_PATIENT_ACTOR : Appointment.INCLUDE_ACTOR)
+                .include(Appointment.INCLUDE_SUBJECT)
+                .count(appointmentIds.size())
+                .returnBundle(Bundle.class)
+                .execute();
+
+        List<BundleEntryComponent> entries = new ArrayList<>(page.getEntry());
+        while (page.getLink(Bundle.LINK_NEXT) != null) {
+            page = client.loadPage().next(page).execute();
+            entries.addAll(page.getEntry());
+        }
+        metrics.search(start, stats, entries.size(), stats.getBytes());
+        logger.debug("Batch search for {} appointments returned {} resources", appointmentIds.size(), entries.size());
+
+        start = System.nanoTime();
+        try {
+            return resolveEntries(serverBase, entries, practitioners);
+        } finally {
+            metrics.record(AppointmentMetrics.MAPPING, start);
+        }
+    }
+
+    /**
+     * Resuelve con el modelo completo las citas de las entradas de un Bundle.
+     *
+     * @return cita resuelta por id; las citas no encontradas no aparecen
+     */
+    static Map<String, ResolvedAppointment> resolveEntries(String serverBase, List<BundleEntryComponent> entries) {
+        return resolveEntries(serverBase, entries, null);
+    }
+
+    static Map<String, ResolvedAppointment> resolveEntries(String serverBase, List<BundleEntryComponent> entries,
+            Function<String, PractitionerIndex.Identity> practitioners) {
+        Map<String, Resource> included = indexResources(entries);
+        Map<String, ResolvedAppointment> resolved = new HashMap<>();
+        for (Resource resource : included.values()) {
+            if (resource instanceof Appointment) {
+                Appointment appointment = (Appointment) resource;
+                resolved.put(appointment.getIdElement().getIdPart(),
+                        toResolvedAppointment(serverBase, appointment, included, practitioners));
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * Variante ligera de la búsqueda multi-id: pide sólo los elementos
+     * necesarios con {@code _elements} y lee la respuesta en streaming con
+     * {@link LeanAppointmentReader}, sin construir el modelo R5. Usa el mismo
+     * pool de conexiones que los clientes HAPI.
+     *
+     * @throws IOException si el servidor rechaza {@code _elements} (400) o la
+     *                     respuesta no se puede leer; en ese caso se repite
+     *                     con el modelo completo. Los errores de conexión y
+     *                     las respuestas 5xx se lanzan como las del cliente
+     *                     HAPI y no se repiten.
+     */
+    private Map<String, ResolvedAppointment> searchAppointmentsLean(String serverBase, List<String> appointmentIds,
+            Function<String, PractitionerIndex.Identity> practitioners) throws IOException {
+        String base = serverBase.endsWith("/") ? serverBase : serverBase + "/";
+        String url = base + "Appointment?_id=" + UrlUtil.escapeUrlParam(String.join(",", appointmentIds))
+                + "&_include=" + (practitioners != null ? INCLUDE_PATIENT_ACTOR : Appointment.INCLUDE_ACTOR).getValue()
+                + "&_include=Appointment:subject"
+                + "&_count=" + appointmentIds.size()
+                + "&_elements=" + UrlUtil.escapeUrlParam(leanElements);
+
+        LeanAppointmentReader reader = new LeanAppointmentReader();
+        FhirResponseStats stats = FhirResponseStats.reset();
+        long start = System.nanoTime();
+        while (url != null) {
+            url = readLeanPage(url, reader, stats);
+        }
+        metrics.search(start, stats, reader.entriesRead(), reader.bytesRead());
+
+        start = System.nanoTime();
+        try {
+            return reader.resolve(serverBase, practitioners);
+        } finally {
+            metrics.record(AppointmentMetrics.MAPPING, start);
+        }
+    }
+
+    private String readLeanPage(String url, LeanAppointmentReader reader, FhirResponseStats stats)
+            throws IOException {
+        FhirContext fhirContext = clientRegistry.getFhirContext();
+        IHttpClient httpClient = fhirContext.getRestfulClientFactory()
+                .getHttpClient(new StringBuilder(url), null, null, RequestTypeEnum.GET, new ArrayList<>());
+        // Petición sin cliente genérico ni interceptores: la espera HTTP se mide aquí
+        long start = System.nanoTime();
+        IHttpResponse response;
+        try {
+            response = httpClient.createGetRequest(fhirContext, EncodingEnum.JSON).execute();
+        } catch (IOException e) {
+            throw new FhirClientConnectionException("Failed to reach " + url, e);
+        }
+        stats.addHttp(System.nanoTime() - start);
+        try {
+            int status = response.getStatus();
+            if (status == 400) {
+                throw new LeanSearchRejectedException("HTTP 400 " + response.getStatusInfo() + " from " + url);
+            }
+            if (status != 200) {
+                throw BaseServerResponseException.newInstance(status,
+                        "HTTP " + status + " " + response.getStatusInfo() + " from " + url);
+            }
+            try (InputStream body = response.readEntity()) {
+                return reader.readPage(body);
+            } catch (JsonProcessingException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new FhirClientConnectionException("Failed to read response from " + url, e);
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /** El servidor no admite la búsqueda ligera (p. ej. no entiende {@code _elements}). */
+    private static final class LeanSearchRejectedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private LeanSearchRejectedException(String message) {
+            super(message);
+        }
+    }
 }
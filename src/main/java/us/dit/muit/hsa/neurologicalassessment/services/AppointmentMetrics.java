@@ -0,0 +1,87 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Histogramas del camino de resolución de citas, publicados en
+ * {@code /actuator/metrics}:
+ * <ul>
+ * <li>{@code fhir.appointment.phase{phase}}: validación de la URL, obtención
+ * del cliente, espera HTTP, lectura y parseo del Bundle y mapeo al DTO;</li>
+ * <li>{@code fhir.appointment.bundle.entries} y
+ * {@code fhir.appointment.bundle.bytes}: tamaño de cada búsqueda (todas sus
+ * páginas).</li>
+ * </ul>
+ */
+final class AppointmentMetrics {
+
+    static final String VALIDATION = "validation";
+    static final String CLIENT = "client";
+    static final String HTTP = "http";
+    static final String PARSE = "parse";
+    static final String MAPPING = "mapping";
+
+    private final Map<String, Timer> phases = new HashMap<>();
+    private final DistributionSummary entries;
+    private final DistributionSummary bytes;
+
+    AppointmentMetrics(MeterRegistry meterRegistry) {
+        for (String phase : new String[] { VALIDATION, CLIENT, HTTP, PARSE, MAPPING }) {
+            phases.put(phase, Timer.builder("fhir.appointment.phase")
+                    .description("Tiempo de cada fase de la resolución de citas")
+                    .tag("phase", phase)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(10_000))
+                    .maximumExpectedValue(Duration.ofSeconds(30))
+                    .register(meterRegistry));
+        }
+        this.entries = DistributionSummary.builder("fhir.appointment.bundle.entries")
+                .description("Entradas de los Bundles de búsqueda de citas")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(1.0)
+                .maximumExpectedValue(10_000.0)
+                .register(meterRegistry);
+        this.bytes = DistributionSummary.builder("fhir.appointment.bundle.bytes")
+                .description("Tamaño de los Bundles de búsqueda de citas")
+                .baseUnit("bytes")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(256.0)
+                .maximumExpectedValue(64.0 * 1024 * 1024)
+                .register(meterRegistry);
+    }
+
+    /** Registra la fase que empezó en {@code startNanos} ({@link System#nanoTime()}). */
+    void record(String phase, long startNanos) {
+        recordNanos(phase, System.nanoTime() - startNanos);
+    }
+
+    void recordNanos(String phase, long nanos) {
+        phases.get(phase).record(Math.max(0, nanos), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Registra una búsqueda completa: la espera HTTP según {@code stats} y el
+     * resto del tiempo como lectura y parseo.
+     *
+     * @param byteCount bytes recibidos, o negativo si no se conocen
+     */
+    void search(long startNanos, FhirResponseStats stats, int entryCount, long byteCount) {
+        long elapsed = System.nanoTime() - startNanos;
+        recordNanos(HTTP, stats.getHttpNanos());
+        recordNanos(PARSE, elapsed - stats.getHttpNanos());
+        entries.record(entryCount);
+        if (byteCount >= 0) {
+            bytes.record(byteCount);
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.kie.kogito.Application;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItem;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItemManager;
+import org.kie.kogito.process.ProcessInstance;
+import org.kie.kogito.process.Processes;
+import org.kie.kogito.services.uow.UnitOfWorkExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Hace asíncrona la tarea de servicio "Solving Appointment Data".
+ * <p>
+ * Se aplica sobre {@code executeWorkItem} del handler que Kogito genera para
+ * {@link AppointmentDAOService#getAppointmentAttributes(String)}: en lugar de
+ * bloquear el hilo del motor mientras se consulta el servidor FHIR, lanza la
+ * consulta con {@link AppointmentDAOService#getAppointmentAttributesAsync(String)}
+ * y deja el nodo en espera. Al llegar el resultado completa el work item
+ * sobre la instancia persistida, dentro de su propia unidad de trabajo.
+ * <p>
+ * Si el resultado ya está disponible (caché o pool saturado) se completa en
+ * línea, igual que el handler síncrono. Si la consulta falla, se relanza el
+ * nodo y el handler lanza la excepción en línea, de modo que la instancia
+ * queda en el mismo estado de error que con el handler síncrono y se puede
+ * reintentar desde la gestión de procesos.
+ */
+public class AsyncAppointmentWorkItemInterceptor implements MethodInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncAppointmentWorkItemInterceptor.class);
+
+    static final String APPOINTMENT_URL = "appointmentURL";
+    static final String APPOINTMENT_DTO = "appointmentDTO";
+
+    private final ObjectProvider<AppointmentDAOService> service;
+    private final ObjectProvider<Processes> processes;
+    private final ObjectProvider<Application> application;
+    private final long retryNanos;
+    private final long timeoutNanos;
+    private final AtomicInteger pending = new AtomicInteger();
+    /** Fallos pendientes de relanzar, por instancia y nodo. */
+    private final Map<String, Throwable> failures = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService retryScheduler;
+
+    public AsyncAppointmentWorkItemInterceptor(ObjectProvider<AppointmentDAOService> service,
+            ObjectProvider<Processes> processes, ObjectProvider<Application> application,
+            FhirProperties properties, MeterRegistry meterRegistry) {
+        this.service = service;
+        this.processes = processes;
+        this.application = application;
+        this.retryNanos = Math.max(1, properties.getAsync().getCompletionRetry().toNanos());
+        this.timeoutNanos = properties.getAsync().getCompletionTimeout().toNanos();
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "appointment-completion");
+            thread.setDaemon(true);
+            return thread;
+        });
+        meterRegistry.gauge("fhir.appointment.async.pending", pending);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        if (!"executeWorkItem".equals(invocation.getMethod().getName())) {
+            return invocation.proceed();
+        }
+        KogitoWorkItem workItem = (KogitoWorkItem) invocation.getArguments()[0];
+        KogitoWorkItemManager manager = (KogitoWorkItemManager) invocation.getArguments()[1];
+        String nodeKey = workItem.getProcessInstanceStringId() + "/" + workItem.getNodeInstance().getNodeDefinitionId();
+
+        Throwable failure = failures.remove(nodeKey);
+        if (failure != null) {
+            // Nodo relanzado tras un fallo asíncrono: se falla en línea como el handler síncrono
+            throw failure instanceof RuntimeException
+                    ? (RuntimeException) failure
+                    : new RuntimeException("Server error for FHIR Appointment.", failure);
+        }
+
+        String appointmentURL = (String) workItem.getParameter(APPOINTMENT_URL);
+        CompletableFuture<AppointmentDTO> lookup = service.getObject().getAppointmentAttributesAsync(appointmentURL);
+        if (lookup.isDone()) {
+            manager.completeWorkItem(workItem.getStringId(),
+                    Collections.singletonMap(APPOINTMENT_DTO, join(lookup)));
+            return null;
+        }
+
+        Completion completion = new Completion(workItem.getProcessInstance().getProcessId(),
+                workItem.getProcessInstanceStringId(), workItem.getStringId(),
+                workItem.getNodeInstance().getStringId(), nodeKey, System.nanoTime() + timeoutNanos);
+        pending.incrementAndGet();
+        lookup.whenComplete((dto, error) -> {
+            completion.result = dto;
+            completion.error = error instanceof CompletionException && error.getCause() != null
+                    ? error.getCause()
+                    : error;
+            complete(completion);
+        });
+        return null;
+    }
+
+    /**
+     * Detiene los reintentos pendientes. Los work items que no se hayan
+     * completado se quedan activos y se pueden reintentar.
+     */
+    public void shutdown() {
+        retryScheduler.shutdownNow();
+    }
+
+    private static AppointmentDTO join(CompletableFuture<AppointmentDTO> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void complete(Completion completion) {
+        boolean done;
+        try {
+            done = UnitOfWorkExecutor.executeInUnitOfWork(application.getObject().unitOfWorkManager(),
+                    () -> apply(completion));
+        } catch (RuntimeException e) {
+            logger.error("Could not complete appointment work item {} of process instance {}",
+                    completion.workItemId, completion.processInstanceId, e);
+            done = true;
+        }
+
+        if (done) {
+            pending.decrementAndGet();
+        } else if (System.nanoTime() - completion.deadline > 0) {
+            logger.error("Gave up completing appointment work item {}: process instance {} not available",
+                    completion.workItemId, completion.processInstanceId);
+            pending.decrementAndGet();
+        } else {
+            retryScheduler.schedule(() -> complete(completion), retryNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * @return {@code false} si la instancia o el work item aún no son visibles
+     *         (la unidad de trabajo que inició el proceso no ha terminado)
+     */
+    private boolean apply(Completion completion) {
+        Optional<? extends ProcessInstance<?>> found = processes.getObject()
+                .processById(completion.processId)
+                .instances()
+                .findById(completion.processInstanceId);
+        if (found.isEmpty()) {
+            return false;
+        }
+        ProcessInstance<?> instance = found.get();
+        boolean waiting = instance.workItems().stream()
+                .anyMatch(workItem -> workItem.getId().equals(completion.workItemId));
+        if (!waiting) {
+            // Instancia abortada o completada mientras tanto: nada que hacer
+            return instance.status() != ProcessInstance.STATE_ACTIVE;
+        }
+
+        if (completion.error == null) {
+            instance.completeWorkItem(completion.workItemId,
+                    Collections.singletonMap(APPOINTMENT_DTO, completion.result));
+        } else {
+            failures.put(completion.nodeKey, completion.error);
+            try {
+                instance.retriggerNodeInstance(completion.nodeInstanceId);
+            } finally {
+                failures.remove(completion.nodeKey);
+            }
+        }
+        return true;
+    }
+
+    private static final class Completion {
+        private final String processId;
+        private final String processInstanceId;
+        private final String workItemId;
+        private final String nodeInstanceId;
+        private final String nodeKey;
+        private final long deadline;
+        private volatile AppointmentDTO result;
+        private volatile Throwable error;
+
+        private Completion(String processId, String processInstanceId, String workItemId, String nodeInstanceId,
+                String nodeKey, long deadline) {
+            this.processId = processId;
+            this.processInstanceId = processInstanceId;
+            this.workItemId = workItemId;
+            this.nodeInstanceId = nodeInstanceId;
+            this.nodeKey = nodeKey;
+            this.deadline = deadline;
+        }
+    }
+}
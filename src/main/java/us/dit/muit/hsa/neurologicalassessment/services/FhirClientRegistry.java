@@ -0,0 +1,141 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.IRestfulClientFactory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Registro acotado y seguro entre hilos de clientes {@link IGenericClient},
+ * uno por URL base de servidor FHIR.
+ * <p>
+ * Todos los clientes comparten el mismo {@link FhirContext} y, por tanto, la
+ * misma factoría REST y el mismo pool de conexiones HTTP. Cuando se supera el
+ * número máximo de clientes se descarta el que lleva más tiempo sin usarse.
+ */
+@Component
+public class FhirClientRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(FhirClientRegistry.class);
+
+    private final FhirContext fhirContext;
+    private final int maxClients;
+    private final Map<String, RegisteredClient> clients = new ConcurrentHashMap<>();
+
+    private final Counter reused;
+    private final Counter created;
+    private final Counter evicted;
+
+    @Autowired
+    public FhirClientRegistry(FhirContext fhirContext, FhirProperties properties, MeterRegistry meterRegistry) {
+        this.fhirContext = fhirContext;
+        this.maxClients = Math.max(1, properties.getClient().getMaxClients());
+        configureFactory(fhirContext.getRestfulClientFactory(), properties.getClient());
+
+        this.reused = Counter.builder("fhir.client.registry.lookups")
+                .description("Clientes FHIR reutilizados desde el registro")
+                .tag("outcome", "reused")
+                .register(meterRegistry);
+        this.created = Counter.builder("fhir.client.registry.lookups")
+                .description("Clientes FHIR creados por el registro")
+                .tag("outcome", "created")
+                .register(meterRegistry);
+        this.evicted = Counter.builder("fhir.client.registry.evictions")
+                .description("Clientes FHIR descartados por superar el tamaño máximo")
+                .register(meterRegistry);
+        meterRegistry.gauge("fhir.client.registry.size", clients, Map::size);
+    }
+
+    /**
+     * Registro con la configuración por defecto, para uso fuera del contexto de
+     * Spring (por ejemplo, el constructor sin argumentos del handler generado).
+     */
+    public static FhirClientRegistry createDefault() {
+        return new FhirClientRegistry(FhirContext.forR5Cached(), new FhirProperties(), Metrics.globalRegistry);
+    }
+
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
+    /**
+     * Devuelve el cliente asociado a la URL base, creándolo si no existe.
+     *
+     * @param serverBase URL base del servidor FHIR
+     * @return cliente genérico (seguro para uso concurrente)
+     */
+    public IGenericClient getClient(String serverBase) {
+        String key = normalize(serverBase);
+        RegisteredClient registered = clients.get(key);
+        if (registered == null) {
+            registered = clients.computeIfAbsent(key, base -> {
+                created.increment();
+                logger.debug("Creating FHIR client for server base {}", base);
+                IGenericClient client = fhirContext.newRestfulGenericClient(base);
+                client.registerInterceptor(FhirResponseStats.INTERCEPTOR);
+                return new RegisteredClient(client);
+            });
+            evictIfNeeded(key);
+        } else {
+            reused.increment();
+        }
+        registered.lastUsed = System.nanoTime();
+        return registered.client;
+    }
+
+    public int size() {
+        return clients.size();
+    }
+
+    private void evictIfNeeded(String keep) {
+        while (clients.size() > maxClients) {
+            String eldest = null;
+            long eldestUse = Long.MAX_VALUE;
+            for (Map.Entry<String, RegisteredClient> entry : clients.entrySet()) {
+                if (!entry.getKey().equals(keep) && entry.getValue().lastUsed < eldestUse) {
+                    eldest = entry.getKey();
+                    eldestUse = entry.getValue().lastUsed;
+                }
+            }
+            if (eldest == null || clients.remove(eldest) == null) {
+                return;
+            }
+            evicted.increment();
+            logger.debug("Evicted FHIR client for server base {}", eldest);
+        }
+    }
+
+    private static String normalize(String serverBase) {
+        return serverBase.endsWith("/") ? serverBase.substring(0, serverBase.length() - 1) : serverBase;
+    }
+
+    private static void configureFactory(IRestfulClientFactory factory, FhirProperties.Client config) {
+        factory.setPoolMaxTotal(config.getPoolMaxTotal());
+        factory.setPoolMaxPerRoute(config.getPoolMaxPerRoute());
+        factory.setConnectTimeout((int) config.getConnectTimeout().toMillis());
+        factory.setSocketTimeout((int) config.getSocketTimeout().toMillis());
+        factory.setConnectionRequestTimeout((int) config.getConnectionRequestTimeout().toMillis());
+        factory.setConnectionTimeToLive((int) config.getKeepAlive().toMillis());
+        factory.setServerValidationMode(config.getServerValidation());
+    }
+
+    private static final class RegisteredClient {
+        private final IGenericClient client;
+        private volatile long lastUsed = System.nanoTime();
+
+        private RegisteredClient(IGenericClient client) {
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ca.uhn.fhir.rest.server.exceptions.BaseServerResponseException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Capa de resiliencia de las llamadas a los servidores FHIR, con estado
+ * independiente por URL base:
+ * <ul>
+ * <li>bulkhead: como mucho {@code max-concurrent-calls} llamadas en curso;</li>
+ * <li>tiempo máximo por llamada ({@code timeout});</li>
+ * <li>circuit breaker por porcentaje de fallos en las últimas llamadas; con el
+ * circuito abierto las llamadas fallan al momento sin tocar el servidor;</li>
+ * <li>hedging opcional: si la llamada supera el percentil 95 reciente se lanza
+ * una segunda igual y se usa la primera respuesta correcta. Sólo se aplica a
+ * lecturas y búsquedas, que son idempotentes.</li>
+ * </ul>
+ * Los errores 4xx del servidor (p. ej. recurso no encontrado) no cuentan
+ * como fallos del servidor y se propagan tal cual.
+ */
+@Component
+public class FhirResilience {
+
+    private static final Logger logger = LoggerFactory.getLogger(FhirResilience.class);
+
+    private final FhirProperties.Resilience config;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, ServerGuard> guards = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+
+    @Autowired
+    public FhirResilience(FhirProperties properties, MeterRegistry meterRegistry) {
+        this.config = properties.getResilience();
+        this.meterRegistry = meterRegistry;
+        AtomicInteger count = new AtomicInteger();
+        // Sin límite propio: el número de llamadas en curso lo acota el bulkhead de cada servidor
+        this.executor = config.isEnabled() ? Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fhir-call-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Capa con la configuración por defecto, para uso fuera de Spring.
+     */
+    public static FhirResilience createDefault() {
+        return new FhirResilience(new FhirProperties(), Metrics.globalRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Ejecuta una lectura contra el servidor con la protección configurada.
+     *
+     * @throws FhirUnavailableException si el circuito está abierto, el
+     *                                  bulkhead está lleno o se supera el tiempo
+     *                                  máximo
+     */
+    public <T> T call(String serverBase, Supplier<T> call) {
+        if (executor == null) {
+            return call.get();
+        }
+        ServerGuard guard = guards.computeIfAbsent(normalize(serverBase), ServerGuard::new);
+        guard.admit();
+
+        long start = System.nanoTime();
+        try {
+            T result = await(guard, call, start);
+            guard.breaker.onResult(false);
+            guard.latencies.add(System.nanoTime() - start);
+            return result;
+        } catch (RuntimeException e) {
+            guard.breaker.onResult(isServerFailure(e));
+            throw e;
+        }
+    }
+
+    /** Estado del circuito del servidor (para tests y diagnóstico). */
+    State state(String serverBase) {
+        ServerGuard guard = guards.get(normalize(serverBase));
+        return guard != null ? guard.breaker.state : State.CLOSED;
+    }
+
+    private <T> T await(ServerGuard guard, Supplier<T> call, long start) {
+        long deadline = start + config.getTimeout().toNanos();
+        CompletableFuture<T> primary = launch(guard, call);
+        CompletableFuture<T> result = primary;
+        try {
+            long hedgeDelay = guard.hedgeDelayNanos();
+            if (hedgeDelay >= 0 && hedgeDelay < deadline - System.nanoTime()) {
+                try {
+                    return primary.get(hedgeDelay, TimeUnit.NANOSECONDS);
+                } catch (TimeoutException slow) {
+                    // Sólo si hay hueco libre: el hedging no debe esperar ni saturar el servidor
+                    if (guard.bulkhead.tryAcquire()) {
+                        result = firstSuccess(guard, primary, launch(guard, call));
+                    }
+                }
+            }
+            return result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            guard.timeouts.increment();
+            throw new FhirUnavailableException("FHIR server " + guard.serverBase + " did not answer within "
+                    + config.getTimeout().toMillis() + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FhirUnavailableException("Interrupted while waiting for FHIR server " + guard.serverBase);
+        } finally {
+            // La llamada que sigue en curso termina sola (acotada por el socket timeout) y libera su hueco
+            result.cancel(false);
+            primary.cancel(false);
+        }
+    }
+
+    /**
+     * Primera respuesta correcta de las dos; sólo falla si fallan ambas, con
+     * el error de la original.
+     */
+    private static <T> CompletableFuture<T> firstSuccess(ServerGuard guard, CompletableFuture<T> primary,
+            CompletableFuture<T> hedge) {
+        CompletableFuture<T> first = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        AtomicBoolean decided = new AtomicBoolean();
+        primary.whenComplete((value, error) -> {
+            if (error == null && decided.compareAndSet(false, true)) {
+                guard.hedgesLost.increment();
+                first.complete(value);
+            } else if (error != null && failures.incrementAndGet() == 2) {
+                first.completeExceptionally(error);
+            }
+        });
+        hedge.whenComplete((value, error) -> {
+            if (error == null && decided.compareAndSet(false, true)) {
+                guard.hedgesWon.increment();
+                first.complete(value);
+            } else if (error != null && failures.incrementAndGet() == 2) {
+                primary.whenComplete((ignored, primaryError) -> first.completeExceptionally(primaryError));
+            }
+        });
+        first.whenComplete((value, error) -> {
+            primary.cancel(false);
+            hedge.cancel(false);
+        });
+        return first;
+    }
+
+    /** Lanza la llamada en el pool; el hueco del bulkhead ya debe estar reservado. */
+    private <T> CompletableFuture<T> launch(ServerGuard guard, Supplier<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    if (!future.isDone()) {
+                        future.complete(call.get());
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    // El hueco se libera al terminar de verdad la llamada, no al abandonarla
+                    guard.bulkhead.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            guard.bulkhead.release();
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Fallos atribuibles al servidor: errores de conexión, tiempo superado,
+     * respuestas 5xx o 429. Un 4xx es una respuesta válida del servidor.
+     */
+    static boolean isServerFailure(Throwable error) {
+        if (error instanceof BaseServerResponseException) {
+            int status = ((BaseServerResponseException) error).getStatusCode();
+            return status >= 500 || status == 429 || status <= 0;
+        }
+        return true;
+    }
+
+    private static String normalize(String serverBase) {
+        return serverBase.endsWith("/") ? serverBase.substring(0, serverBase.length() - 1) : serverBase;
+    }
+
+    /** Estado del circuit breaker; el valor es el del gauge {@code fhir.resilience.breaker.state}. */
+    enum State {
+        CLOSED(0), OPEN(1), HALF_OPEN(2);
+
+        private final int gaugeValue;
+
+        State(int gaugeValue) {
+            this.gaugeValue = gaugeValue;
+        }
+    }
+
+    /** Bulkhead, circuito, latencias y métricas de un servidor. */
+    private final class ServerGuard {
+        private final String serverBase;
+        private final Semaphore bulkhead;
+        private final CircuitBreaker breaker;
+        private final LatencyWindow latencies = new LatencyWindow(256);
+        private final Counter rejectedOpen;
+        private final Counter rejectedFull;
+        private final Counter timeouts;
+        private final Counter hedgesWon;
+        private final Counter hedgesLost;
+
+        private ServerGuard(String serverBase) {
+            this.serverBase = serverBase;
+            this.bulkhead = new Semaphore(Math.max(1, config.getMaxConcurrentCalls()));
+            this.breaker = new CircuitBreaker(this);
+            this.rejectedOpen = rejected("circuit_open");
+            this.rejectedFull = rejected("bulkhead_full");
+            this.timeouts = Counter.builder("fhir.resilience.timeouts")
+                    .description("Llamadas FHIR que han superado el tiempo máximo")
+                    .tag("server", serverBase)
+                    .register(meterRegistry);
+            this.hedgesWon = hedges("won");
+            this.hedgesLost = hedges("lost");
+            meterRegistry.gauge("fhir.resilience.breaker.state",
+                    Tags.of("server", serverBase), breaker,
+                    b -> b.state.gaugeValue);
+            meterRegistry.gauge("fhir.resilience.bulkhead.available",
+                    Tags.of("server", serverBase), bulkhead,
+                    Semaphore::availablePermits);
+        }
+
+        /** Reserva un hueco del bulkhead y pide paso al circuito. */
+        private void admit() {
+            boolean acquired;
+            try {
+                acquired = bulkhead.tryAcquire(config.getMaxWait().toNanos(), TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acquired = false;
+            }
+            if (!acquired) {
+                rejectedFull.increment();
+                throw new FhirUnavailableException("Too many concurrent calls to FHIR server " + serverBase);
+            }
+            if (!breaker.tryAcquire()) {
+                bulkhead.release();
+                rejectedOpen.increment();
+                throw new FhirUnavailableException("Circuit open for FHIR server " + serverBase);
+            }
+        }
+
+        /** @return espera antes del hedging, o -1 si no se aplica */
+        private long hedgeDelayNanos() {
+            if (!config.isHedgeEnabled()) {
+                return -1;
+            }
+            long p95 = latencies.percentile(0.95, config.getHedgeMinSamples());
+            return p95 < 0 ? -1 : Math.max(config.getHedgeMinDelay().toNanos(), p95);
+        }
+
+        private Counter rejected(String reason) {
+            return Counter.builder("fhir.resilience.rejected")
+                    .description("Llamadas FHIR rechazadas sin llegar al servidor")
+                    .tag("server", serverBase)
+                    .tag("reason", reason)
+                    .register(meterRegistry);
+        }
+
+        private Counter hedges(String outcome) {
+            return Counter.builder("fhir.resilience.hedges")
+                    .description("Peticiones duplicadas por superar el percentil 95 y cuál respondió antes")
+                    .tag("server", serverBase)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+
+        private void transitioned(State from, State to) {
+            Counter.builder("fhir.resilience.breaker.transitions")
+                    .description("Cambios de estado del circuit breaker")
+                    .tag("server", serverBase)
+                    .tag("from", from.name().toLowerCase())
+                    .tag("to", to.name().toLowerCase())
+                    .register(meterRegistry)
+                    .increment();
+            if (to == State.OPEN) {
+                logger.warn("Circuit opened for FHIR server {}", serverBase);
+            } else {
+                logger.info("Circuit for FHIR server {} is now {}", serverBase, to);
+            }
+        }
+    }
+
+    /**
+     * Circuit breaker con ventana deslizante por número de llamadas. Las
+     * operaciones son cortas y se sincronizan sobre la propia instancia.
+     */
+    private final class CircuitBreaker {
+        private final ServerGuard guard;
+        private final boolean[] window;
+        private volatile State state = State.CLOSED;
+        private int next;
+        private int calls;
+        private int failures;
+        private long openedAt;
+        private int trialsStarted;
+        private int trialsSucceeded;
+
+        private CircuitBreaker(ServerGuard guard) {
+            this.guard = guard;
+            this.window = new boolean[Math.max(1, config.getSlidingWindowSize())];
+        }
+
+        private synchronized boolean tryAcquire() {
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < config.getOpenDuration().toNanos()) {
+                    return false;
+                }
+                transition(State.HALF_OPEN);
+            }
+            if (state == State.HALF_OPEN) {
+                if (trialsStarted >= Math.max(1, config.getHalfOpenCalls())) {
+                    return false;
+                }
+                trialsStarted++;
+            }
+            return true;
+        }
+
+        private synchronized void onResult(boolean failure) {
+            if (state == State.HALF_OPEN) {
+                if (failure) {
+                    transition(State.OPEN);
+                } else if (++trialsSucceeded >= Math.max(1, config.getHalfOpenCalls())) {
+                    transition(State.CLOSED);
+                }
+                return;
+            }
+            if (state == State.OPEN) {
+                // Llamada iniciada antes de abrir el circuito
+                return;
+            }
+            if (calls == window.length) {
+                failures -= window[next] ? 1 : 0;
+            } else {
+                calls++;
+            }
+            window[next] = failure;
+            failures += failure ? 1 : 0;
+            next = (next + 1) % window.length;
+            if (calls >= Math.max(1, config.getMinimumCalls())
+                    && failures * 100 >= config.getFailureRateThreshold() * calls) {
+                transition(State.OPEN);
+            }
+        }
+
+        private void transition(State to) {
+            State from = state;
+            state = to;
+            if (to == State.OPEN) {
+                openedAt = System.nanoTime();
+            } else if (to == State.HALF_OPEN) {
+                trialsStarted = 0;
+                trialsSucceeded = 0;
+            } else {
+                Arrays.fill(window, false);
+                next = 0;
+                calls = 0;
+                failures = 0;
+            }
+            guard.transitioned(from, to);
+        }
+    }
+
+    /** Últimas latencias correctas de un servidor, en nanosegundos. */
+    private static final class LatencyWindow {
+        private final long[] samples;
+        private int next;
+        private int size;
+
+        private LatencyWindow(int capacity) {
+            this.samples = new long[capacity];
+        }
+
+        private synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            size = Math.min(size + 1, samples.length);
+        }
+
+        /** @return el percentil pedido, o -1 si hay menos de {@code minSamples} muestras */
+        private synchronized long percentile(double percentile, int minSamples) {
+            if (size == 0 || size < minSamples) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percentile * size) - 1)];
+        }
+    }
+}
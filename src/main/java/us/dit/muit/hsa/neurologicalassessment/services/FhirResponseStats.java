@@ -0,0 +1,81 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.List;
+
+import ca.uhn.fhir.rest.client.api.IClientInterceptor;
+import ca.uhn.fhir.rest.client.api.IHttpRequest;
+import ca.uhn.fhir.rest.client.api.IHttpResponse;
+
+/**
+ * Tiempo de espera HTTP y tamaño de las respuestas FHIR recibidas en el hilo
+ * actual desde el último {@link #reset()}.
+ * <p>
+ * Los clientes del {@link FhirClientRegistry} lo alimentan con
+ * {@link #INTERCEPTOR}: el tiempo HTTP va desde el envío de la petición hasta
+ * recibir la respuesta; la lectura del cuerpo y su parseo quedan fuera. El
+ * tamaño sólo se conoce si el servidor envía {@code Content-Length}.
+ */
+final class FhirResponseStats {
+
+    private static final ThreadLocal<FhirResponseStats> CURRENT = ThreadLocal.withInitial(FhirResponseStats::new);
+
+    static final IClientInterceptor INTERCEPTOR = new IClientInterceptor() {
+        @Override
+        public void interceptRequest(IHttpRequest request) {
+            CURRENT.get().requestStart = System.nanoTime();
+        }
+
+        @Override
+        public void interceptResponse(IHttpResponse response) {
+            FhirResponseStats stats = CURRENT.get();
+            if (stats.requestStart != 0) {
+                stats.addHttp(System.nanoTime() - stats.requestStart);
+                stats.requestStart = 0;
+            }
+            List<String> length = response.getHeaders("Content-Length");
+            stats.addBytes(length != null && !length.isEmpty() ? parseLength(length.get(0)) : -1);
+        }
+    };
+
+    private long requestStart;
+    private long httpNanos;
+    private long bytes;
+
+    private FhirResponseStats() {
+    }
+
+    /** Pone a cero las estadísticas del hilo actual y las devuelve. */
+    static FhirResponseStats reset() {
+        FhirResponseStats stats = CURRENT.get();
+        stats.requestStart = 0;
+        stats.httpNanos = 0;
+        stats.bytes = 0;
+        return stats;
+    }
+
+    void addHttp(long nanos) {
+        httpNanos += nanos;
+    }
+
+    /** @param count bytes de una respuesta, o -1 si no se conocen */
+    void addBytes(long count) {
+        bytes = count < 0 || bytes < 0 ? -1 : bytes + count;
+    }
+
+    long getHttpNanos() {
+        return httpNanos;
+    }
+
+    /** @return bytes recibidos, o -1 si alguna respuesta no los indicaba */
+    long getBytes() {
+        return bytes;
+    }
+
+    private static long parseLength(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
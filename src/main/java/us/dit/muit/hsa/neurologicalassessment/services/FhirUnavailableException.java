@@ -0,0 +1,14 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+/**
+ * La llamada al servidor FHIR no se ha hecho o no ha terminado a tiempo:
+ * circuito abierto, bulkhead lleno o tiempo máximo superado.
+ */
+public class FhirUnavailableException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public FhirUnavailableException(String message) {
+        super(message);
+    }
+}
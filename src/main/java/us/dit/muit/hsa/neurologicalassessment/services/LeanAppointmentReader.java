@@ -0,0 +1,387 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.hl7.fhir.r5.model.IdType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Lector en streaming de Bundles de búsqueda de citas.
+ * <p>
+ * Recorre el JSON con un {@link JsonParser} y sólo conserva lo necesario para
+ * resolver una cita: las referencias subject/actor de la cita, el primer
+ * nombre del paciente, el identificador {@code kogito} del practitioner y la
+ * versión de cada recurso. No construye el modelo R5 completo. Las reglas de
+ * resolución son las mismas que las del modelo completo en
+ * {@link AppointmentDAOService}.
+ * <p>
+ * Un lector acumula las páginas de una misma búsqueda; no es seguro entre
+ * hilos.
+ */
+final class LeanAppointmentReader {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    static final String UNKNOWN_PRACTITIONER = "Unknown Practitioner";
+
+    /** Recursos leídos, por referencia relativa sin versión ("Patient/2"). */
+    private final Map<String, LeanResource> resources = new LinkedHashMap<>();
+    private int entries;
+    private long bytes;
+
+    /**
+     * Lee una página del Bundle.
+     *
+     * @return URL de la página siguiente o {@code null} si es la última
+     */
+    String readPage(InputStream json) throws IOException {
+        String next = null;
+        try (JsonParser parser = JSON.createParser(json)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT);
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("resourceType".equals(field)) {
+                    if (!"Bundle".equals(parser.getText())) {
+                        throw new JsonParseException(parser, "Expected a Bundle but found " + parser.getText());
+                    }
+                } else if ("link".equals(field) && value == JsonToken.START_ARRAY) {
+                    String link = readNextLink(parser);
+                    next = link != null ? link : next;
+                } else if ("entry".equals(field) && value == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        readEntry(parser);
+                        entries++;
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            bytes += parser.getCurrentLocation().getByteOffset();
+        }
+        return next;
+    }
+
+    /** Entradas leídas en todas las páginas. */
+    int entriesRead() {
+        return entries;
+    }
+
+    /** Bytes de JSON leídos en todas las páginas. */
+    long bytesRead() {
+        return bytes;
+    }
+
+    /**
+     * Resuelve las citas leídas en todas las páginas.
+     *
+     * @return cita resuelta por id de la cita
+     */
+    Map<String, ResolvedAppointment> resolve(String serverBase) {
+        return resolve(serverBase, null);
+    }
+
+    /**
+     * Resuelve las citas leídas; los practitioners que no vengan en el Bundle
+     * se buscan en {@code practitioners}, si se indica.
+     */
+    Map<String, ResolvedAppointment> resolve(String serverBase,
+            Function<String, PractitionerIndex.Identity> practitioners) {
+        Map<String, ResolvedAppointment> resolved = new HashMap<>();
+        for (LeanResource resource : resources.values()) {
+            if ("Appointment".equals(resource.type)) {
+                resolved.put(resource.idPart, toResolvedAppointment(serverBase, resource, practitioners));
+            }
+        }
+        return resolved;
+    }
+
+    private ResolvedAppointment toResolvedAppointment(String serverBase, LeanResource appointment,
+            Function<String, PractitionerIndex.Identity> practitioners) {
+        LeanResource patient = null;
+        LeanResource practitioner = null;
+        List<String> notIncluded = new ArrayList<>(1);
+
+        if (appointment.subject != null) {
+            LeanResource subject = resources.get(appointment.subject);
+            if (subject != null && "Patient".equals(subject.type)) {
+                patient = subject;
+            }
+        }
+        for (String reference : appointment.actors) {
+            LeanResource actor = resources.get(reference);
+            if (actor == null) {
+                if (reference.startsWith("Practitioner/")) {
+                    notIncluded.add(reference);
+                }
+                continue;
+            }
+            if (patient == null && "Patient".equals(actor.type)) {
+                patient = actor;
+            } else if (practitioner == null && "Practitioner".equals(actor.type)) {
+                practitioner = actor;
+            }
+        }
+
+        Map<String, String> versions = new LinkedHashMap<>();
+        versions.put(appointment.key, appointment.versionId);
+
+        String patientName = null;
+        if (patient != null && patient.hasName) {
+            patientName = patient.formattedName();
+            versions.put(patient.key, patient.versionId);
+        }
+        String practitionerId = null;
+        if (practitioner != null && practitioner.hasName) {
+            practitionerId = practitioner.kogitoId != null ? practitioner.kogitoId : UNKNOWN_PRACTITIONER;
+            versions.put(practitioner.key, practitioner.versionId);
+        } else if (practitioner == null && practitioners != null) {
+            for (String reference : notIncluded) {
+                PractitionerIndex.Identity identity = practitioners.apply(reference);
+                if (identity != null) {
+                    practitionerId = identity.getPractitionerId();
+                    if (practitionerId != null) {
+                        versions.put(reference, identity.getVersionId());
+                    }
+                    break;
+                }
+            }
+        }
+        return new ResolvedAppointment(serverBase, practitionerId, patientName, versions);
+    }
+
+    private static String readNextLink(JsonParser parser) throws IOException {
+        String next = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String relation = null;
+            String url = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("relation".equals(field)) {
+                    relation = parser.getText();
+                } else if ("url".equals(field)) {
+                    url = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if ("next".equals(relation)) {
+                next = url;
+            }
+        }
+        return next;
+    }
+
+    private void readEntry(JsonParser parser) throws IOException {
+        String fullUrl = null;
+        LeanResource resource = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("fullUrl".equals(field)) {
+                fullUrl = parser.getText();
+            } else if ("resource".equals(field) && value == JsonToken.START_OBJECT) {
+                resource = readResource(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (resource == null || resource.type == null) {
+            return;
+        }
+        // Misma clave que el modelo completo: la fullUrl o, si no hay, Tipo/id
+        IdType id = fullUrl != null ? new IdType(fullUrl) : new IdType(resource.type, resource.id);
+        resource.idPart = id.getIdPart();
+        if (id.hasVersionIdPart()) {
+            resource.versionId = id.getVersionIdPart();
+        }
+        resource.key = id.toUnqualifiedVersionless().getValue();
+        resources.put(resource.key, resource);
+    }
+
+    private static LeanResource readResource(JsonParser parser) throws IOException {
+        LeanResource resource = new LeanResource();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "resourceType":
+                    resource.type = parser.getText();
+                    break;
+                case "id":
+                    resource.id = parser.getText();
+                    break;
+                case "meta":
+                    resource.versionId = readField(parser, value, "versionId");
+                    break;
+                case "subject":
+                    resource.subject = referenceKey(readField(parser, value, "reference"));
+                    break;
+                case "participant":
+                    readParticipants(parser, value, resource.actors);
+                    break;
+                case "name":
+                    readFirstName(parser, value, resource);
+                    break;
+                case "identifier":
+                    resource.kogitoId = readKogitoIdentifier(parser, value);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return resource;
+    }
+
+    /** Lee un campo de texto de un objeto e ignora el resto. */
+    private static String readField(JsonParser parser, JsonToken value, String name) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String result = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if (name.equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                result = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return result;
+    }
+
+    private static void readParticipants(JsonParser parser, JsonToken value, List<String> actors) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("actor".equals(field)) {
+                    String reference = referenceKey(readField(parser, fieldValue, "reference"));
+                    if (reference != null) {
+                        actors.add(reference);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    /** Sólo interesa el primer HumanName: apellido y primer nombre de pila. */
+    private static void readFirstName(JsonParser parser, JsonToken value, LeanResource resource) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        boolean first = true;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            if (!first) {
+                parser.skipChildren();
+                continue;
+            }
+            first = false;
+            resource.hasName = true;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken fieldValue = parser.nextToken();
+                if ("family".equals(field) && fieldValue == JsonToken.VALUE_STRING) {
+                    resource.family = parser.getText();
+                } else if ("given".equals(field) && fieldValue == JsonToken.START_ARRAY) {
+                    while (parser.nextToken() != JsonToken.END_ARRAY) {
+                        if (resource.given == null && parser.currentToken() == JsonToken.VALUE_STRING) {
+                            resource.given = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+    }
+
+    private static String readKogitoIdentifier(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        String kogitoId = null;
+        while (parser.nextToken() == JsonToken.START_OBJECT) {
+            String system = null;
+            String identifier = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                parser.nextToken();
+                if ("system".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    system = parser.getText();
+                } else if ("value".equals(field) && parser.currentToken() == JsonToken.VALUE_STRING) {
+                    identifier = parser.getText();
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (kogitoId == null && "kogito".equalsIgnoreCase(system) && identifier != null) {
+                kogitoId = identifier;
+            }
+        }
+        return kogitoId;
+    }
+
+    private static String referenceKey(String reference) {
+        return reference != null ? new IdType(reference).toUnqualifiedVersionless().getValue() : null;
+    }
+
+    private static void expect(JsonParser parser, JsonToken actual, JsonToken expected) throws IOException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, "Unexpected JSON token " + actual + ", expected " + expected);
+        }
+    }
+
+    private static final class LeanResource {
+        private String type;
+        private String id;
+        private String idPart;
+        private String key;
+        private String versionId;
+        private String subject;
+        private final List<String> actors = new ArrayList<>(2);
+        private boolean hasName;
+        private String family;
+        private String given;
+        private String kogitoId;
+
+        /** Mismo formato que el modelo completo: "Apellido, Nombre". */
+        private String formattedName() {
+            StringBuilder fullName = new StringBuilder();
+            if (family != null) {
+                fullName.append(family);
+            }
+            if (given != null) {
+                if (fullName.length() > 0) {
+                    fullName.append(", ");
+                }
+                fullName.append(given);
+            }
+            return fullName.toString();
+        }
+    }
+}
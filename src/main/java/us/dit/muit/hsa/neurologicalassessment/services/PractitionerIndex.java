@@ -0,0 +1,322 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r5.model.IdType;
+import org.hl7.fhir.r5.model.Practitioner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.server.exceptions.ResourceGoneException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.TimeGauge;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Índice en memoria de practitioners: referencia ("Practitioner/3") → id de
+ * actor en Kogito (identificador con sistema {@code kogito}).
+ * <p>
+ * Para cada servidor de {@code fhir.practitioner-index.servers} se precarga
+ * con una búsqueda paginada y después se aplican periódicamente los cambios
+ * de {@code Practitioner/_history?_since=} (altas, modificaciones y bajas).
+ * Mientras el índice de un servidor esté al día, la resolución de citas de
+ * ese servidor no necesita incluir a los practitioners en el Bundle; un
+ * practitioner que aún no esté en el índice se lee y se añade.
+ */
+@Component
+public class PractitionerIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(PractitionerIndex.class);
+
+    private final FhirClientRegistry clientRegistry;
+    private final FhirProperties.PractitionerIndex config;
+    /** Índice por URL base normalizada; fijo tras la construcción. */
+    private final Map<String, ServerIndex> servers = new LinkedHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    private final Counter refreshed;
+    private final Counter failed;
+    private final Counter misses;
+
+    @Autowired
+    public PractitionerIndex(FhirClientRegistry clientRegistry, FhirProperties properties,
+            MeterRegistry meterRegistry) {
+        this.clientRegistry = clientRegistry;
+        this.config = properties.getPractitionerIndex();
+        if (config.isEnabled()) {
+            for (String serverBase : config.getServers()) {
+                servers.put(normalize(serverBase), new ServerIndex(serverBase));
+            }
+        }
+        this.scheduler = servers.isEmpty() ? null : Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "practitioner-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        this.refreshed = refreshes(meterRegistry, "success");
+        this.failed = refreshes(meterRegistry, "failure");
+        this.misses = Counter.builder("fhir.practitioner.index.misses")
+                .description("Practitioners que no estaban en el índice y se han leído del servidor")
+                .register(meterRegistry);
+        meterRegistry.gauge("fhir.practitioner.index.size", servers, PractitionerIndex::totalSize);
+        TimeGauge.builder("fhir.practitioner.index.lag", this, TimeUnit.NANOSECONDS, PractitionerIndex::maxLagNanos)
+                .description("Tiempo desde la última sincronización correcta del índice más atrasado")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (scheduler != null) {
+            scheduler.scheduleWithFixedDelay(this::refreshAll, 0,
+                    Math.max(1, config.getRefreshInterval().toMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Devuelve la función de búsqueda de practitioners del servidor, o
+     * {@code null} si el servidor no está indexado o su índice no está al día
+     * (en cuyo caso hay que incluir los practitioners en la búsqueda).
+     */
+    Function<String, Identity> resolver(String serverBase) {
+        ServerIndex index = servers.get(normalize(serverBase));
+        if (index == null || !index.warm || index.lagNanos() > config.getMaxLag().toNanos()) {
+            return null;
+        }
+        return reference -> {
+            Identity identity = index.practitioners.get(reference);
+            if (identity == null) {
+                misses.increment();
+                identity = readThrough(index, reference);
+            }
+            return identity;
+        };
+    }
+
+    int size() {
+        return totalSize(servers);
+    }
+
+    void refreshAll() {
+        for (ServerIndex index : servers.values()) {
+            try {
+                refresh(index);
+                refreshed.increment();
+            } catch (RuntimeException e) {
+                failed.increment();
+                logger.warn("Practitioner index refresh failed for {}: {}", index.serverBase, e.getMessage());
+            }
+        }
+    }
+
+    private void refresh(ServerIndex index) {
+        Instant started = Instant.now();
+        IGenericClient client = clientRegistry.getClient(index.serverBase);
+        if (!index.warm) {
+            Bundle page = client.search()
+                    .forResource(Practitioner.class)
+                    .elementsSubset("identifier", "name")
+                    .count(config.getPageSize())
+                    .returnBundle(Bundle.class)
+                    .execute();
+            List<BundleEntryComponent> entries = readAllPages(client, page);
+            apply(index, entries, false);
+            logger.info("Practitioner index for {} preloaded with {} practitioners", index.serverBase,
+                    index.practitioners.size());
+        } else {
+            Bundle page = client.history()
+                    .onType(Practitioner.class)
+                    .returnBundle(Bundle.class)
+                    .since(Date.from(index.since))
+                    .count(config.getPageSize())
+                    .execute();
+            List<BundleEntryComponent> entries = readAllPages(client, page);
+            apply(index, entries, true);
+            logger.debug("Practitioner index for {} applied {} history entries", index.serverBase, entries.size());
+        }
+        index.synced(started.minus(config.getOverlap()));
+    }
+
+    /**
+     * Aplica al índice las entradas de una precarga o de una consulta de
+     * historial. El historial viene de la versión más reciente a la más
+     * antigua, así que sólo cuenta la primera entrada de cada practitioner.
+     */
+    void apply(String serverBase, List<BundleEntryComponent> entries, boolean history) {
+        apply(servers.get(normalize(serverBase)), entries, history);
+    }
+
+    /** Marca el índice del servidor como sincronizado (para tests). */
+    void synced(String serverBase, Instant since) {
+        servers.get(normalize(serverBase)).synced(since);
+    }
+
+    private static void apply(ServerIndex index, List<BundleEntryComponent> entries, boolean history) {
+        Set<String> seen = new HashSet<>();
+        for (BundleEntryComponent entry : entries) {
+            String key = entryKey(entry);
+            if (key == null || !key.startsWith("Practitioner/") || (history && !seen.add(key))) {
+                continue;
+            }
+            boolean deleted = entry.hasRequest()
+                    && entry.getRequest().getMethod() == Bundle.HTTPVerb.DELETE;
+            if (deleted || !(entry.getResource() instanceof Practitioner)) {
+                index.practitioners.remove(key);
+            } else {
+                index.practitioners.put(key, Identity.of((Practitioner) entry.getResource()));
+            }
+        }
+    }
+
+    private static String entryKey(BundleEntryComponent entry) {
+        if (entry.getResource() != null) {
+            return entry.getResource().getIdElement().toUnqualifiedVersionless().getValue();
+        }
+        // Las bajas del historial no llevan recurso: se identifican por la URL de la petición
+        if (entry.hasRequest() && entry.getRequest().hasUrl()) {
+            return new IdType(entry.getRequest().getUrl()).toUnqualifiedVersionless().getValue();
+        }
+        return entry.hasFullUrl() ? new IdType(entry.getFullUrl()).toUnqualifiedVersionless().getValue() : null;
+    }
+
+    private static List<BundleEntryComponent> readAllPages(IGenericClient client, Bundle page) {
+        List<BundleEntryComponent> entries = new ArrayList<>(page.getEntry());
+        while (page.getLink(Bundle.LINK_NEXT) != null) {
+            page = client.loadPage().next(page).execute();
+            entries.addAll(page.getEntry());
+        }
+        return entries;
+    }
+
+    private Identity readThrough(ServerIndex index, String reference) {
+        try {
+            Practitioner practitioner = clientRegistry.getClient(index.serverBase).read()
+                    .resource(Practitioner.class)
+                    .withId(new IdType(reference).getIdPart())
+                    .execute();
+            Identity identity = Identity.of(practitioner);
+            index.practitioners.put(reference, identity);
+            return identity;
+        } catch (ResourceNotFoundException | ResourceGoneException e) {
+            return null;
+        }
+    }
+
+    private static int totalSize(Map<String, ServerIndex> servers) {
+        int size = 0;
+        for (ServerIndex index : servers.values()) {
+            size += index.practitioners.size();
+        }
+        return size;
+    }
+
+    private static double maxLagNanos(PractitionerIndex practitionerIndex) {
+        long lag = 0;
+        for (ServerIndex index : practitionerIndex.servers.values()) {
+            lag = Math.max(lag, index.lagNanos());
+        }
+        return lag;
+    }
+
+    private static Counter refreshes(MeterRegistry meterRegistry, String outcome) {
+        return Counter.builder("fhir.practitioner.index.refreshes")
+                .description("Sincronizaciones del índice de practitioners")
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    private static String normalize(String serverBase) {
+        return serverBase.endsWith("/") ? serverBase.substring(0, serverBase.length() - 1) : serverBase;
+    }
+
+    /**
+     * Datos de un practitioner necesarios para resolver una cita, con el mismo
+     * criterio que el modelo completo.
+     */
+    static final class Identity {
+        private final String practitionerId;
+        private final String versionId;
+
+        private Identity(String practitionerId, String versionId) {
+            this.practitionerId = practitionerId;
+            this.versionId = versionId;
+        }
+
+        static Identity of(Practitioner practitioner) {
+            String practitionerId = null;
+            // Sin nombre el practitioner no se tiene en cuenta
+            if (practitioner.hasName()) {
+                practitionerId = practitioner.getIdentifier().stream()
+                        .filter(id -> id.hasSystem() && "kogito".equalsIgnoreCase(id.getSystem()) && id.hasValue())
+                        .map(id -> id.getValue())
+                        .findFirst()
+                        .orElse(LeanAppointmentReader.UNKNOWN_PRACTITIONER);
+            }
+            String versionId = practitioner.getIdElement().getVersionIdPart();
+            if (versionId == null && practitioner.hasMeta()) {
+                versionId = practitioner.getMeta().getVersionId();
+            }
+            return new Identity(practitionerId, versionId);
+        }
+
+        /** Id de actor en Kogito, o {@code null} si el practitioner no tiene nombre. */
+        String getPractitionerId() {
+            return practitionerId;
+        }
+
+        String getVersionId() {
+            return versionId;
+        }
+    }
+
+    private static final class ServerIndex {
+        private final String serverBase;
+        private final Map<String, Identity> practitioners = new ConcurrentHashMap<>();
+        private volatile boolean warm;
+        private volatile Instant since;
+        private volatile long lastSync = System.nanoTime();
+
+        private ServerIndex(String serverBase) {
+            this.serverBase = serverBase;
+        }
+
+        private void synced(Instant since) {
+            this.since = since;
+            this.lastSync = System.nanoTime();
+            this.warm = true;
+        }
+
+        private long lagNanos() {
+            return System.nanoTime() - lastSync;
+        }
+    }
+}
@@ -0,0 +1,498 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.jbpm.workflow.core.impl.NodeImpl;
+import org.jbpm.workflow.core.impl.WorkflowProcessImpl;
+import org.jbpm.workflow.instance.WorkflowProcessInstance;
+import org.jbpm.workflow.instance.impl.WorkflowProcessInstanceImpl;
+import org.kie.api.definition.process.Node;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.MapOutput;
+import org.kie.kogito.internal.process.event.DefaultKogitoProcessEventListener;
+import org.kie.kogito.internal.process.runtime.KogitoNodeInstance;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstanceReadMode;
+import org.kie.kogito.process.Processes;
+import org.kie.kogito.process.impl.AbstractProcessInstance;
+import org.kie.kogito.svg.ProcessSvgService;
+import org.kie.kogito.svg.SVGImageProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.config.GzipEncoding;
+import us.dit.muit.hsa.neurologicalassessment.entities.NodeStateOverlay;
+
+/**
+ * SVG de los procesos y de sus instancias, generados una sola vez mientras no
+ * cambien.
+ * <p>
+ * Al arrancar se genera el SVG de cada definición de proceso y se construye
+ * la tabla de alias: cada proceso se encuentra por su id y por la parte tras
+ * el último punto ({@code assessment} para
+ * {@code neurologicalassessment.assessment}), y se anota con qué id lo
+ * reconoce {@link ProcessSvgService}. Así ninguna petición vuelve a generar la
+ * definición ni repite la llamada con otro prefijo.
+ * <p>
+ * El SVG de una instancia se genera sobre el de la definición con el estado
+ * de sus nodos leído del almacén de instancias, el mismo que
+ * {@link #overlay(String, String)}; no con
+ * {@link ProcessSvgService#getProcessInstanceSvg}, que lo lee del Data Index y
+ * éste se actualiza de forma asíncrona, por detrás de los eventos de nodo. Se
+ * guarda junto con la versión de su estado, que sube cada vez que un nodo de
+ * la instancia se activa o termina. Una entrada sólo se sirve si su versión
+ * sigue siendo la actual, y un SVG que se generó mientras la instancia
+ * avanzaba no llega a guardarse. La caché está acotada por el total de
+ * caracteres ({@code assessment.svg.cache-max-chars}).
+ * <p>
+ * Para no descargar un SVG completo por instancia, el cliente puede pedir una
+ * sola vez el de la definición y aplicarle el estado de los nodos de cada
+ * instancia ({@link #overlay(String, String)}).
+ */
+@Component
+public class ProcessSvgCache extends DefaultKogitoProcessEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ProcessSvgCache.class);
+
+    /**
+     * Instancias pedidas por id a partir de las cuales sale más barato recorrer
+     * el almacén una vez que buscarlas una a una.
+     */
+    private static final int MAX_SINGLE_LOOKUPS = 16;
+
+    /** Prefijo con el que el servicio de SVG puede registrar los procesos. */
+    private static final String PACKAGE_PREFIX = "neurologicalassessment.";
+
+    /** Los procesos dependen de sus listeners, así que se obtienen bajo demanda. */
+    private final Supplier<Processes> processes;
+    private final Supplier<ProcessSvgService> svgService;
+    private final AssessmentProperties.Svg config;
+    private volatile Table table;
+    /** Id en el BPMN de cada nodo por su UniqueId interno, por proceso. */
+    private final Map<String, Map<String, String>> definitionIds = new ConcurrentHashMap<>();
+    /**
+     * Versión del estado de las instancias que han avanzado desde el arranque.
+     * Las demás tienen versión {@code -finished}: cada instancia que termina
+     * la cambia, de modo que un SVG que se estaba generando cuando terminó su
+     * instancia nunca coincide con ella. Ambos contadores arrancan en la hora
+     * de inicio en microsegundos, así que una versión no se repite tras un
+     * reinicio y sirve también como ETag.
+     */
+    private final Map<String, Long> versions = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final AtomicLong finished = new AtomicLong(sequence.get());
+    private final Cache<String, Rendered> instances;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public ProcessSvgCache(ObjectProvider<Processes> processes, ObjectProvider<ProcessSvgService> svgService,
+            AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this(processes::getIfAvailable, svgService::getIfAvailable, properties, meterRegistry);
+    }
+
+    ProcessSvgCache(Supplier<Processes> processes, Supplier<ProcessSvgService> svgService,
+            AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this.processes = processes;
+        this.svgService = svgService;
+        this.config = properties.getSvg();
+        this.instances = Caffeine.newBuilder()
+                .maximumWeight(properties.getSvg().getCacheMaxChars())
+                .weigher((String key, Rendered rendered) -> rendered.svg.text().length())
+                .build();
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        meterRegistry.gauge("assessment.svg.cache.size", instances, Cache::estimatedSize);
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("assessment.svg.cache.requests")
+                .description("Consultas a la caché de SVG de instancias")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        table();
+    }
+
+    public boolean isAvailable() {
+        return svgService.get() != null;
+    }
+
+    /**
+     * Id del proceso al que se refiere {@code processId}, sea su id o su
+     * alias.
+     */
+    public Optional<String> resolve(String processId) {
+        Definition definition = table().aliases.get(processId);
+        return definition != null ? Optional.of(definition.processId) : Optional.empty();
+    }
+
+    /**
+     * SVG de la definición del proceso, generado al arrancar; vacío si el
+     * servicio no pudo generarlo.
+     */
+    public Optional<Svg> processSvg(String processId) {
+        Definition definition = table().aliases.get(processId);
+        return definition != null ? Optional.ofNullable(definition.svg) : Optional.empty();
+    }
+
+    /**
+     * SVG de la instancia si está en caché y la instancia no ha avanzado desde
+     * que se generó; {@code null} en otro caso.
+     */
+    public Svg cachedInstanceSvg(String processId, String instanceId) {
+        Rendered rendered = instances.getIfPresent(key(processId, instanceId));
+        if (rendered != null && rendered.version == version(instanceId)) {
+            hits.increment();
+            return rendered.svg;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Genera el SVG de la instancia a partir del de la definición y del estado
+     * de sus nodos en el almacén, y lo guarda si la instancia no ha avanzado
+     * mientras tanto.
+     *
+     * @param processId id del proceso, ya resuelto con {@link #resolve(String)}
+     * @return el SVG, o {@code null} si la definición no tiene SVG o la
+     *         instancia no existe
+     */
+    public Svg renderInstanceSvg(String processId, String instanceId) {
+        Definition definition = table().aliases.get(processId);
+        Process<?> process = process(processId);
+        if (definition == null || definition.svg == null || process == null) {
+            return null;
+        }
+        // La versión se lee antes que el almacén: si la instancia avanza entre medias, no se guarda
+        long version = version(instanceId);
+        Optional<NodeStateOverlay> state = process.instances().findById(instanceId, ProcessInstanceReadMode.READ_ONLY)
+                .map(instance -> toOverlay(instance, false));
+        if (state.isEmpty()) {
+            return null;
+        }
+        Svg svg = new Svg(annotate(definition.svg.text(), state.get()));
+        if (version(instanceId) == version) {
+            instances.put(key(processId, instanceId), new Rendered(version, svg));
+        }
+        return svg;
+    }
+
+    /** Marca los nodos con los mismos colores que el addon de SVG de Kogito. */
+    private String annotate(String definitionSvg, NodeStateOverlay state) {
+        List<String> active = new ArrayList<>();
+        for (NodeStateOverlay.ActiveNode node : state.active()) {
+            active.add(node.id());
+        }
+        if (active.isEmpty() && state.completed().isEmpty()) {
+            return definitionSvg;
+        }
+        return SVGImageProcessor.transform(new ByteArrayInputStream(definitionSvg.getBytes(StandardCharsets.UTF_8)),
+                state.completed(), active, Collections.emptyMap(), config.getCompletedColor(),
+                config.getCompletedBorderColor(), config.getActiveBorderColor());
+    }
+
+    @Override
+    public void afterNodeTriggered(ProcessNodeTriggeredEvent event) {
+        moved(event.getProcessInstance());
+    }
+
+    @Override
+    public void afterNodeLeft(ProcessNodeLeftEvent event) {
+        moved(event.getProcessInstance());
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        ProcessInstance instance = event.getProcessInstance();
+        // Primero cambia la versión de las instancias sin entrada y después se quita la suya
+        finished.incrementAndGet();
+        versions.remove(instance.getId());
+        instances.invalidate(key(instance.getProcessId(), instance.getId()));
+    }
+
+    private void moved(ProcessInstance instance) {
+        versions.put(instance.getId(), sequence.incrementAndGet());
+    }
+
+    /**
+     * Versión del estado de los nodos de la instancia: cambia siempre que un
+     * nodo se activa o termina, sin leer la instancia.
+     */
+    public long instanceVersion(String instanceId) {
+        return version(instanceId);
+    }
+
+    /**
+     * Estado de los nodos de la instancia para colorear en el cliente el SVG
+     * de la definición: nodos activos con su hora de activación y nodos ya
+     * completados, por su id en el BPMN (el mismo que llevan en el SVG).
+     *
+     * @param processId id del proceso, ya resuelto con {@link #resolve(String)}
+     * @return vacío si la instancia no existe
+     */
+    public Optional<NodeStateOverlay> overlay(String processId, String instanceId) {
+        Process<?> process = process(processId);
+        if (process == null) {
+            return Optional.empty();
+        }
+        return process.instances().findById(instanceId, ProcessInstanceReadMode.READ_ONLY)
+                .map(instance -> toOverlay(instance, false));
+    }
+
+    /**
+     * Estado de los nodos y variables de varias instancias, para el visor de
+     * instancias. Las instancias se leen del almacén a medida que se consume
+     * el resultado: una a una si son pocas, o en una sola pasada de lectura
+     * por el almacén cuando se piden muchas o ninguna en concreto.
+     *
+     * @param processId   id del proceso, ya resuelto con {@link #resolve(String)}
+     * @param instanceIds instancias que se quieren, o {@code null} para todas;
+     *                    las que no existen se omiten
+     * @param state       estado que deben tener ({@code active},
+     *                    {@code suspended}...), o {@code null} para cualquiera
+     */
+    public Stream<NodeStateOverlay> overlays(String processId, Collection<String> instanceIds, String state) {
+        Process<?> process = process(processId);
+        if (process == null) {
+            return Stream.empty();
+        }
+        Stream<? extends org.kie.kogito.process.ProcessInstance<?>> instances;
+        if (instanceIds != null && instanceIds.size() <= MAX_SINGLE_LOOKUPS) {
+            instances = instanceIds.stream().distinct()
+                    .map(id -> process.instances().findById(id, ProcessInstanceReadMode.READ_ONLY))
+                    .flatMap(Optional::stream);
+        } else {
+            Set<String> wanted = instanceIds != null ? new HashSet<>(instanceIds) : null;
+            instances = process.instances().stream(ProcessInstanceReadMode.READ_ONLY)
+                    .filter(instance -> wanted == null || wanted.contains(instance.id()));
+        }
+        return instances
+                .filter(instance -> state == null || state.equals(TaskEventStream.stateName(instance.status())))
+                .map(instance -> toOverlay(instance, true));
+    }
+
+    private Process<?> process(String processId) {
+        Processes available = processes.get();
+        return available != null ? available.processById(processId) : null;
+    }
+
+    private NodeStateOverlay toOverlay(org.kie.kogito.process.ProcessInstance<?> instance,
+            boolean withVariables) {
+        List<NodeStateOverlay.ActiveNode> active = new ArrayList<>();
+        for (KogitoNodeInstance node : instance.findNodes(node -> true)) {
+            if (node.getNodeDefinitionId() != null) {
+                active.add(new NodeStateOverlay.ActiveNode(node.getNodeDefinitionId(), node.getTriggerTime()));
+            }
+        }
+        Object variables = withVariables ? instance.variables() : null;
+        return new NodeStateOverlay(instance.id(), TaskEventStream.stateName(instance.status()),
+                instance.startDate(), variables instanceof MapOutput ? ((MapOutput) variables).toMap() : null,
+                active, completedNodeIds(instance));
+    }
+
+    /**
+     * La API pública de Kogito no expone los nodos completados; el motor jBPM
+     * los guarda en la instancia interna por su UniqueId ({@code 3},
+     * {@code 5:2}), que se traduce al id del BPMN.
+     */
+    private List<String> completedNodeIds(org.kie.kogito.process.ProcessInstance<?> instance) {
+        if (instance instanceof AbstractProcessInstance) {
+            WorkflowProcessInstance internal = ((AbstractProcessInstance<?>) instance).internalGetProcessInstance();
+            if (internal instanceof WorkflowProcessInstanceImpl) {
+                WorkflowProcessInstanceImpl workflow = (WorkflowProcessInstanceImpl) internal;
+                List<String> completed = workflow.getCompletedNodeIds();
+                if (completed.isEmpty()) {
+                    return Collections.emptyList();
+                }
+                Map<String, String> ids = definitionIds.computeIfAbsent(workflow.getProcessId(),
+                        id -> definitionIds(workflow.getWorkflowProcess()));
+                // Un nodo que se ejecuta varias veces aparece repetido
+                Set<String> result = new LinkedHashSet<>();
+                for (String uniqueId : completed) {
+                    String definitionId = ids.get(uniqueId);
+                    if (definitionId != null) {
+                        result.add(definitionId);
+                    }
+                }
+                return new ArrayList<>(result);
+            }
+        }
+        return Collections.emptyList();
+    }
+
+    private static Map<String, String> definitionIds(Object process) {
+        Map<String, String> ids = new HashMap<>();
+        if (process instanceof WorkflowProcessImpl) {
+            for (Node node : ((WorkflowProcessImpl) process).getNodesRecursively()) {
+                Object definitionId = node.getMetaData().get("UniqueId");
+                if (node instanceof NodeImpl && definitionId instanceof String) {
+                    ids.put(((NodeImpl) node).getUniqueId(), (String) definitionId);
+                }
+            }
+        }
+        return ids;
+    }
+
+    private long version(String instanceId) {
+        Long version = versions.get(instanceId);
+        return version != null ? version : -finished.get();
+    }
+
+    private static String key(String processId, String instanceId) {
+        return processId + "/" + instanceId;
+    }
+
+    private Table table() {
+        Table current = table;
+        if (current == null) {
+            synchronized (this) {
+                current = table;
+                if (current == null) {
+                    current = load();
+                    // Sin servicio o sin procesos se vuelve a intentar en la siguiente petición
+                    if (!current.aliases.isEmpty()) {
+                        table = current;
+                    }
+                }
+            }
+        }
+        return current;
+    }
+
+    private Table load() {
+        Processes available = processes.get();
+        ProcessSvgService service = svgService.get();
+        if (available == null || service == null) {
+            return new Table(Collections.emptyMap());
+        }
+        Map<String, Definition> aliases = new HashMap<>();
+        for (String processId : available.processIds()) {
+            Definition definition = render(service, processId);
+            aliases.put(processId, definition);
+            aliases.putIfAbsent(processId.substring(processId.lastIndexOf('.') + 1), definition);
+            logger.info("Process '{}' SVG {} (service id '{}')", processId,
+                    definition.svg != null ? "rendered, " + definition.svg.text().length() + " chars" : "not available",
+                    definition.svgId);
+        }
+        return new Table(aliases);
+    }
+
+    private static Definition render(ProcessSvgService service, String processId) {
+        try {
+            Optional<String> svg = service.getProcessSvg(processId);
+            if ((svg.isEmpty() || svg.get().isEmpty()) && !processId.contains(".")) {
+                String prefixed = PACKAGE_PREFIX + processId;
+                svg = service.getProcessSvg(prefixed);
+                if (svg.isPresent() && !svg.get().isEmpty()) {
+                    return new Definition(processId, prefixed, new Svg(svg.get()));
+                }
+            }
+            return new Definition(processId, processId,
+                    svg.filter(value -> !value.isEmpty()).map(Svg::new).orElse(null));
+        } catch (RuntimeException e) {
+            logger.error("Error generating SVG for process '{}': {}", processId, e.getMessage(), e);
+            return new Definition(processId, processId, null);
+        }
+    }
+
+    private static final class Table {
+        /** Definición por id y por alias del proceso. */
+        private final Map<String, Definition> aliases;
+
+        private Table(Map<String, Definition> aliases) {
+            this.aliases = aliases;
+        }
+    }
+
+    private static final class Definition {
+        private final String processId;
+        /** Id con el que {@link ProcessSvgService} reconoce el proceso. */
+        private final String svgId;
+        private final Svg svg;
+
+        private Definition(String processId, String svgId, Svg svg) {
+            this.processId = processId;
+            this.svgId = svgId;
+            this.svg = svg;
+        }
+    }
+
+    private static final class Rendered {
+        private final long version;
+        private final Svg svg;
+
+        private Rendered(long version, Svg svg) {
+            this.version = version;
+            this.svg = svg;
+        }
+    }
+
+    /**
+     * SVG generado, con su ETag y su versión gzip, que se comprime la primera
+     * vez que se pide y se reutiliza mientras el SVG siga en caché.
+     */
+    public static final class Svg {
+        private final String text;
+        private final String hash;
+        private volatile byte[] gzip;
+
+        Svg(String text) {
+            this.text = text;
+            this.hash = DigestUtils.md5DigestAsHex(text.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public String text() {
+            return text;
+        }
+
+        public byte[] gzip() {
+            byte[] result = gzip;
+            if (result == null) {
+                // Dos peticiones simultáneas pueden comprimirlo a la vez; el resultado es el mismo
+                result = GzipEncoding.compress(text.getBytes(StandardCharsets.UTF_8));
+                gzip = result;
+            }
+            return result;
+        }
+
+        /** ETag fuerte de la codificación indicada. */
+        public String etag(boolean gzipped) {
+            return "\"" + hash + (gzipped ? "-gzip" : "") + "\"";
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Resultado inmutable de resolver una cita: los datos que necesita el proceso
+ * y la versión de cada recurso FHIR del que se han obtenido, para poder
+ * revalidarlos después con lecturas condicionales.
+ */
+final class ResolvedAppointment {
+
+    private final String serverBase;
+    private final String practitioner;
+    private final String patient;
+    /** Referencia relativa ("Patient/2") → versionId del recurso leído. */
+    private final Map<String, String> versions;
+
+    ResolvedAppointment(String serverBase, String practitioner, String patient, Map<String, String> versions) {
+        this.serverBase = serverBase;
+        this.practitioner = practitioner;
+        this.patient = patient;
+        this.versions = Collections.unmodifiableMap(new LinkedHashMap<>(versions));
+    }
+
+    String getServerBase() {
+        return serverBase;
+    }
+
+    Map<String, String> getVersions() {
+        return versions;
+    }
+
+    /**
+     * Devuelve un DTO nuevo en cada llamada: el DTO acaba en las variables del
+     * proceso y no debe compartirse entre instancias.
+     */
+    AppointmentDTO toDTO() {
+        AppointmentDTO dto = new AppointmentDTO();
+        dto.setPractitioner(practitioner);
+        dto.setPatient(patient);
+        return dto;
+    }
+}
@@ -0,0 +1,317 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstance;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskCompletion;
+
+/**
+ * Cumplimentación de tareas de valoración del dolor con el cuestionario DN4,
+ * una a una o en bloque.
+ * <p>
+ * Ambos caminos aplican las mismas comprobaciones: la instancia y la tarea
+ * deben existir y la tarea debe estar asignada al usuario, por ActorId, o a
+ * uno de sus roles, por GroupId. En bloque, las tareas se agrupan por
+ * instancia: cada instancia se busca una sola vez y sus tareas se completan en
+ * el orden recibido, mientras que instancias distintas se procesan en paralelo
+ * ({@code assessment.bulk.parallelism}). Las operaciones sobre una misma
+ * instancia, vengan de la petición que vengan, no se solapan.
+ * <p>
+ * La tarea se localiza en el índice de {@link TaskInbox} en lugar de recorrer
+ * los work items de la instancia; sólo las tareas que no están en la bandeja
+ * (sin asignar, o si el índice aún no se ha construido) se buscan en la
+ * instancia, con el mismo resultado que antes.
+ */
+@Component
+public class TaskCompletionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskCompletionService.class);
+
+    /** Cerrojos por instancia, repartidos por hash para no tener que retirarlos. */
+    private static final int LOCK_STRIPES = 64;
+
+    /** El proceso depende de sus listeners, así que se obtiene bajo demanda. */
+    private final Supplier<Process<?>> assessmentProcess;
+    private final TaskInbox taskInbox;
+    private final int maxItems;
+    private final ExecutorService workers;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    @Autowired
+    public TaskCompletionService(@Qualifier(TaskInbox.PROCESS_ID) ObjectProvider<Process<?>> assessmentProcess,
+            TaskInbox taskInbox, AssessmentProperties properties) {
+        this(assessmentProcess::getIfAvailable, taskInbox, properties);
+    }
+
+    TaskCompletionService(Supplier<Process<?>> assessmentProcess, TaskInbox taskInbox,
+            AssessmentProperties properties) {
+        this.assessmentProcess = assessmentProcess;
+        this.taskInbox = taskInbox;
+        this.maxItems = properties.getBulk().getMaxItems();
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(Math.max(1, properties.getBulk().getParallelism()), runnable -> {
+            Thread thread = new Thread(runnable, "task-completion-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    /** Tareas admitidas en una misma petición en bloque. */
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    /**
+     * Completa una tarea.
+     *
+     * @return el resultado, con el código HTTP y el cuerpo que devuelve la API
+     */
+    public Outcome complete(String processInstanceId, String taskId, DN4 dn4, String userName,
+            Collection<String> userRoles) {
+        Process<?> process = assessmentProcess.get();
+        if (process == null) {
+            logger.error("Assessment process not found");
+            return processUnavailable();
+        }
+        synchronized (lockFor(processInstanceId)) {
+            try {
+                return complete(process.instances().findById(processInstanceId), processInstanceId, taskId, dn4,
+                        userName, userRoles);
+            } catch (Exception e) {
+                return failed(processInstanceId, taskId, e);
+            }
+        }
+    }
+
+    /**
+     * Completa una tarea conociendo sólo su id; la instancia se obtiene de la
+     * bandeja de tareas.
+     *
+     * @return el resultado, con el código HTTP y el cuerpo que devuelve la API
+     */
+    public Outcome complete(String taskId, DN4 dn4, String userName, Collection<String> userRoles) {
+        Optional<TaskInbox.Task> task = taskInbox.find(taskId);
+        if (task.isEmpty()) {
+            return notInInbox(taskId);
+        }
+        return complete(task.get().getProcessInstanceId(), taskId, dn4, userName, userRoles);
+    }
+
+    /**
+     * Completa varias tareas. Un fallo en una no impide completar las demás.
+     *
+     * @return un resultado por tarea, en el orden recibido
+     */
+    public List<Outcome> completeAll(List<TaskCompletion> items, String userName, Collection<String> userRoles) {
+        Outcome[] outcomes = new Outcome[items.size()];
+        Process<?> process = assessmentProcess.get();
+        if (process == null) {
+            logger.error("Assessment process not found");
+            Arrays.fill(outcomes, processUnavailable());
+            return Arrays.asList(outcomes);
+        }
+
+        Map<String, List<Integer>> byInstance = new LinkedHashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            TaskCompletion item = items.get(i);
+            if (item == null || item.getTaskId() == null || item.getDn4() == null) {
+                outcomes[i] = invalid(item);
+                continue;
+            }
+            // Sin instancia se toma la que indica la bandeja de tareas
+            String processInstanceId = item.getProcessInstanceId() != null ? item.getProcessInstanceId()
+                    : taskInbox.find(item.getTaskId()).map(TaskInbox.Task::getProcessInstanceId).orElse(null);
+            if (processInstanceId == null) {
+                outcomes[i] = notInInbox(item.getTaskId());
+            } else {
+                byInstance.computeIfAbsent(processInstanceId, id -> new ArrayList<>()).add(i);
+            }
+        }
+        logger.info("=== Completing {} tasks in {} process instances for user {} ===", items.size(),
+                byInstance.size(), userName);
+
+        CompletableFuture<?>[] groups = byInstance.entrySet().stream()
+                .map(group -> CompletableFuture.runAsync(
+                        () -> completeInstance(process, group.getKey(), group.getValue(), items, userName,
+                                userRoles, outcomes),
+                        workers))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(groups).join();
+        return Arrays.asList(outcomes);
+    }
+
+    private void completeInstance(Process<?> process, String processInstanceId, List<Integer> indexes,
+            List<TaskCompletion> items, String userName, Collection<String> userRoles, Outcome[] outcomes) {
+        Optional<? extends ProcessInstance<?>> instance = null;
+        for (int index : indexes) {
+            TaskCompletion item = items.get(index);
+            synchronized (lockFor(processInstanceId)) {
+                try {
+                    if (instance == null) {
+                        instance = process.instances().findById(processInstanceId);
+                    }
+                    outcomes[index] = complete(instance, processInstanceId, item.getTaskId(), item.getDn4(),
+                            userName, userRoles);
+                } catch (Exception e) {
+                    outcomes[index] = failed(processInstanceId, item.getTaskId(), e);
+                }
+            }
+        }
+    }
+
+    private Outcome complete(Optional<? extends ProcessInstance<?>> found, String processInstanceId,
+            String taskId, DN4 dn4, String userName, Collection<String> userRoles) {
+        logger.info("=== Completing task {} for process {} by user {} ===", taskId, processInstanceId, userName);
+        logger.debug("DN4 data received: {}", dn4);
+
+        ProcessInstance<?> instance = found.orElse(null);
+        if (instance == null) {
+            logger.warn("Process instance {} not found", processInstanceId);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Process instance not found");
+            error.put("processInstanceId", processInstanceId);
+            return new Outcome(404, error);
+        }
+
+        // Find the task: from the inbox index or, if it is not there (unassigned
+        // task, index not rebuilt yet), among the instance work items
+        TaskInbox.Task task = taskInbox.find(taskId)
+                .filter(indexed -> indexed.getProcessInstanceId().equals(processInstanceId))
+                .orElseGet(() -> instance.workItems().stream()
+                        .filter(wi -> wi.getId().equals(taskId))
+                        .findFirst()
+                        .map(wi -> TaskInbox.Task.of(processInstanceId, wi, null))
+                        .orElse(null));
+
+        if (task == null) {
+            logger.warn("Task {} not found in process instance {}", taskId, processInstanceId);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Task not found");
+            error.put("taskId", taskId);
+            error.put("processInstanceId", processInstanceId);
+            return new Outcome(404, error);
+        }
+
+        // Verify user has permission to complete this task
+        if (!task.isAssignedTo(userName, userRoles)) {
+            logger.warn("User {} not authorized to complete task {}", userName, taskId);
+            Map<String, Object> error = new HashMap<>();
+            error.put("error", "Not authorized to complete this task");
+            error.put("taskId", taskId);
+            error.put("userName", userName);
+            return new Outcome(403, error);
+        }
+
+        // Complete the task with DN4 data
+        Map<String, Object> outputData = new HashMap<>();
+        outputData.put("dn4", dn4);
+
+        logger.info("Completing task {} with DN4 data", taskId);
+        instance.completeWorkItem(taskId, outputData);
+
+        logger.info("✓ Task {} completed successfully by user {}", taskId, userName);
+
+        Map<String, Object> response = new HashMap<>();
+        response.put("message", "Task completed successfully");
+        response.put("taskId", taskId);
+        response.put("processInstanceId", processInstanceId);
+        response.put("completedBy", userName);
+        response.put("dn4", dn4);
+        return new Outcome(200, response);
+    }
+
+    private Object lockFor(String processInstanceId) {
+        return locks[Math.floorMod(processInstanceId.hashCode(), LOCK_STRIPES)];
+    }
+
+    private static Outcome processUnavailable() {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Assessment process not initialized");
+        return new Outcome(500, error);
+    }
+
+    private static Outcome notInInbox(String taskId) {
+        logger.warn("Task {} not found in the task inbox", taskId);
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Task not found");
+        error.put("taskId", taskId);
+        return new Outcome(404, error);
+    }
+
+    private static Outcome invalid(TaskCompletion item) {
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "taskId and dn4 are required");
+        if (item != null) {
+            error.put("processInstanceId", item.getProcessInstanceId());
+            error.put("taskId", item.getTaskId());
+        }
+        return new Outcome(400, error);
+    }
+
+    private static Outcome failed(String processInstanceId, String taskId, Exception e) {
+        logger.error("Error completing task {} in process {}", taskId, processInstanceId, e);
+        Map<String, Object> error = new HashMap<>();
+        error.put("error", "Error completing task: " + e.getMessage());
+        error.put("taskId", taskId);
+        error.put("processInstanceId", processInstanceId);
+        return new Outcome(500, error);
+    }
+
+    /**
+     * Resultado de completar una tarea: el código HTTP con el que respondería
+     * la API para esa tarea sola y el cuerpo de la respuesta.
+     */
+    public static final class Outcome {
+        private final int status;
+        private final Map<String, Object> body;
+
+        Outcome(int status, Map<String, Object> body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public Map<String, Object> getBody() {
+            return body;
+        }
+
+        public boolean isCompleted() {
+            return status == 200;
+        }
+    }
+}
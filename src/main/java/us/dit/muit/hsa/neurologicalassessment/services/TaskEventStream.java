@@ -0,0 +1,306 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.internal.process.event.DefaultKogitoProcessEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+
+/**
+ * Difusión por Server-Sent Events de los cambios de tareas e instancias, para
+ * que las páginas no tengan que consultar la API periódicamente.
+ * <p>
+ * Cada conexión recibe:
+ * <ul>
+ * <li>{@code task-created}, {@code task-updated} y {@code task-completed}
+ * cuando una tarea entra en su bandeja, cambia o sale de ella (completada,
+ * cancelada o reasignada), con el mismo criterio de ActorId/GroupId que la
+ * lista de tareas;</li>
+ * <li>{@code instance-state} al empezar o terminar una instancia, sólo con su
+ * id y estado, como los expone {@code /assessment} a cualquier usuario
+ * autenticado;</li>
+ * <li>{@code resync} si no ha podido leer a tiempo y se han descartado
+ * eventos: el cliente debe volver a pedir la lista.</li>
+ * </ul>
+ * Los eventos se encolan sin bloquear el hilo del proceso; cada conexión
+ * tiene su propia cola acotada y se envía desde un hilo aparte, de modo que un
+ * cliente lento no retrasa al resto. Un comentario periódico mantiene viva la
+ * conexión y detecta las que se han cerrado.
+ */
+@Component
+public class TaskEventStream extends DefaultKogitoProcessEventListener implements TaskInbox.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskEventStream.class);
+
+    static final String TASK_CREATED = "task-created";
+    static final String TASK_UPDATED = "task-updated";
+    static final String TASK_COMPLETED = "task-completed";
+    static final String INSTANCE_STATE = "instance-state";
+    static final String RESYNC = "resync";
+
+    private static final Event HEARTBEAT = new Event(null, null);
+    private static final Event RESYNC_EVENT = new Event(RESYNC, Collections.emptyMap());
+
+    private final AssessmentProperties.Stream config;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeat;
+    private final Counter overflows;
+
+    @Autowired
+    public TaskEventStream(TaskInbox taskInbox, AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this.config = properties.getStream();
+        AtomicInteger count = new AtomicInteger();
+        this.senders = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "task-stream-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "task-stream-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.overflows = Counter.builder("assessment.stream.overflows")
+                .description("Conexiones SSE que no han leído a tiempo y han recibido un evento resync")
+                .register(meterRegistry);
+        meterRegistry.gauge("assessment.stream.subscribers", subscribers, Set::size);
+        taskInbox.addListener(this);
+    }
+
+    @PostConstruct
+    public void start() {
+        long interval = Math.max(1, config.getHeartbeatInterval().toMillis());
+        heartbeat.scheduleAtFixedRate(this::sendHeartbeats, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.close(null);
+        }
+        senders.shutdownNow();
+    }
+
+    /**
+     * Abre una conexión para el usuario.
+     *
+     * @return el emisor SSE, o {@code null} si se ha alcanzado
+     *         {@code assessment.stream.max-subscribers}
+     */
+    public SseEmitter subscribe(String userName, Collection<String> roles) {
+        return subscribe(userName, roles, new SseEmitter(config.getTimeout().toMillis()));
+    }
+
+    SseEmitter subscribe(String userName, Collection<String> roles, SseEmitter emitter) {
+        if (subscribers.size() >= config.getMaxSubscribers()) {
+            logger.warn("Rejected task stream for user {}: {} subscribers connected", userName, subscribers.size());
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(userName, Set.copyOf(roles), emitter);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        // Un primer comentario envía las cabeceras y confirma la conexión al cliente
+        subscriber.offer(HEARTBEAT);
+        logger.debug("Task stream opened for user {} ({} subscribers)", userName, subscribers.size());
+        return emitter;
+    }
+
+    int subscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void taskChanged(TaskInbox.Task previous, TaskInbox.Task current) {
+        Event created = null;
+        Event updated = null;
+        Event completed = null;
+        boolean active = current != null && current.isInboxTask();
+        for (Subscriber subscriber : subscribers) {
+            boolean was = previous != null && previous.isAssignedTo(subscriber.userName, subscriber.roles);
+            boolean is = active && current.isAssignedTo(subscriber.userName, subscriber.roles);
+            if (is && !was) {
+                created = created != null ? created : new Event(TASK_CREATED, current.toSummary());
+                subscriber.offer(created);
+            } else if (is) {
+                updated = updated != null ? updated : new Event(TASK_UPDATED, current.toSummary());
+                subscriber.offer(updated);
+            } else if (was) {
+                completed = completed != null ? completed
+                        : new Event(TASK_COMPLETED, (current != null ? current : previous).toSummary());
+                subscriber.offer(completed);
+            }
+        }
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+        instanceState(event.getProcessInstance());
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        instanceState(event.getProcessInstance());
+    }
+
+    private void instanceState(ProcessInstance instance) {
+        if (!TaskInbox.PROCESS_ID.equals(instance.getProcessId()) || subscribers.isEmpty()) {
+            return;
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("processInstanceId", instance.getId());
+        data.put("state", stateName(instance.getState()));
+        Event event = new Event(INSTANCE_STATE, data);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(event);
+        }
+    }
+
+    static String stateName(int state) {
+        switch (state) {
+            case ProcessInstance.STATE_PENDING:
+                return "pending";
+            case ProcessInstance.STATE_ACTIVE:
+                return "active";
+            case ProcessInstance.STATE_COMPLETED:
+                return "completed";
+            case ProcessInstance.STATE_ABORTED:
+                return "aborted";
+            case ProcessInstance.STATE_SUSPENDED:
+                return "suspended";
+            default:
+                return "error";
+        }
+    }
+
+    private void sendHeartbeats() {
+        for (Subscriber subscriber : subscribers) {
+            // Con eventos pendientes la conexión ya está en uso
+            if (subscriber.queue.isEmpty()) {
+                subscriber.offer(HEARTBEAT);
+            }
+        }
+    }
+
+    /** Evento pendiente de envío; sin nombre es un comentario de latido. */
+    private static final class Event {
+        private final String name;
+        private final Object data;
+
+        private Event(String name, Object data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        private SseEmitter.SseEventBuilder toSse() {
+            return name == null
+                    ? SseEmitter.event().comment("heartbeat")
+                    : SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    private final class Subscriber {
+        private final String userName;
+        private final Set<String> roles;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Event> queue;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(String userName, Set<String> roles, SseEmitter emitter) {
+            this.userName = userName;
+            this.roles = roles;
+            this.emitter = emitter;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, config.getQueueCapacity()));
+        }
+
+        private void offer(Event event) {
+            if (closed) {
+                return;
+            }
+            if (!queue.offer(event)) {
+                // Cliente lento: lo pendiente ya no sirve, tendrá que recargar la lista
+                queue.clear();
+                queue.offer(RESYNC_EVENT);
+                overflows.increment();
+                logger.debug("Task stream queue full for user {}, sending resync", userName);
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                Event event;
+                while (!closed && (event = queue.poll()) != null) {
+                    emitter.send(event.toSse());
+                }
+            } catch (IOException | IllegalStateException e) {
+                close(e);
+            } finally {
+                sending.set(false);
+            }
+            // Un evento encolado mientras terminaba el envío no debe quedarse esperando
+            if (!closed && !queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void close(Throwable error) {
+            closed = true;
+            subscribers.remove(this);
+            queue.clear();
+            try {
+                if (error != null) {
+                    logger.debug("Task stream for user {} closed: {}", userName, error.getMessage());
+                    emitter.completeWithError(error);
+                } else {
+                    emitter.complete();
+                }
+            } catch (RuntimeException e) {
+                // La conexión ya estaba cerrada
+            }
+        }
+    }
+}
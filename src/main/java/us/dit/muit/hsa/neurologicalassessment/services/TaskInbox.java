@@ -0,0 +1,745 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.kogito.internal.process.event.DefaultKogitoProcessEventListener;
+import org.kie.kogito.internal.process.event.ProcessWorkItemTransitionEvent;
+import org.kie.kogito.internal.process.runtime.KogitoNodeInstance;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItem;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstance;
+import org.kie.kogito.process.WorkItem;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskSummary;
+
+/**
+ * Bandeja de entrada en memoria: tareas activas del proceso de evaluación
+ * indexadas por ActorId y por GroupId, para responder a
+ * {@code /assessment/tasks} sin recorrer todas las instancias.
+ * <p>
+ * Kogito registra este listener en sus procesos; cada transición de un work
+ * item (creación, reclamación, liberación, completado, cancelación) actualiza
+ * la tarea, y al terminar una instancia se retiran sus tareas. Al arrancar el
+ * índice se reconstruye a partir de las instancias guardadas y, cada
+ * {@code assessment.inbox.consistency-check-interval}, se compara con ellas y
+ * se corrigen las instancias que no coincidan.
+ * <p>
+ * Las tareas de cada usuario y de cada grupo se mantienen ordenadas por fecha
+ * de creación, de modo que una página a partir de un {@link Cursor} se lee
+ * recorriendo sólo las tareas que se devuelven.
+ * <p>
+ * Los cambios de la bandeja se notifican a los {@link Listener} registrados.
+ * <p>
+ * Cada usuario, grupo e instancia tiene además una versión que sube con cada
+ * cambio de sus tareas ({@link #versionFor(String, Collection)},
+ * {@link #instanceVersion(String)}), con la que la API responde a las
+ * peticiones condicionales sin volver a leer las tareas.
+ */
+@Component
+public class TaskInbox extends DefaultKogitoProcessEventListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskInbox.class);
+
+    static final String PROCESS_ID = "neurologicalassessment.assessment";
+
+    /** El proceso depende de sus listeners, así que se obtiene bajo demanda. */
+    private final Supplier<Process<?>> assessmentProcess;
+    private final long checkIntervalMillis;
+    /** Tareas por id del work item. */
+    private final Map<String, Task> tasks = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Cursor>> byActor = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Cursor>> byGroup = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Cursor>> byInstance = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    /**
+     * Versiones por ActorId, GroupId e instancia. Toman valores de un único
+     * contador que arranca en la hora de inicio en microsegundos, así que
+     * nunca se repiten tras un reinicio; 0 indica que nunca ha habido tareas.
+     */
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000);
+    private final Map<String, Long> actorVersions = new ConcurrentHashMap<>();
+    private final Map<String, Long> groupVersions = new ConcurrentHashMap<>();
+    private final Map<String, Long> instanceVersions = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Counter repairs;
+
+    @Autowired
+    public TaskInbox(@Qualifier(PROCESS_ID) ObjectProvider<Process<?>> assessmentProcess,
+            AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this(assessmentProcess::getIfAvailable, properties, meterRegistry);
+    }
+
+    TaskInbox(Supplier<Process<?>> assessmentProcess, AssessmentProperties properties, MeterRegistry meterRegistry) {
+        this.assessmentProcess = assessmentProcess;
+        this.checkIntervalMillis = properties.getInbox().getConsistencyCheckInterval().toMillis();
+        this.scheduler = checkIntervalMillis > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "task-inbox-check");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+        this.repairs = Counter.builder("assessment.inbox.repairs")
+                .description("Instancias cuyas tareas no coincidían con el índice y se han corregido")
+                .register(meterRegistry);
+        meterRegistry.gauge("assessment.inbox.size", tasks, Map::size);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        rebuild();
+        if (scheduler != null) {
+            scheduler.scheduleWithFixedDelay(this::checkQuietly, checkIntervalMillis, checkIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public void afterWorkItemTransition(ProcessWorkItemTransitionEvent event) {
+        if (PROCESS_ID.equals(event.getProcessInstance().getProcessId())) {
+            update(Task.of(event.getWorkItem()));
+        }
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        if (PROCESS_ID.equals(event.getProcessInstance().getProcessId())) {
+            replaceInstance(event.getProcessInstance().getId(), Collections.emptyList());
+        }
+    }
+
+    /**
+     * Tareas activas asignadas al usuario por ActorId o a alguno de sus roles
+     * por GroupId, por orden de creación.
+     */
+    public List<Task> tasksFor(String userName, Collection<String> roles) {
+        List<Task> result = new ArrayList<>();
+        tasksFor(userName, roles, null).forEachRemaining(result::add);
+        return result;
+    }
+
+    /**
+     * Recorre, por orden de creación, las tareas del usuario posteriores a
+     * {@code after} (o todas si es {@code null}). Las tareas se leen del
+     * índice según se avanza, sin copiar la bandeja completa.
+     */
+    public Iterator<Task> tasksFor(String userName, Collection<String> roles, Cursor after) {
+        List<Iterator<Cursor>> sources = new ArrayList<>();
+        addSource(sources, byActor.get(userName), after);
+        for (String role : roles) {
+            addSource(sources, byGroup.get(role), after);
+        }
+        return new MergedTasks(sources);
+    }
+
+    /**
+     * Tarea activa asignable con ese id, sin recorrer instancias. El índice se
+     * actualiza en el mismo evento de transición del work item, así que una
+     * tarea completada o cancelada deja de encontrarse en cuanto termina la
+     * transición.
+     */
+    public Optional<Task> find(String taskId) {
+        return Optional.ofNullable(tasks.get(taskId));
+    }
+
+    /**
+     * Versión de la bandeja del usuario: cambia siempre que cambia alguna de
+     * las tareas que devolvería {@link #tasksFor(String, Collection)}.
+     */
+    public long versionFor(String userName, Collection<String> roles) {
+        long version = actorVersions.getOrDefault(userName, 0L);
+        for (String role : roles) {
+            version = Math.max(version, groupVersions.getOrDefault(role, 0L));
+        }
+        return version;
+    }
+
+    /**
+     * Versión de las tareas de una instancia; 0 si no tiene tareas en la
+     * bandeja.
+     */
+    public long instanceVersion(String processInstanceId) {
+        return instanceVersions.getOrDefault(processInstanceId, 0L);
+    }
+
+    /**
+     * Fecha de creación, en milisegundos, de la tarea más antigua asignada al
+     * grupo; -1 si no tiene ninguna. Se lee del principio del índice, sin
+     * recorrer las tareas del grupo.
+     */
+    public long oldestForGroup(String groupId) {
+        return oldest(byGroup.get(groupId));
+    }
+
+    /** Como {@link #oldestForGroup(String)}, para las tareas con ese ActorId. */
+    public long oldestForActor(String actorId) {
+        return oldest(byActor.get(actorId));
+    }
+
+    private static long oldest(NavigableSet<Cursor> cursors) {
+        if (cursors == null) {
+            return -1;
+        }
+        // first() falla si otro hilo vacía el conjunto entre medias
+        Iterator<Cursor> iterator = cursors.iterator();
+        return iterator.hasNext() ? iterator.next().created : -1;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Criterio de tarea activa de la API: fase {@code active}, sin fase o con
+     * estado {@code active}.
+     */
+    public static boolean isActive(String phase, String phaseStatus) {
+        return "active".equalsIgnoreCase(phaseStatus) || phase == null || phase.equals("active");
+    }
+
+    /** Reconstruye el índice a partir de las instancias activas del proceso. */
+    public void rebuild() {
+        Process<?> process = assessmentProcess.get();
+        if (process == null) {
+            logger.warn("Assessment process not available, task inbox left empty");
+            return;
+        }
+        Map<String, List<Task>> scanned = scan(process);
+        for (String processInstanceId : new ArrayList<>(byInstance.keySet())) {
+            if (!scanned.containsKey(processInstanceId)) {
+                replaceInstance(processInstanceId, Collections.emptyList());
+            }
+        }
+        scanned.forEach(this::replaceInstance);
+        logger.info("Task inbox rebuilt with {} tasks from {} active instances", tasks.size(), scanned.size());
+    }
+
+    /**
+     * Compara el índice con las instancias activas del proceso. Las instancias
+     * que no coinciden se vuelven a leer antes de corregirlas, para no
+     * confundir una transición en curso con una desviación.
+     *
+     * @return número de instancias corregidas
+     */
+    public int check() {
+        Process<?> process = assessmentProcess.get();
+        if (process == null) {
+            return 0;
+        }
+        Map<String, List<Task>> scanned = scan(process);
+        Set<String> mismatched = new HashSet<>();
+        scanned.forEach((processInstanceId, expected) -> {
+            if (!matches(processInstanceId, expected)) {
+                mismatched.add(processInstanceId);
+            }
+        });
+        for (String processInstanceId : byInstance.keySet()) {
+            if (!scanned.containsKey(processInstanceId)) {
+                mismatched.add(processInstanceId);
+            }
+        }
+
+        int repaired = 0;
+        for (String processInstanceId : mismatched) {
+            List<Task> current = process.instances().findById(processInstanceId)
+                    .filter(instance -> instance.status() == ProcessInstance.STATE_ACTIVE)
+                    .map(instance -> tasksOf(instance))
+                    .orElse(Collections.emptyList());
+            if (!matches(processInstanceId, current)) {
+                replaceInstance(processInstanceId, current);
+                repaired++;
+            }
+        }
+        if (repaired > 0) {
+            repairs.increment(repaired);
+            logger.warn("Task inbox out of sync for {} process instances, repaired", repaired);
+        }
+        return repaired;
+    }
+
+    private void checkQuietly() {
+        try {
+            check();
+        } catch (RuntimeException e) {
+            logger.warn("Task inbox consistency check failed: {}", e.getMessage());
+        }
+    }
+
+    private static Map<String, List<Task>> scan(Process<?> process) {
+        Map<String, List<Task>> scanned = new LinkedHashMap<>();
+        process.instances().stream()
+                .filter(instance -> instance.status() == ProcessInstance.STATE_ACTIVE)
+                .forEach(instance -> scanned.put(instance.id(), tasksOf(instance)));
+        return scanned;
+    }
+
+    /**
+     * Tareas activas asignables de una instancia, por orden de creación.
+     */
+    public static List<Task> tasksOf(ProcessInstance<?> instance) {
+        Map<String, Date> triggered = new HashMap<>();
+        for (KogitoNodeInstance node : instance.findNodes(node -> true)) {
+            triggered.put(node.getStringId(), node.getTriggerTime());
+        }
+        List<Task> result = new ArrayList<>();
+        for (WorkItem workItem : instance.workItems()) {
+            Task task = Task.of(instance.id(), workItem, triggered.get(workItem.getNodeInstanceId()));
+            if (task.isInboxTask()) {
+                result.add(task);
+            }
+        }
+        result.sort(Comparator.comparing(Task::cursor));
+        return result;
+    }
+
+    private boolean matches(String processInstanceId, List<Task> expected) {
+        Set<Cursor> indexed = byInstance.getOrDefault(processInstanceId, Collections.emptyNavigableSet());
+        if (indexed.size() != expected.size()) {
+            return false;
+        }
+        for (Task task : expected) {
+            if (!task.sameAssignment(tasks.get(task.getId()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Sustituye las tareas indexadas de una instancia por {@code current}. */
+    void replaceInstance(String processInstanceId, Collection<Task> current) {
+        Set<String> keep = new HashSet<>();
+        for (Task task : current) {
+            keep.add(task.getId());
+            update(task);
+        }
+        Set<Cursor> indexed = byInstance.get(processInstanceId);
+        if (indexed != null) {
+            for (Cursor cursor : new ArrayList<>(indexed)) {
+                if (!keep.contains(cursor.id)) {
+                    remove(cursor.id);
+                }
+            }
+        }
+    }
+
+    /** Indexa la tarea o, si ya no es una tarea activa asignable, la retira. */
+    void update(Task task) {
+        Task[] replaced = new Task[1];
+        tasks.compute(task.getId(), (id, previous) -> {
+            replaced[0] = previous;
+            if (previous != null) {
+                unindex(previous);
+            }
+            if (!task.isInboxTask()) {
+                return null;
+            }
+            index(task);
+            return task;
+        });
+        changed(replaced[0], task);
+    }
+
+    private void remove(String id) {
+        Task[] removed = new Task[1];
+        tasks.computeIfPresent(id, (key, previous) -> {
+            removed[0] = previous;
+            unindex(previous);
+            return null;
+        });
+        changed(removed[0], null);
+    }
+
+    private void changed(Task previous, Task current) {
+        if (previous == null ? current == null || !current.isInboxTask() : previous.sameAssignment(current)) {
+            return;
+        }
+        long version = sequence.incrementAndGet();
+        bump(previous, version);
+        bump(current != null && current.isInboxTask() ? current : null, version);
+        for (Listener listener : listeners) {
+            try {
+                listener.taskChanged(previous, current);
+            } catch (RuntimeException e) {
+                logger.warn("Task inbox listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void bump(Task task, long version) {
+        if (task == null) {
+            return;
+        }
+        if (task.getActorId() != null) {
+            actorVersions.merge(task.getActorId(), version, Math::max);
+        }
+        if (task.getGroupId() != null) {
+            groupVersions.merge(task.getGroupId(), version, Math::max);
+        }
+        // Sin tareas indexadas la instancia vuelve a 0, que equivale a una lista vacía
+        instanceVersions.compute(task.getProcessInstanceId(), (id, current) -> byInstance.containsKey(id)
+                ? Math.max(version, current != null ? current : 0L) : null);
+    }
+
+    private void index(Task task) {
+        add(byInstance, task.getProcessInstanceId(), task.cursor());
+        add(byActor, task.getActorId(), task.cursor());
+        add(byGroup, task.getGroupId(), task.cursor());
+    }
+
+    private void unindex(Task task) {
+        discard(byInstance, task.getProcessInstanceId(), task.cursor());
+        discard(byActor, task.getActorId(), task.cursor());
+        discard(byGroup, task.getGroupId(), task.cursor());
+    }
+
+    private static void add(Map<String, NavigableSet<Cursor>> index, String key, Cursor cursor) {
+        if (key != null) {
+            index.compute(key, (k, cursors) -> {
+                NavigableSet<Cursor> result = cursors != null ? cursors : new ConcurrentSkipListSet<>();
+                result.add(cursor);
+                return result;
+            });
+        }
+    }
+
+    private static void discard(Map<String, NavigableSet<Cursor>> index, String key, Cursor cursor) {
+        if (key != null) {
+            index.computeIfPresent(key, (k, cursors) -> {
+                cursors.remove(cursor);
+                return cursors.isEmpty() ? null : cursors;
+            });
+        }
+    }
+
+    private static void addSource(List<Iterator<Cursor>> sources, NavigableSet<Cursor> cursors, Cursor after) {
+        if (cursors != null) {
+            sources.add((after != null ? cursors.tailSet(after, false) : cursors).iterator());
+        }
+    }
+
+    /**
+     * Mezcla ordenada de las bandejas de un usuario y de sus grupos; una tarea
+     * presente en varias se devuelve una sola vez y las que se han retirado
+     * mientras tanto se saltan.
+     */
+    private final class MergedTasks implements Iterator<Task> {
+        private final PriorityQueue<Source> heads = new PriorityQueue<>(Comparator.comparing(Source::head));
+        private Cursor last;
+        private Task next;
+
+        private MergedTasks(List<Iterator<Cursor>> sources) {
+            for (Iterator<Cursor> source : sources) {
+                if (source.hasNext()) {
+                    heads.add(new Source(source));
+                }
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Task next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            Task result = next;
+            advance();
+            return result;
+        }
+
+        private void advance() {
+            next = null;
+            while (next == null && !heads.isEmpty()) {
+                Source source = heads.poll();
+                Cursor cursor = source.head;
+                if (source.advance()) {
+                    heads.add(source);
+                }
+                if (cursor.equals(last)) {
+                    continue;
+                }
+                last = cursor;
+                Task task = tasks.get(cursor.id);
+                if (task != null && task.cursor().equals(cursor)) {
+                    next = task;
+                }
+            }
+        }
+    }
+
+    private static final class Source {
+        private final Iterator<Cursor> cursors;
+        private Cursor head;
+
+        private Source(Iterator<Cursor> cursors) {
+            this.cursors = cursors;
+            this.head = cursors.next();
+        }
+
+        private Cursor head() {
+            return head;
+        }
+
+        private boolean advance() {
+            head = cursors.hasNext() ? cursors.next() : null;
+            return head != null;
+        }
+    }
+
+    /**
+     * Posición de una tarea en la bandeja: fecha de creación y, a igualdad de
+     * fecha, id del work item. Se intercambia con los clientes como un token
+     * opaco.
+     */
+    public static final class Cursor implements Comparable<Cursor> {
+        private final long created;
+        private final String id;
+
+        private Cursor(long created, String id) {
+            this.created = created;
+            this.id = id;
+        }
+
+        /**
+         * @throws IllegalArgumentException si el token no es un cursor válido
+         */
+        public static Cursor parse(String token) {
+            String value;
+            try {
+                value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token, e);
+            }
+            int separator = value.indexOf(':');
+            if (separator <= 0 || separator == value.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor: " + token);
+            }
+            try {
+                return new Cursor(Long.parseLong(value.substring(0, separator)), value.substring(separator + 1));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor: " + token, e);
+            }
+        }
+
+        public String token() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((created + ":" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int compareTo(Cursor other) {
+            int result = Long.compare(created, other.created);
+            return result != 0 ? result : id.compareTo(other.id);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Cursor && created == ((Cursor) other).created && id.equals(((Cursor) other).id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(created) * 31 + id.hashCode();
+        }
+    }
+
+    /**
+     * Recibe los cambios de la bandeja en el hilo que los produce, normalmente
+     * el que avanza la instancia del proceso, por lo que no debe bloquearse.
+     */
+    public interface Listener {
+
+        /**
+         * @param previous tarea que había en la bandeja, o {@code null} si es nueva
+         * @param current  último estado conocido de la tarea, que puede haber
+         *                 salido ya de la bandeja ({@link Task#isInboxTask()}),
+         *                 o {@code null} si se ha retirado sin conocerlo
+         */
+        void taskChanged(Task previous, Task current);
+    }
+
+    /**
+     * Instantánea de una tarea humana con los datos que devuelve la API.
+     */
+    public static final class Task {
+        private final String id;
+        private final String name;
+        private final String processInstanceId;
+        private final String phase;
+        private final String phaseStatus;
+        private final Map<String, Object> parameters;
+        private final Cursor cursor;
+
+        private Task(String processInstanceId, String id, String name, String phase, String phaseStatus,
+                Map<String, Object> parameters, Date created) {
+            this.id = id;
+            this.name = name;
+            this.processInstanceId = processInstanceId;
+            this.phase = phase;
+            this.phaseStatus = phaseStatus;
+            this.parameters = Collections.unmodifiableMap(new HashMap<>(parameters));
+            this.cursor = new Cursor(created != null ? created.getTime() : 0, id);
+        }
+
+        static Task of(String processInstanceId, String id, String name, String phase, String phaseStatus,
+                Map<String, Object> parameters, Date created) {
+            return new Task(processInstanceId, id, name, phase, phaseStatus, parameters, created);
+        }
+
+        /**
+         * A partir del work item de un evento, con el nombre que le da la API de
+         * Kogito; la fecha de creación es la de activación de su nodo.
+         */
+        static Task of(KogitoWorkItem workItem) {
+            KogitoNodeInstance node = workItem.getNodeInstance();
+            String name = (String) workItem.getParameters().getOrDefault("TaskName",
+                    node != null ? node.getNodeName() : workItem.getName());
+            return new Task(workItem.getProcessInstanceStringId(), workItem.getStringId(), name,
+                    workItem.getPhaseId(), workItem.getPhaseStatus(), workItem.getParameters(),
+                    node != null ? node.getTriggerTime() : workItem.getStartDate());
+        }
+
+        static Task of(String processInstanceId, WorkItem workItem, Date created) {
+            return new Task(processInstanceId, workItem.getId(), workItem.getName(), workItem.getPhase(),
+                    workItem.getPhaseStatus(), workItem.getParameters(), created);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getProcessInstanceId() {
+            return processInstanceId;
+        }
+
+        public String getPhase() {
+            return phase;
+        }
+
+        public String getPhaseStatus() {
+            return phaseStatus;
+        }
+
+        public Map<String, Object> getParameters() {
+            return parameters;
+        }
+
+        /** Posición de la tarea en la bandeja. */
+        public Cursor cursor() {
+            return cursor;
+        }
+
+        /**
+         * Mismo criterio que la comprobación de permisos del controlador:
+         * asignada al usuario por ActorId o a uno de sus roles por GroupId.
+         */
+        public boolean isAssignedTo(String userName, Collection<String> roles) {
+            String groupId = getGroupId();
+            return userName.equals(getActorId()) || (groupId != null && roles.contains(groupId));
+        }
+
+        String getActorId() {
+            Object actorId = parameters.get("ActorId");
+            return actorId instanceof String ? (String) actorId : null;
+        }
+
+        String getGroupId() {
+            Object groupId = parameters.get("GroupId");
+            return groupId != null ? groupId.toString() : null;
+        }
+
+        /** Datos de la tarea tal como los devuelve la API. */
+        public TaskSummary toSummary() {
+            return toSummary(TaskSummary.ALL_FIELDS);
+        }
+
+        /**
+         * Datos de la tarea con sólo los campos indicados
+         * ({@link TaskSummary#fields(String)}).
+         */
+        public TaskSummary toSummary(Set<String> fields) {
+            return new TaskSummary(
+                    fields.contains("id") ? id : null,
+                    fields.contains("name") ? name : null,
+                    fields.contains("processInstanceId") ? processInstanceId : null,
+                    fields.contains("phase") ? phase : null,
+                    fields.contains("phaseStatus") ? phaseStatus : null,
+                    fields.contains("parameters") ? parameters : null,
+                    fields.contains("cursor") ? cursor.token() : null);
+        }
+
+        /** Tarea activa asignada a un usuario o a un grupo. */
+        public boolean isInboxTask() {
+            return isActive(phase, phaseStatus) && (getActorId() != null || getGroupId() != null);
+        }
+
+        /**
+         * Misma tarea en el mismo estado y con la misma asignación; el resto de
+         * parámetros no se compara porque sus valores no siempre implementan
+         * {@code equals}.
+         */
+        boolean sameAssignment(Task other) {
+            return other != null && cursor.equals(other.cursor) && Objects.equals(name, other.name)
+                    && Objects.equals(phase, other.phase) && Objects.equals(phaseStatus, other.phaseStatus)
+                    && Objects.equals(getActorId(), other.getActorId())
+                    && Objects.equals(getGroupId(), other.getGroupId());
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.internal.process.event.DefaultKogitoProcessEventListener;
+import org.kie.kogito.process.Process;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.entities.AssessmentStats;
+
+/**
+ * Contadores de tareas pendientes e instancias del proceso de evaluación para
+ * {@code /assessment/stats}.
+ * <p>
+ * Se actualizan con los eventos de la {@link TaskInbox} (cada tarea que entra
+ * o sale de la bandeja suma o resta en su GroupId y su ActorId) y con los de
+ * inicio y fin de instancia, así que responder no recorre instancias ni
+ * tareas: cuesta lo mismo con diez tareas que con diez mil. La antigüedad de
+ * la tarea más antigua se lee del principio de los índices de la bandeja.
+ * <p>
+ * Los contadores son {@link LongAdder}, sin bloqueos en el hilo del proceso.
+ * Como las sumas y restas de una misma tarea pueden llegar desordenadas
+ * desde hilos distintos, un contador de tareas puede ser negativo un
+ * instante; al leerlo se trata como 0.
+ */
+@Component
+public class TaskStatistics extends DefaultKogitoProcessEventListener implements TaskInbox.Listener {
+
+    private static final Logger logger = LoggerFactory.getLogger(TaskStatistics.class);
+
+    /** El proceso depende de sus listeners, así que se obtiene bajo demanda. */
+    private final Supplier<Process<?>> assessmentProcess;
+    private final TaskInbox taskInbox;
+    private final LongAdder pending = new LongAdder();
+    private final Map<String, LongAdder> pendingByGroup = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> pendingByActor = new ConcurrentHashMap<>();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder aborted = new LongAdder();
+    /**
+     * Instancias iniciadas ({@code true}) o terminadas ({@code false}) antes
+     * de contar las activas; se concilian con el recuento en {@link #start()}.
+     */
+    private final Map<String, Boolean> beforeStart = new HashMap<>();
+    private volatile boolean started;
+
+    @Autowired
+    public TaskStatistics(@Qualifier(TaskInbox.PROCESS_ID) ObjectProvider<Process<?>> assessmentProcess,
+            TaskInbox taskInbox, MeterRegistry meterRegistry) {
+        this(assessmentProcess::getIfAvailable, taskInbox, meterRegistry);
+    }
+
+    TaskStatistics(Supplier<Process<?>> assessmentProcess, TaskInbox taskInbox, MeterRegistry meterRegistry) {
+        this.assessmentProcess = assessmentProcess;
+        this.taskInbox = taskInbox;
+        meterRegistry.gauge("assessment.instances.active", active, LongAdder::sum);
+        // Antes de que la bandeja se reconstruya, para contar también esas tareas
+        taskInbox.addListener(this);
+    }
+
+    /**
+     * Cuenta una sola vez las instancias activas al arrancar; a partir de ahí
+     * sólo cuentan los eventos.
+     * <p>
+     * Las instancias que empiezan o terminan antes (por ejemplo, las que
+     * inicia el consumidor de citas mientras arranca el contexto) o durante el
+     * recorrido no se suman aparte: se anotan y se concilian con él, de modo
+     * que cada instancia cuenta una vez.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        Process<?> process = assessmentProcess.get();
+        Set<String> running = new HashSet<>();
+        if (process != null) {
+            process.instances().stream()
+                    .filter(instance -> instance.status() == ProcessInstance.STATE_ACTIVE)
+                    .forEach(instance -> running.add(instance.id()));
+        }
+        synchronized (beforeStart) {
+            beforeStart.forEach((processInstanceId, isRunning) -> {
+                if (isRunning) {
+                    running.add(processInstanceId);
+                } else {
+                    running.remove(processInstanceId);
+                }
+            });
+            beforeStart.clear();
+            active.add(running.size());
+            started = true;
+        }
+        logger.info("Task statistics started with {} active instances", running.size());
+    }
+
+    /**
+     * Anota el inicio o fin de una instancia si aún no se han contado las
+     * activas.
+     *
+     * @return {@code true} si se ha anotado y no hay que contarlo ahora
+     */
+    private boolean deferred(String processInstanceId, boolean isRunning) {
+        if (started) {
+            return false;
+        }
+        synchronized (beforeStart) {
+            if (started) {
+                return false;
+            }
+            beforeStart.put(processInstanceId, isRunning);
+            return true;
+        }
+    }
+
+    @Override
+    public void taskChanged(TaskInbox.Task previous, TaskInbox.Task current) {
+        // Sólo las tareas de la bandeja llegan como previous
+        if (previous != null) {
+            count(previous, -1);
+        }
+        if (current != null && current.isInboxTask()) {
+            count(current, 1);
+        }
+    }
+
+    private void count(TaskInbox.Task task, long delta) {
+        pending.add(delta);
+        if (task.getGroupId() != null) {
+            pendingByGroup.computeIfAbsent(task.getGroupId(), key -> new LongAdder()).add(delta);
+        }
+        if (task.getActorId() != null) {
+            pendingByActor.computeIfAbsent(task.getActorId(), key -> new LongAdder()).add(delta);
+        }
+    }
+
+    @Override
+    public void afterProcessStarted(ProcessStartedEvent event) {
+        ProcessInstance instance = event.getProcessInstance();
+        if (TaskInbox.PROCESS_ID.equals(instance.getProcessId()) && !deferred(instance.getId(), true)) {
+            active.increment();
+        }
+    }
+
+    @Override
+    public void afterProcessCompleted(ProcessCompletedEvent event) {
+        ProcessInstance instance = event.getProcessInstance();
+        if (!TaskInbox.PROCESS_ID.equals(instance.getProcessId())) {
+            return;
+        }
+        if (!deferred(instance.getId(), false)) {
+            active.decrement();
+        }
+        (instance.getState() == ProcessInstance.STATE_ABORTED ? aborted : completed).increment();
+    }
+
+    /** Estado actual de los contadores. */
+    public AssessmentStats snapshot() {
+        return snapshot(System.currentTimeMillis());
+    }
+
+    AssessmentStats snapshot(long now) {
+        Map<String, Long> instances = new TreeMap<>();
+        instances.put("active", active.sum());
+        instances.put("completed", completed.sum());
+        instances.put("aborted", aborted.sum());
+
+        Map<String, AssessmentStats.Pending> groups = pending(pendingByGroup, taskInbox::oldestForGroup, now);
+        Map<String, AssessmentStats.Pending> actors = pending(pendingByActor, taskInbox::oldestForActor, now);
+        Long oldest = null;
+        for (Map<String, AssessmentStats.Pending> counts : List.of(groups, actors)) {
+            for (AssessmentStats.Pending entry : counts.values()) {
+                if (entry.oldestAgeSeconds() != null && (oldest == null || entry.oldestAgeSeconds() > oldest)) {
+                    oldest = entry.oldestAgeSeconds();
+                }
+            }
+        }
+        return new AssessmentStats(instances, Math.max(0, pending.sum()), oldest, groups, actors);
+    }
+
+    private static Map<String, AssessmentStats.Pending> pending(Map<String, LongAdder> counters,
+            ToLongFunction<String> oldest, long now) {
+        Map<String, AssessmentStats.Pending> result = new TreeMap<>();
+        counters.forEach((key, counter) -> {
+            long count = counter.sum();
+            if (count > 0) {
+                long created = oldest.applyAsLong(key);
+                result.put(key, new AssessmentStats.Pending(count,
+                        created >= 0 ? Long.valueOf(Math.max(0, now - created) / 1000) : null));
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Cliente del flujo de eventos /assessment/tasks/stream.
+ *
+ * EventSource no permite enviar la cabecera Authorization, así que el flujo se
+ * lee con fetch y se separa en eventos a mano. Si la conexión se corta se
+ * vuelve a abrir con una espera creciente (hasta 30 s) y se avisa con
+ * onReconnect para que la página recargue lo que se haya perdido.
+ *
+ * Uso:
+ *   const events = openTaskEvents(credentials, {
+ *       onEvent: (type, data) => { ... },
+ *       onReconnect: () => { ... }
+ *   });
+ *   events.close();
+ */
+function openTaskEvents(credentials, handlers) {
+    let controller = null;
+    let closed = false;
+    let delay = 1000;
+
+    async function connect(reconnecting) {
+        controller = new AbortController();
+        try {
+            const response = await fetch('/assessment/tasks/stream', {
+                headers: {
+                    'Accept': 'text/event-stream',
+                    'Authorization': 'Basic ' + credentials
+                },
+                signal: controller.signal
+            });
+            if (!response.ok) {
+                throw new Error('HTTP ' + response.status);
+            }
+            delay = 1000;
+            if (reconnecting && handlers.onReconnect) {
+                handlers.onReconnect();
+            }
+            await read(response.body.getReader());
+        } catch (error) {
+            if (closed) return;
+            console.warn('Task event stream interrupted:', error.message);
+        }
+        if (!closed) {
+            setTimeout(() => connect(true), delay);
+            delay = Math.min(delay * 2, 30000);
+        }
+    }
+
+    async function read(reader) {
+        const decoder = new TextDecoder();
+        let buffer = '';
+        while (true) {
+            const { value, done } = await reader.read();
+            if (done) return;
+            buffer += decoder.decode(value, { stream: true }).replace(/\r/g, '');
+            let end;
+            while ((end = buffer.indexOf('\n\n')) >= 0) {
+                dispatch(buffer.substring(0, end));
+                buffer = buffer.substring(end + 2);
+            }
+        }
+    }
+
+    function dispatch(block) {
+        let type = 'message';
+        const data = [];
+        block.split('\n').forEach(line => {
+            if (line.startsWith('event:')) {
+                type = line.substring(6).trim();
+            } else if (line.startsWith('data:')) {
+                data.push(line.substring(5).replace(/^ /, ''));
+            }
+        });
+        // Los latidos son sólo comentarios y no llevan datos
+        if (data.length === 0 || !handlers.onEvent) return;
+        let payload;
+        try {
+            payload = JSON.parse(data.join('\n'));
+        } catch (e) {
+            payload = data.join('\n');
+        }
+        handlers.onEvent(type, payload);
+    }
+
+    connect(false);
+
+    return {
+        close() {
+            closed = true;
+            if (controller) controller.abort();
+        }
+    };
+}
@@ -0,0 +1,81 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for issuing and verifying signed access tokens.
+ */
+class AuthTokenServiceTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+
+    private static AuthTokenService service(Instant now) {
+        AssessmentProperties.Token config = new AssessmentProperties.Token();
+        config.setSecret("MDEyMzQ1Njc4OWFiY2RlZjAxMjM0NTY3ODlhYmNkZWY=");
+        config.setTtl(Duration.ofMinutes(15));
+        return new AuthTokenService(config, new SimpleMeterRegistry(), Clock.fixed(now, ZoneOffset.UTC));
+    }
+
+    private static Authentication doctor() {
+        return new UsernamePasswordAuthenticationToken("doctorWho", "doctorWho",
+                List.of(new SimpleGrantedAuthority("practitioner")));
+    }
+
+    @Test
+    void testIssuedTokenVerifiesToSameUserAndAuthorities() {
+        AuthTokenService tokens = service(NOW);
+
+        Authentication verified = tokens.verify(tokens.issue(doctor()));
+
+        assertNotNull(verified);
+        assertEquals("doctorWho", verified.getName());
+        assertNull(verified.getCredentials());
+        assertEquals(List.of("practitioner"), verified.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void testTamperedTokenIsRejected() {
+        AuthTokenService tokens = service(NOW);
+        String token = tokens.issue(doctor());
+        String[] parts = token.split("\\.");
+        // Se cambia la caducidad manteniendo la firma original
+        String tampered = parts[0] + "." + (Long.parseLong(parts[1]) + 3600) + "." + parts[2] + "." + parts[3];
+
+        assertNull(tokens.verify(tampered));
+        assertNull(tokens.verify("not-a-token"));
+    }
+
+    @Test
+    void testExpiredTokenIsRejected() {
+        String token = service(NOW).issue(doctor());
+
+        assertNotNull(service(NOW.plus(Duration.ofMinutes(14))).verify(token));
+        assertNull(service(NOW.plus(Duration.ofMinutes(15))).verify(token));
+    }
+
+    @Test
+    void testSecretThatIsNotBase64FailsNamingTheProperty() {
+        AssessmentProperties.Token config = new AssessmentProperties.Token();
+        config.setSecret("not base64: a passphrase!");
+
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> new AuthTokenService(config, new SimpleMeterRegistry(), Clock.systemUTC()));
+
+        assertTrue(e.getMessage().startsWith("assessment.token.secret"));
+    }
+}
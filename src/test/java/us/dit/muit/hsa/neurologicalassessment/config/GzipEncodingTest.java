@@ -0,0 +1,28 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for Accept-Encoding negotiation.
+ */
+class GzipEncodingTest {
+
+    @Test
+    void testGzipAcceptedWhenListedWithNonZeroWeight() {
+        assertTrue(GzipEncoding.isAccepted("gzip, deflate, br"));
+        assertTrue(GzipEncoding.isAccepted("br;q=1.0, GZIP;q=0.5"));
+        assertTrue(GzipEncoding.isAccepted("*"));
+    }
+
+    @Test
+    void testGzipRejectedWhenMissingOrWeightedZero() {
+        assertFalse(GzipEncoding.isAccepted(null));
+        assertFalse(GzipEncoding.isAccepted("identity, br"));
+        assertFalse(GzipEncoding.isAccepted("gzip;q=0, br"));
+        assertFalse(GzipEncoding.isAccepted("gzip; q=0.0"));
+        assertFalse(GzipEncoding.isAccepted("*, gzip;q=0"));
+        assertFalse(GzipEncoding.isAccepted("*;q=0"));
+    }
+}
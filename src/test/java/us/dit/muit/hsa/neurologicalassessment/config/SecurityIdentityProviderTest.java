@@ -0,0 +1,59 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Unit tests for the cached identity snapshot built from the Spring Security
+ * context.
+ */
+class SecurityIdentityProviderTest {
+
+    private final SecurityIdentityProvider provider = new SecurityIdentityProvider();
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static void authenticate(String user, String... authorities) {
+        List<SimpleGrantedAuthority> granted = Arrays.stream(authorities)
+                .map(SimpleGrantedAuthority::new)
+                .collect(Collectors.toList());
+        SecurityContextHolder.getContext()
+                .setAuthentication(new UsernamePasswordAuthenticationToken(user, "secret", granted));
+    }
+
+    @Test
+    void testSnapshotIsReusedUntilAuthenticationChanges() {
+        authenticate("doctorWho", "ROLE_neurology", "ROLE_user", "ROLE_neurology");
+
+        SecurityIdentityProvider.Identity identity = provider.identity();
+        assertEquals("doctorWho", provider.getName());
+        assertEquals(Set.of("neurology", "user"), provider.getRoles());
+        assertTrue(provider.hasRole("neurology"));
+        assertSame(identity, provider.identity());
+        assertThrows(UnsupportedOperationException.class, () -> provider.getRoles().add("admin"));
+
+        authenticate("nurse", "ROLE_nursing");
+        assertNotSame(identity, provider.identity());
+        assertEquals("nurse", provider.getName());
+        assertFalse(provider.hasRole("neurology"));
+    }
+
+    @Test
+    void testAnonymousWithoutAuthentication() {
+        assertEquals("anonymous", provider.getName());
+        assertTrue(provider.getRoles().isEmpty());
+    }
+}
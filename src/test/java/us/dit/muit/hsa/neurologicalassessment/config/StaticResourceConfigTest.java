@@ -0,0 +1,136 @@
+package us.dit.muit.hsa.neurologicalassessment.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+/**
+ * MockMvc tests for the static resource chain: gzip and identity variants,
+ * their ETags and If-None-Match revalidation.
+ */
+@SpringJUnitWebConfig(StaticResourceConfigTest.WebConfig.class)
+class StaticResourceConfigTest {
+
+    @Configuration
+    @EnableWebMvc
+    static class WebConfig {
+        @Bean
+        StaticResourceConfig staticResourceConfig() {
+            // small.css (under 1 KiB) only exists in the test resources
+            return new StaticResourceConfig("classpath:/static/", "classpath:/static-test/");
+        }
+    }
+
+    @Autowired
+    private WebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @Test
+    void testGzipVariantServedWhenAccepted() throws Exception {
+        MvcResult result = mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip, br"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+
+        assertTrue(result.getResponse().getHeader(HttpHeaders.ETAG).endsWith("-gzip\""));
+        String html = gunzip(result.getResponse().getContentAsByteArray());
+        assertTrue(html.startsWith("<!DOCTYPE html>"));
+    }
+
+    @Test
+    void testSmallResourceServedUncompressed() throws Exception {
+        MvcResult result = mockMvc.perform(get("/small.css").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn();
+
+        assertFalse(result.getResponse().getHeader(HttpHeaders.ETAG).endsWith("-gzip\""));
+        assertTrue(result.getResponse().getContentAsString().startsWith("body {"));
+    }
+
+    @Test
+    void testEncodingsHaveDifferentETags() throws Exception {
+        String identity = mockMvc.perform(get("/index.html"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String gzip = mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertNotNull(identity);
+        assertNotEquals(identity, gzip);
+    }
+
+    @Test
+    void testMatchingIfNoneMatchAnswers304() throws Exception {
+        String etag = mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        // The identity ETag does not validate the gzip variant
+        mockMvc.perform(get("/index.html").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testWildcardVariantNotServedToClientWithoutAcceptEncoding() throws Exception {
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "*"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+
+        MvcResult result = mockMvc.perform(get("/index.html"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andReturn();
+
+        assertTrue(result.getResponse().getContentAsString().startsWith("<!DOCTYPE html>"));
+    }
+
+    @Test
+    void testExplicitGzipRefusalHonouredAfterGzipRequest() throws Exception {
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "*, gzip;q=0"))
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING));
+        // And back again: the refusal is not remembered either
+        mockMvc.perform(get("/index.html").header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"));
+    }
+
+    private static String gunzip(byte[] gzip) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(StreamUtils.copyToByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
+}
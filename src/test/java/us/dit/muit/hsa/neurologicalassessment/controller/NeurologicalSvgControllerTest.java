@@ -0,0 +1,156 @@
+package us.dit.muit.hsa.neurologicalassessment.controller;
+
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.kogito.process.Processes;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import us.dit.muit.hsa.neurologicalassessment.entities.NodeStateOverlay;
+import us.dit.muit.hsa.neurologicalassessment.services.ProcessSvgCache;
+
+/**
+ * MockMvc tests for the instance state endpoints: the single state with its
+ * version ETag and the NDJSON stream of several instances.
+ */
+@SpringJUnitWebConfig(NeurologicalSvgControllerTest.WebConfig.class)
+class NeurologicalSvgControllerTest {
+
+    private static final String PROCESS_ID = "neurologicalassessment.assessment";
+
+    @Configuration
+    @EnableWebMvc
+    static class WebConfig {
+        @Bean
+        NeurologicalSvgController neurologicalSvgController() {
+            return new NeurologicalSvgController();
+        }
+
+        @Bean
+        Processes processes() {
+            return mock(Processes.class);
+        }
+
+        @Bean
+        ProcessSvgCache processSvgCache() {
+            return mock(ProcessSvgCache.class);
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private ProcessSvgCache svgCache;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        reset(svgCache);
+        when(svgCache.resolve("assessment")).thenReturn(Optional.of(PROCESS_ID));
+        when(svgCache.resolve("unknown")).thenReturn(Optional.empty());
+    }
+
+    private static NodeStateOverlay overlay(String instanceId, String active) {
+        return new NodeStateOverlay(instanceId, "active", null, null,
+                List.of(new NodeStateOverlay.ActiveNode(active, null)), List.of());
+    }
+
+    @Test
+    void testStateAnswers304UntilTheInstanceAdvances() throws Exception {
+        when(svgCache.instanceVersion("p1")).thenReturn(3L);
+        when(svgCache.overlay(PROCESS_ID, "p1")).thenReturn(Optional.of(overlay("p1", "_task")));
+
+        String etag = mockMvc.perform(get("/svg/assessment/p1/state"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.active[0].id").value("_task"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertEquals("\"p1-3\"", etag);
+
+        mockMvc.perform(get("/svg/assessment/p1/state").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        // The state is not read again while the version holds
+        verify(svgCache, times(1)).overlay(PROCESS_ID, "p1");
+
+        when(svgCache.instanceVersion("p1")).thenReturn(4L);
+        mockMvc.perform(get("/svg/assessment/p1/state").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"p1-4\""));
+    }
+
+    @Test
+    void testStateOfMissingInstanceOrProcessIsNotFound() throws Exception {
+        when(svgCache.overlay(PROCESS_ID, "missing")).thenReturn(Optional.empty());
+
+        mockMvc.perform(get("/svg/assessment/missing/state"))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(get("/svg/unknown/p1/state"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testStatesAreStreamedOnePerLine() throws Exception {
+        when(svgCache.overlays(PROCESS_ID, null, "active"))
+                .thenReturn(Stream.of(overlay("p1", "_a"), overlay("p2", "_b")));
+
+        MvcResult started = mockMvc.perform(get("/svg/assessment/states").param("state", "active"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("{\"processInstanceId\":\"p1\""));
+        assertTrue(lines[1].startsWith("{\"processInstanceId\":\"p2\""));
+    }
+
+    @Test
+    void testStatesOfListedInstancesAreReadFromTheBody() throws Exception {
+        when(svgCache.overlays(eq(PROCESS_ID), eq(List.of("p2")), isNull()))
+                .thenReturn(Stream.of(overlay("p2", "_b")));
+
+        MvcResult started = mockMvc.perform(post("/svg/assessment/states")
+                .contentType(MediaType.APPLICATION_JSON).content("[\"p2\"]"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string(startsWith("{\"processInstanceId\":\"p2\"")));
+
+        mockMvc.perform(get("/svg/unknown/states"))
+                .andExpect(status().isNotFound());
+    }
+}
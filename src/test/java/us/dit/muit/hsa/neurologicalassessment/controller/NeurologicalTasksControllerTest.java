@@ -0,0 +1,298 @@
+package us.dit.muit.hsa.neurologicalassessment.controller;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.internal.process.event.ProcessWorkItemTransitionEvent;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItem;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstances;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.junit.jupiter.web.SpringJUnitWebConfig;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.jayway.jsonpath.JsonPath;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.config.SecurityIdentityProvider;
+import us.dit.muit.hsa.neurologicalassessment.entities.AssessmentStats;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskCompletionService;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskEventStream;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskInbox;
+import us.dit.muit.hsa.neurologicalassessment.services.TaskStatistics;
+
+/**
+ * MockMvc tests for the task API: listings with their ETags and cursors,
+ * single tasks, bulk completion and statistics, with a real task inbox fed
+ * through work item transition events.
+ */
+@SpringJUnitWebConfig(NeurologicalTasksControllerTest.WebConfig.class)
+class NeurologicalTasksControllerTest {
+
+    private static final String PROCESS_ID = "neurologicalassessment.assessment";
+
+    @Configuration
+    @EnableWebMvc
+    static class WebConfig {
+        @Bean
+        NeurologicalTasksController neurologicalTasksController() {
+            return new NeurologicalTasksController();
+        }
+
+        @Bean
+        SecurityIdentityProvider securityIdentityProvider() {
+            return new SecurityIdentityProvider();
+        }
+
+        @Bean(PROCESS_ID)
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Process<?> assessmentProcess() {
+            // No instance is found: listings come from the inbox alone
+            Process process = mock(Process.class);
+            when(process.instances()).thenReturn(mock(ProcessInstances.class));
+            return process;
+        }
+
+        @Bean
+        @SuppressWarnings("unchecked")
+        TaskInbox taskInbox() {
+            return new TaskInbox(mock(ObjectProvider.class), new AssessmentProperties(), new SimpleMeterRegistry());
+        }
+
+        @Bean
+        TaskEventStream taskEventStream() {
+            return mock(TaskEventStream.class);
+        }
+
+        @Bean
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        TaskCompletionService taskCompletionService(Process<?> assessmentProcess, TaskInbox taskInbox) {
+            ObjectProvider process = mock(ObjectProvider.class);
+            when(process.getIfAvailable()).thenReturn(assessmentProcess);
+            return new TaskCompletionService(process, taskInbox, new AssessmentProperties());
+        }
+
+        @Bean
+        TaskStatistics taskStatistics() {
+            return mock(TaskStatistics.class);
+        }
+
+        @Bean
+        ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+    }
+
+    @Autowired
+    private WebApplicationContext context;
+    @Autowired
+    private TaskInbox inbox;
+    @Autowired
+    private TaskStatistics statistics;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken("doctorWho",
+                "doctorWho", List.of(new SimpleGrantedAuthority("ROLE_neurology"))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+        // Leave the shared inbox empty for the next test
+        for (TaskInbox.Task task : inbox.tasksFor("doctorWho", List.of("neurology"))) {
+            transition(task.getProcessInstanceId(), task.getId(), "complete", Map.of("ActorId", "doctorWho"), 0);
+        }
+    }
+
+    /** Feeds the inbox as the process engine does when a work item changes phase. */
+    private void transition(String processInstanceId, String taskId, String phase, Map<String, Object> parameters,
+            long created) {
+        KogitoWorkItem workItem = mock(KogitoWorkItem.class);
+        when(workItem.getProcessInstanceStringId()).thenReturn(processInstanceId);
+        when(workItem.getStringId()).thenReturn(taskId);
+        when(workItem.getName()).thenReturn("Pain Assessment");
+        when(workItem.getPhaseId()).thenReturn(phase);
+        when(workItem.getPhaseStatus()).thenReturn(phase.equals("active") ? "Ready" : "Completed");
+        when(workItem.getParameters()).thenReturn(parameters);
+        when(workItem.getStartDate()).thenReturn(new Date(created));
+        ProcessInstance instance = mock(ProcessInstance.class);
+        when(instance.getProcessId()).thenReturn(PROCESS_ID);
+        ProcessWorkItemTransitionEvent event = mock(ProcessWorkItemTransitionEvent.class);
+        when(event.getProcessInstance()).thenReturn(instance);
+        when(event.getWorkItem()).thenReturn(workItem);
+        inbox.afterWorkItemTransition(event);
+    }
+
+    private void assign(String processInstanceId, String taskId, long created) {
+        transition(processInstanceId, taskId, "active", Map.of("ActorId", "doctorWho"), created);
+    }
+
+    @Test
+    void testJsonListingIsATypedPage() throws Exception {
+        assign("p1", "w1", 1000);
+
+        mockMvc.perform(get("/assessment/tasks").param("fields", "id"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                .andExpect(content().json("{\"tasks\":[{\"id\":\"w1\"}],\"nextCursor\":null,\"totalTasks\":1,"
+                        + "\"userName\":\"doctorWho\",\"userRoles\":[\"neurology\"]}", true));
+    }
+
+    @Test
+    void testETagAnswers304UntilATaskChanges() throws Exception {
+        assign("p1", "w1", 1000);
+        String etag = mockMvc.perform(get("/assessment/tasks"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache, private"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotNull(etag);
+
+        mockMvc.perform(get("/assessment/tasks").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag))
+                .andExpect(content().bytes(new byte[0]));
+        // Same inbox, different response: the page size is part of the tag
+        mockMvc.perform(get("/assessment/tasks").param("limit", "1").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+
+        // A task completed by someone else moves the user's inbox on
+        transition("p1", "w1", "complete", Map.of("ActorId", "doctorWho"), 1000);
+        String changed = mockMvc.perform(get("/assessment/tasks").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalTasks").value(0))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(etag, changed);
+    }
+
+    @Test
+    void testNdjsonListingHasItsOwnETag() throws Exception {
+        assign("p1", "w1", 1000);
+        String json = mockMvc.perform(get("/assessment/tasks"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        MvcResult started = mockMvc.perform(get("/assessment/tasks").param("fields", "id")
+                .accept(NeurologicalTasksController.APPLICATION_NDJSON)
+                .header(HttpHeaders.IF_NONE_MATCH, json))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        MvcResult ndjson = mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().string("{\"id\":\"w1\"}\n"))
+                .andReturn();
+        String etag = ndjson.getResponse().getHeader(HttpHeaders.ETAG);
+        assertNotEquals(json, etag);
+
+        mockMvc.perform(get("/assessment/tasks").accept(NeurologicalTasksController.APPLICATION_NDJSON)
+                .param("fields", "id").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testCursorWalksPagesInCreationOrder() throws Exception {
+        assign("p3", "w3", 3000);
+        assign("p1", "w1", 1000);
+        transition("p2", "w2", "active", Map.of("GroupId", "neurology"), 2000);
+
+        String next = mockMvc.perform(get("/assessment/tasks").param("limit", "2").param("fields", "id"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tasks[*].id", contains("w1", "w2")))
+                .andExpect(jsonPath("$.totalTasks").value(2))
+                .andExpect(jsonPath("$.nextCursor").isString())
+                .andReturn().getResponse().getContentAsString();
+        String cursor = JsonPath.read(next, "$.nextCursor");
+
+        mockMvc.perform(get("/assessment/tasks").param("limit", "2").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.tasks[*].id", contains("w3")))
+                .andExpect(jsonPath("$.nextCursor").value(nullValue()));
+    }
+
+    @Test
+    void testInvalidPagingIsRejected() throws Exception {
+        mockMvc.perform(get("/assessment/tasks").param("limit", "0"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.error").value("limit must be a positive number"));
+        mockMvc.perform(get("/assessment/tasks").param("after", "not a cursor"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/assessment/tasks").param("fields", "id,secret"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/assessment/tasks").param("limit", "0")
+                .accept(NeurologicalTasksController.APPLICATION_NDJSON))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void testTaskByIdChecksAssignment() throws Exception {
+        assign("p1", "w1", 1000);
+        transition("p2", "w2", "active", Map.of("ActorId", "someoneElse"), 2000);
+
+        mockMvc.perform(get("/assessment/tasks/w1").param("fields", "id,processInstanceId"))
+                .andExpect(status().isOk())
+                .andExpect(content().json("{\"id\":\"w1\",\"processInstanceId\":\"p1\"}", true));
+        mockMvc.perform(get("/assessment/tasks/w2"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/assessment/tasks/missing"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.taskId").value("missing"));
+
+        transition("p2", "w2", "complete", Map.of("ActorId", "someoneElse"), 2000);
+    }
+
+    @Test
+    void testBulkCompletionAnswersEachItemInOrder() throws Exception {
+        mockMvc.perform(post("/assessment/tasks/complete").contentType(MediaType.APPLICATION_JSON).content("[]"))
+                .andExpect(status().isBadRequest());
+
+        // Not in the inbox, incomplete, and in an instance that does not exist
+        String items = "[{\"taskId\":\"w9\",\"dn4\":{}},{\"taskId\":\"w1\"},"
+                + "{\"processInstanceId\":\"missing\",\"taskId\":\"w1\",\"dn4\":{}}]";
+        mockMvc.perform(post("/assessment/tasks/complete").contentType(MediaType.APPLICATION_JSON).content(items))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.completed").value(0))
+                .andExpect(jsonPath("$.failed").value(3))
+                .andExpect(jsonPath("$.results[*].status", contains(404, 400, 404)));
+    }
+
+    @Test
+    void testStatsAreRevalidatedOnEveryRequest() throws Exception {
+        when(statistics.snapshot()).thenReturn(new AssessmentStats(Map.of("active", 2L), 1, 30L,
+                Map.of("neurology", new AssessmentStats.Pending(1, 30L)), Map.of()));
+
+        mockMvc.perform(get("/assessment/stats"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andExpect(jsonPath("$.instances.active").value(2))
+                .andExpect(jsonPath("$.groups.neurology.oldestAgeSeconds").value(30));
+    }
+}
@@ -0,0 +1,233 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares the packed DN4 against the previous layout of ten boxed Boolean
+ * fields with bean-based Jackson mapping: retained heap per instance and JSON
+ * write and read time. Excluded from the default build; run with
+ * {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class DN4BenchmarkTest {
+
+    private static final int INSTANCES = 1_000_000;
+    private static final int WARMUP = 50_000;
+    private static final int ITERATIONS = 500_000;
+    private static final String JSON = "{\"id\":1,\"burningPain\":true,\"painfulCold\":false,"
+            + "\"electricShock\":true,\"tingling\":false,\"pinsAndNeedles\":true,\"numbness\":false,"
+            + "\"itching\":true,\"touchHypoesthesia\":false,\"prickHypoesthesia\":true,\"brushingPain\":false,"
+            + "\"score\":5}";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void compareBoxedAndPackedLayouts() throws Exception {
+        double boxedBytes = retainedBytes(i -> new BoxedDN4((long) i, true, false, true, false, true, false, true,
+                false, true, false, 5));
+        double packedBytes = retainedBytes(i -> new DN4((long) i, true, false, true, false, true, false, true,
+                false, true, false, 5));
+
+        BoxedDN4 boxed = mapper.readValue(JSON, BoxedDN4.class);
+        DN4 packed = mapper.readValue(JSON, DN4.class);
+        Callable<Integer> boxedWrite = () -> mapper.writeValueAsString(boxed).length();
+        Callable<Integer> packedWrite = () -> mapper.writeValueAsString(packed).length();
+        Callable<Integer> boxedRead = () -> mapper.readValue(JSON, BoxedDN4.class).getScore();
+        Callable<Integer> packedRead = () -> mapper.readValue(JSON, DN4.class).getScore();
+        // Both layouts share the Jackson code paths: warm them all up before measuring any
+        for (Callable<Integer> operation : List.of(boxedWrite, packedWrite, boxedRead, packedRead)) {
+            measure("warmup", operation);
+        }
+
+        System.out.printf("DN4 heap: boxed %.1f B/instance, packed %.1f B/instance (x%.1f)%n",
+                boxedBytes, packedBytes, boxedBytes / packedBytes);
+        print("write", measure("boxed", boxedWrite), measure("packed", packedWrite));
+        print("read", measure("boxed", boxedRead), measure("packed", packedRead));
+        assertEquals(mapper.readTree(mapper.writeValueAsString(mapper.readValue(JSON, BoxedDN4.class))),
+                mapper.readTree(mapper.writeValueAsString(mapper.readValue(JSON, DN4.class))));
+    }
+
+    private static void print(String operation, double boxedMicros, double packedMicros) {
+        System.out.printf("DN4 JSON %s: boxed %.2f us/op, packed %.2f us/op (x%.1f)%n",
+                operation, boxedMicros, packedMicros, boxedMicros / packedMicros);
+    }
+
+    private interface Factory {
+        Object create(int i);
+    }
+
+    /** Heap retained by {@link #INSTANCES} objects, per object (the array slot excluded). */
+    private static double retainedBytes(Factory factory) {
+        Object[] holder = new Object[INSTANCES];
+        long before = usedHeap();
+        for (int i = 0; i < INSTANCES; i++) {
+            holder[i] = factory.create(i);
+        }
+        long after = usedHeap();
+        assertNotNull(holder[INSTANCES - 1]);
+        // The Long ids are allocated by both layouts and are left out
+        return (double) (after - before) / INSTANCES - 16;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static double measure(String name, Callable<Integer> operation) throws Exception {
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += operation.call();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += operation.call();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0, name + " produced nothing");
+        return elapsed / 1_000.0 / ITERATIONS;
+    }
+
+    /** DN4 as it was before the answers were packed: boxed fields, default bean mapping. */
+    static class BoxedDN4 {
+        private Long id;
+        private Boolean burningPain;
+        private Boolean painfulCold;
+        private Boolean electricShock;
+        private Boolean tingling;
+        private Boolean pinsAndNeedles;
+        private Boolean numbness;
+        private Boolean itching;
+        private Boolean touchHypoesthesia;
+        private Boolean prickHypoesthesia;
+        private Boolean brushingPain;
+        private Integer score;
+
+        BoxedDN4() {
+        }
+
+        BoxedDN4(Long id, Boolean burningPain, Boolean painfulCold, Boolean electricShock, Boolean tingling,
+                Boolean pinsAndNeedles, Boolean numbness, Boolean itching, Boolean touchHypoesthesia,
+                Boolean prickHypoesthesia, Boolean brushingPain, Integer score) {
+            this.id = id;
+            this.burningPain = burningPain;
+            this.painfulCold = painfulCold;
+            this.electricShock = electricShock;
+            this.tingling = tingling;
+            this.pinsAndNeedles = pinsAndNeedles;
+            this.numbness = numbness;
+            this.itching = itching;
+            this.touchHypoesthesia = touchHypoesthesia;
+            this.prickHypoesthesia = prickHypoesthesia;
+            this.brushingPain = brushingPain;
+            this.score = score;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public Boolean isBurningPain() {
+            return burningPain;
+        }
+
+        public void setBurningPain(Boolean burningPain) {
+            this.burningPain = burningPain;
+        }
+
+        public Boolean isPainfulCold() {
+            return painfulCold;
+        }
+
+        public void setPainfulCold(Boolean painfulCold) {
+            this.painfulCold = painfulCold;
+        }
+
+        public Boolean isElectricShock() {
+            return electricShock;
+        }
+
+        public void setElectricShock(Boolean electricShock) {
+            this.electricShock = electricShock;
+        }
+
+        public Boolean isTingling() {
+            return tingling;
+        }
+
+        public void setTingling(Boolean tingling) {
+            this.tingling = tingling;
+        }
+
+        public Boolean isPinsAndNeedles() {
+            return pinsAndNeedles;
+        }
+
+        public void setPinsAndNeedles(Boolean pinsAndNeedles) {
+            this.pinsAndNeedles = pinsAndNeedles;
+        }
+
+        public Boolean isNumbness() {
+            return numbness;
+        }
+
+        public void setNumbness(Boolean numbness) {
+            this.numbness = numbness;
+        }
+
+        public Boolean isItching() {
+            return itching;
+        }
+
+        public void setItching(Boolean itching) {
+            this.itching = itching;
+        }
+
+        public Boolean isTouchHypoesthesia() {
+            return touchHypoesthesia;
+        }
+
+        public void setTouchHypoesthesia(Boolean touchHypoesthesia) {
+            this.touchHypoesthesia = touchHypoesthesia;
+        }
+
+        public Boolean isPrickHypoesthesia() {
+            return prickHypoesthesia;
+        }
+
+        public void setPrickHypoesthesia(Boolean prickHypoesthesia) {
+            this.prickHypoesthesia = prickHypoesthesia;
+        }
+
+        public Boolean isBrushingPain() {
+            return brushingPain;
+        }
+
+        public void setBrushingPain(Boolean brushingPain) {
+            this.brushingPain = brushingPain;
+        }
+
+        public Integer getScore() {
+            return score;
+        }
+
+        public void setScore(Integer score) {
+            this.score = score;
+        }
+    }
+}
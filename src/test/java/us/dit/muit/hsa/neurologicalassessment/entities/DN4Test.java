@@ -0,0 +1,83 @@
+package us.dit.muit.hsa.neurologicalassessment.entities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+/**
+ * Unit tests for the packed DN4 answers: scoring, unanswered items and the
+ * JSON field names.
+ */
+class DN4Test {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test
+    void testScoreCountsYesAnswersAndIgnoresUnanswered() {
+        DN4 dn4 = new DN4(7L, true, false, true, null, true, false, null, true, false, null);
+
+        dn4.calculateScore();
+
+        assertEquals(4, dn4.getScore());
+        assertFalse(dn4.isComplete());
+        assertNull(dn4.isTingling());
+        assertEquals(Boolean.FALSE, dn4.isPainfulCold());
+
+        dn4.setTingling(true);
+        dn4.setItching(false);
+        dn4.setBrushingPain(true);
+        dn4.setBurningPain(null);
+        dn4.calculateScore();
+        assertEquals(5, dn4.getScore());
+        assertNull(dn4.isBurningPain());
+
+        DN4 empty = new DN4();
+        empty.calculateScore();
+        assertEquals(0, empty.getScore());
+        assertFalse(empty.isComplete());
+    }
+
+    @Test
+    void testJsonKeepsFieldNamesAndRoundTrips() throws Exception {
+        DN4 dn4 = mapper.readValue("{\"id\":3,\"burningPain\":true,\"painfulCold\":false,"
+                + "\"numbness\":null,\"brushingPain\":true,\"score\":null}", DN4.class);
+
+        assertEquals(3L, dn4.getId());
+        assertEquals(Boolean.TRUE, dn4.isBurningPain());
+        assertEquals(Boolean.FALSE, dn4.isPainfulCold());
+        assertNull(dn4.isNumbness());
+
+        dn4.calculateScore();
+        JsonNode json = mapper.readTree(mapper.writeValueAsString(dn4));
+        assertTrue(json.get("burningPain").asBoolean());
+        assertFalse(json.get("painfulCold").asBoolean());
+        assertTrue(json.get("tingling").isNull());
+        assertEquals(2, json.get("score").asInt());
+        assertEquals(12, json.size());
+
+        DN4 copy = mapper.treeToValue(json, DN4.class);
+        assertEquals(dn4.getAnswers(), copy.getAnswers());
+        assertEquals(dn4.getScore(), copy.getScore());
+    }
+
+    @Test
+    void testNonObjectJsonIsRejected() {
+        assertThrows(MismatchedInputException.class, () -> mapper.readValue("[true, false]", DN4.class));
+        assertThrows(MismatchedInputException.class, () -> mapper.readValue("4", DN4.class));
+    }
+
+    @Test
+    void testSetAnswersDropsBitsOfUnansweredItems() {
+        DN4 dn4 = new DN4();
+        dn4.setAnswers(0b11 | 0b01 << 16);
+
+        assertEquals(Boolean.TRUE, dn4.isBurningPain());
+        assertNull(dn4.isPainfulCold());
+        dn4.calculateScore();
+        assertEquals(1, dn4.getScore());
+    }
+}
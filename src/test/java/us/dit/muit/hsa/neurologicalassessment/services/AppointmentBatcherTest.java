@@ -0,0 +1,85 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Unit tests for the micro-batching window of AppointmentBatcher, using an
+ * in-memory loader instead of a FHIR server.
+ */
+class AppointmentBatcherTest {
+
+    private final List<List<String>> loadedBatches = Collections.synchronizedList(new ArrayList<>());
+    private AppointmentBatcher batcher;
+
+    private Map<String, ResolvedAppointment> load(List<String> urls) {
+        loadedBatches.add(urls);
+        Map<String, ResolvedAppointment> resolved = new HashMap<>();
+        for (String url : urls) {
+            if (!url.endsWith("unknown")) {
+                resolved.put(url, new ResolvedAppointment("http://fhir/", "doctorWho", url, Map.of()));
+            }
+        }
+        return resolved;
+    }
+
+    @AfterEach
+    void tearDown() {
+        batcher.shutdown();
+    }
+
+    @Test
+    void testRequestsWithinWindowShareOneLoad() throws Exception {
+        batcher = new AppointmentBatcher(Duration.ofMillis(100).toNanos(), 50, this::load, new SimpleMeterRegistry());
+
+        CompletableFuture<ResolvedAppointment> a = batcher.submit("http://fhir/Appointment/1");
+        CompletableFuture<ResolvedAppointment> b = batcher.submit("http://fhir/Appointment/2");
+        CompletableFuture<ResolvedAppointment> unknown = batcher.submit("http://fhir/Appointment/unknown");
+
+        assertEquals("http://fhir/Appointment/1", a.get(5, TimeUnit.SECONDS).toDTO().getPatient());
+        assertEquals("http://fhir/Appointment/2", b.get(5, TimeUnit.SECONDS).toDTO().getPatient());
+        assertNull(unknown.get(5, TimeUnit.SECONDS), "Unknown appointments resolve to null");
+        assertEquals(1, loadedBatches.size(), "All requests in the window should be loaded together");
+        assertEquals(3, loadedBatches.get(0).size());
+    }
+
+    @Test
+    void testFullBatchIsSentBeforeWindowEnds() throws Exception {
+        batcher = new AppointmentBatcher(Duration.ofMinutes(10).toNanos(), 2, this::load, new SimpleMeterRegistry());
+
+        CompletableFuture<ResolvedAppointment> a = batcher.submit("http://fhir/Appointment/1");
+        CompletableFuture<ResolvedAppointment> b = batcher.submit("http://fhir/Appointment/2");
+
+        assertNotNull(a.get(5, TimeUnit.SECONDS));
+        assertNotNull(b.get(5, TimeUnit.SECONDS));
+        assertEquals(1, loadedBatches.size());
+    }
+
+    @Test
+    void testLoadFailureIsPropagatedToEveryCaller() {
+        batcher = new AppointmentBatcher(Duration.ofMillis(10).toNanos(), 50, urls -> {
+            throw new IllegalStateException("FHIR server down");
+        }, new SimpleMeterRegistry());
+
+        CompletableFuture<ResolvedAppointment> a = batcher.submit("http://fhir/Appointment/1");
+        CompletableFuture<ResolvedAppointment> b = batcher.submit("http://fhir/Appointment/2");
+
+        CompletionException error = assertThrows(CompletionException.class, a::join);
+        assertEquals("FHIR server down", error.getCause().getMessage());
+        assertThrows(CompletionException.class, b::join);
+    }
+}
@@ -0,0 +1,75 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Unit tests for the TTL and revalidation bookkeeping of AppointmentCache.
+ */
+class AppointmentCacheTest {
+
+    private static final String URL = "http://localhost:8888/fhir/Appointment/7";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private AppointmentCache cache(Duration ttl) {
+        FhirProperties properties = new FhirProperties();
+        properties.getCache().setTtl(ttl);
+        return new AppointmentCache(properties, meterRegistry);
+    }
+
+    private static ResolvedAppointment appointment() {
+        return new ResolvedAppointment("http://localhost:8888/fhir/", "doctorWho", "Chalmers, Peter",
+                Map.of("Appointment/7", "1", "Patient/2", "3"));
+    }
+
+    private double requests(String result) {
+        return meterRegistry.get("fhir.appointment.cache.requests").tag("result", result).counter().count();
+    }
+
+    @Test
+    void testFreshEntryIsServedFromCache() {
+        AppointmentCache cache = cache(Duration.ofMinutes(1));
+
+        assertNull(cache.get(URL));
+        cache.put(URL, appointment());
+        AppointmentCache.Entry entry = cache.get(URL);
+
+        assertNotNull(entry);
+        assertTrue(entry.isFresh());
+        assertEquals(1.0, requests("miss"));
+        assertEquals(1.0, requests("hit"));
+    }
+
+    @Test
+    void testExpiredEntryIsKeptForRevalidation() {
+        AppointmentCache cache = cache(Duration.ZERO);
+        cache.put(URL, appointment());
+
+        AppointmentCache.Entry entry = cache.get(URL);
+        assertNotNull(entry, "Expired entries must remain available for revalidation");
+        assertFalse(entry.isFresh());
+        assertEquals(1.0, requests("stale"));
+
+        cache.revalidated(URL, entry, false);
+        assertNull(cache.get(URL), "Modified entries must be dropped");
+    }
+
+    @Test
+    void testEachCallReturnsItsOwnDTO() {
+        ResolvedAppointment appointment = appointment();
+
+        AppointmentDTO first = appointment.toDTO();
+        first.setPatient("changed by a process instance");
+
+        assertEquals("Chalmers, Peter", appointment.toDTO().getPatient());
+    }
+}
@@ -0,0 +1,65 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Unit tests for the asynchronous variant of AppointmentDAOService, without a
+ * FHIR server.
+ */
+class AppointmentDAOServiceAsyncTest {
+
+    private static final String URL = "http://localhost:8888/fhir/Appointment/7";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private AppointmentDAOService service;
+    private AppointmentCache cache;
+
+    private void createService() {
+        FhirProperties properties = new FhirProperties();
+        properties.getAsync().setEnabled(true);
+        properties.getAsync().setMaxConcurrency(2);
+        cache = new AppointmentCache(properties, meterRegistry);
+        service = new AppointmentDAOService(FhirClientRegistry.createDefault(), cache, properties, meterRegistry,
+                null, new FhirResilience(properties, meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @Test
+    void testCachedAppointmentCompletesInline() {
+        createService();
+        cache.put(URL, new ResolvedAppointment("http://localhost:8888/fhir/", "doctorWho", "Chalmers, Peter", Map.of()));
+
+        CompletableFuture<AppointmentDTO> lookup = service.getAppointmentAttributesAsync(URL);
+
+        assertTrue(lookup.isDone(), "Fresh cache entries must not go through the lookup pool");
+        assertEquals("Chalmers, Peter", lookup.join().getPatient());
+    }
+
+    @Test
+    void testLookupFailureCompletesFutureExceptionally() {
+        createService();
+
+        CompletableFuture<AppointmentDTO> lookup = service.getAppointmentAttributesAsync("not a valid url");
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> lookup.get(5, TimeUnit.SECONDS));
+        assertEquals("Server error for FHIR Appointment.", error.getCause().getMessage());
+        assertNotNull(meterRegistry.find("executor.active").tag("name", "fhir.appointment.lookup").gauge(),
+                "Lookup pool must be monitored");
+    }
+}
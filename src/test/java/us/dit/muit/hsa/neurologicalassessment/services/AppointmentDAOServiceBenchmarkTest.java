@@ -0,0 +1,100 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Throughput and latency of {@link AppointmentDAOService#getAppointmentAttributes(String)}
+ * against the in-process {@link FhirStubServer}, at increasing concurrency.
+ * The appointment cache is disabled so that every call goes through the
+ * whole resolution path. Excluded from the default build; run with
+ * {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class AppointmentDAOServiceBenchmarkTest {
+
+    private static final int[] CONCURRENCY = { 1, 2, 4, 8, 16, 32 };
+    private static final int CALLS_PER_THREAD = 200;
+    private static final Duration LATENCY = Duration.ofMillis(2);
+    private static final Duration JITTER = Duration.ofMillis(3);
+
+    @Test
+    void measureThroughputAtIncreasingConcurrency() throws Exception {
+        FhirProperties properties = new FhirProperties();
+        properties.getCache().setEnabled(false);
+        properties.getClient().setServerValidation(ServerValidationModeEnum.NEVER);
+        properties.getClient().setPoolMaxPerRoute(64);
+        properties.getResilience().setMaxConcurrentCalls(64);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+        try (FhirStubServer stub = FhirStubServer.start()) {
+            stub.setLatency(LATENCY, JITTER);
+            FhirClientRegistry registry = new FhirClientRegistry(FhirContext.forR5Cached(), properties,
+                    meterRegistry);
+            AppointmentDAOService service = new AppointmentDAOService(registry,
+                    new AppointmentCache(properties, meterRegistry), properties, meterRegistry, null,
+                    new FhirResilience(properties, meterRegistry));
+            String url = stub.baseUrl() + "Appointment/7";
+
+            run(service, url, 4, CALLS_PER_THREAD);
+            System.out.printf("Stub latency %d ms + up to %d ms jitter, %d calls per thread%n",
+                    LATENCY.toMillis(), JITTER.toMillis(), CALLS_PER_THREAD);
+            System.out.println("threads  calls/s    p50 ms    p99 ms");
+            for (int threads : CONCURRENCY) {
+                long start = System.nanoTime();
+                long[] latencies = run(service, url, threads, CALLS_PER_THREAD);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                Arrays.sort(latencies);
+                System.out.printf("%7d %9.0f %9.2f %9.2f%n", threads, latencies.length / seconds,
+                        percentile(latencies, 0.50) / 1e6, percentile(latencies, 0.99) / 1e6);
+            }
+            service.shutdown();
+        }
+    }
+
+    /** @return latency of every call, in nanoseconds */
+    private static long[] run(AppointmentDAOService service, String url, int threads, int callsPerThread)
+            throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                workers.add(executor.submit(() -> {
+                    long[] latencies = new long[callsPerThread];
+                    for (int i = 0; i < callsPerThread; i++) {
+                        long start = System.nanoTime();
+                        assertEquals("doctorWho", service.getAppointmentAttributes(url).getPractitioner());
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] all = new long[threads * callsPerThread];
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(workers.get(t).get(), 0, all, t * callsPerThread, callsPerThread);
+            }
+            return all;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
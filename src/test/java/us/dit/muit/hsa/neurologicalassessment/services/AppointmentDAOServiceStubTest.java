@@ -0,0 +1,192 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Offline counterpart of AppointmentDAOServiceSimpleTest: resolves the
+ * fixture appointment against the in-process {@link FhirStubServer}.
+ */
+class AppointmentDAOServiceStubTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FhirProperties properties = new FhirProperties();
+    private FhirStubServer stub;
+    private AppointmentDAOService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = FhirStubServer.start();
+        properties.getClient().setServerValidation(ServerValidationModeEnum.NEVER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+        stub.close();
+    }
+
+    private AppointmentDAOService createService() {
+        FhirClientRegistry registry = new FhirClientRegistry(FhirContext.forR5Cached(), properties, meterRegistry);
+        service = new AppointmentDAOService(registry, new AppointmentCache(properties, meterRegistry), properties,
+                meterRegistry, null, new FhirResilience(properties, meterRegistry));
+        return service;
+    }
+
+    private static void assertFixtureAppointment(AppointmentDTO dto) {
+        assertEquals("Chalmers, Peter", dto.getPatient());
+        assertEquals("doctorWho", dto.getPractitioner());
+    }
+
+    @Test
+    void testAppointmentResolvedWithOneSearch() {
+        AppointmentDTO dto = createService().getAppointmentAttributes(stub.baseUrl() + "Appointment/7");
+
+        assertFixtureAppointment(dto);
+        assertEquals(1, stub.requests());
+    }
+
+    @Test
+    void testLeanModeResolvesSameAppointment() {
+        properties.getLean().setEnabled(true);
+
+        AppointmentDTO dto = createService().getAppointmentAttributes(stub.baseUrl() + "Appointment/7");
+
+        assertFixtureAppointment(dto);
+        assertEquals(0.0, meterRegistry.get("fhir.appointment.lean.fallbacks").counter().count());
+    }
+
+    @Test
+    void testLeanModeDoesNotRetryServerErrorsWithFullSearch() {
+        properties.getLean().setEnabled(true);
+        stub.setErrorRate(1.0);
+        AppointmentDAOService service = createService();
+
+        RuntimeException e = assertThrows(RuntimeException.class,
+                () -> service.getAppointmentAttributes(stub.baseUrl() + "Appointment/7"));
+
+        assertEquals("Server error for FHIR Appointment.", e.getMessage());
+        assertEquals(1, stub.requests());
+        assertEquals(0.0, meterRegistry.get("fhir.appointment.lean.fallbacks").counter().count());
+    }
+
+    @Test
+    void testStaleEntryRevalidatedWithOneBatch() {
+        properties.getCache().setTtl(Duration.ZERO);
+        AppointmentDAOService service = createService();
+        String url = stub.baseUrl() + "Appointment/7";
+        service.getAppointmentAttributes(url);
+
+        assertFixtureAppointment(service.getAppointmentAttributes(url));
+
+        assertEquals(1.0, meterRegistry.get("fhir.appointment.cache.revalidations")
+                .tag("outcome", "unchanged").counter().count());
+        // One search, then a single batch with a conditional read per resource used
+        assertEquals(2, stub.requests());
+    }
+
+    @Test
+    void testStaleEntryRefetchedWhenAResourceChanged() {
+        properties.getCache().setTtl(Duration.ZERO);
+        AppointmentDAOService service = createService();
+        String url = stub.baseUrl() + "Appointment/7";
+        service.getAppointmentAttributes(url);
+        ObjectNode patient = stub.get("Patient/2");
+        ((ObjectNode) patient.withArray("name").get(0)).put("family", "Chalmers-Smith");
+        stub.put(patient);
+
+        assertEquals("Chalmers-Smith, Peter", service.getAppointmentAttributes(url).getPatient());
+
+        assertEquals(1.0, meterRegistry.get("fhir.appointment.cache.revalidations")
+                .tag("outcome", "modified").counter().count());
+        // Search, batch revalidation, search again
+        assertEquals(3, stub.requests());
+    }
+
+    @Test
+    void testBatchResolvesKnownAndUnknownAppointments() {
+        String known = stub.baseUrl() + "Appointment/7";
+        String unknown = stub.baseUrl() + "Appointment/99";
+
+        Map<String, AppointmentDTO> result = createService().getAppointmentAttributesBatch(List.of(known, unknown));
+
+        assertFixtureAppointment(result.get(known));
+        assertNull(result.get(unknown).getPatient());
+        assertEquals(1, stub.requests());
+    }
+
+    @Test
+    void testConcurrentLookupsShareOneRequest() throws Exception {
+        stub.setLatency(Duration.ofMillis(300), Duration.ZERO);
+        AppointmentDAOService service = createService();
+        String url = stub.baseUrl() + "Appointment/7";
+
+        for (Future<AppointmentDTO> result : lookupConcurrently(service, url, 8)) {
+            assertFixtureAppointment(result.get());
+        }
+
+        assertEquals(1, stub.requests());
+        assertTrue(meterRegistry.get("fhir.appointment.coalesced").counter().count() > 0);
+    }
+
+    @Test
+    void testFailureReachesEveryCoalescedCaller() throws Exception {
+        stub.setLatency(Duration.ofMillis(300), Duration.ZERO);
+        stub.setErrorRate(1.0);
+        AppointmentDAOService service = createService();
+        String url = stub.baseUrl() + "Appointment/7";
+
+        for (Future<AppointmentDTO> result : lookupConcurrently(service, url, 8)) {
+            ExecutionException e = assertThrows(ExecutionException.class, result::get);
+            assertEquals("Server error for FHIR Appointment.", e.getCause().getMessage());
+        }
+
+        assertEquals(1, stub.requests());
+    }
+
+    private static List<Future<AppointmentDTO>> lookupConcurrently(AppointmentDAOService service, String url,
+            int callers) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<AppointmentDTO>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return service.getAppointmentAttributes(url);
+                }));
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kie.kogito.Application;
+import org.kie.kogito.internal.process.runtime.KogitoNodeInstance;
+import org.kie.kogito.internal.process.runtime.KogitoProcessInstance;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItem;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItemHandler;
+import org.kie.kogito.internal.process.runtime.KogitoWorkItemManager;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstance;
+import org.kie.kogito.process.ProcessInstances;
+import org.kie.kogito.process.Processes;
+import org.kie.kogito.process.WorkItem;
+import org.kie.kogito.services.uow.CollectingUnitOfWorkFactory;
+import org.kie.kogito.services.uow.DefaultUnitOfWorkManager;
+import org.springframework.beans.factory.ObjectProvider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Unit tests for the asynchronous "Solving Appointment Data" handler: inline
+ * completion, deferred completion once the instance is persisted, and the
+ * retrigger path that reports a failed lookup.
+ */
+class AsyncAppointmentWorkItemInterceptorTest {
+
+    private static final String URL = "http://localhost:8888/fhir/Appointment/7";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AppointmentDAOService service = mock(AppointmentDAOService.class);
+    @SuppressWarnings("unchecked")
+    private final ProcessInstances<Object> instances = mock(ProcessInstances.class);
+    private final KogitoWorkItem workItem = mock(KogitoWorkItem.class);
+    private final KogitoWorkItemManager manager = mock(KogitoWorkItemManager.class);
+    private final MethodInvocation invocation = mock(MethodInvocation.class);
+    private final AsyncAppointmentWorkItemInterceptor interceptor;
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    AsyncAppointmentWorkItemInterceptorTest() throws Exception {
+        Process<Object> process = mock(Process.class);
+        when(process.instances()).thenReturn(instances);
+        when(instances.findById(anyString())).thenReturn(Optional.empty());
+        Processes processes = mock(Processes.class);
+        when(processes.processById("assessment")).thenReturn((Process) process);
+        Application application = mock(Application.class);
+        when(application.unitOfWorkManager())
+                .thenReturn(new DefaultUnitOfWorkManager(new CollectingUnitOfWorkFactory()));
+
+        FhirProperties properties = new FhirProperties();
+        properties.getAsync().setCompletionRetry(Duration.ofMillis(10));
+        interceptor = new AsyncAppointmentWorkItemInterceptor(provider(service), provider(processes),
+                provider(application), properties, meterRegistry);
+
+        KogitoProcessInstance processInstance = mock(KogitoProcessInstance.class);
+        when(processInstance.getProcessId()).thenReturn("assessment");
+        KogitoNodeInstance nodeInstance = mock(KogitoNodeInstance.class);
+        when(nodeInstance.getNodeDefinitionId()).thenReturn("_solveAppointment");
+        when(nodeInstance.getStringId()).thenReturn("n1");
+        when(workItem.getProcessInstance()).thenReturn(processInstance);
+        when(workItem.getProcessInstanceStringId()).thenReturn("p1");
+        when(workItem.getNodeInstance()).thenReturn(nodeInstance);
+        when(workItem.getStringId()).thenReturn("w1");
+        when(workItem.getParameter(AsyncAppointmentWorkItemInterceptor.APPOINTMENT_URL)).thenReturn(URL);
+
+        when(invocation.getMethod()).thenReturn(KogitoWorkItemHandler.class
+                .getMethod("executeWorkItem", KogitoWorkItem.class, KogitoWorkItemManager.class));
+        when(invocation.getArguments()).thenReturn(new Object[] { workItem, manager });
+    }
+
+    @AfterEach
+    void tearDown() {
+        interceptor.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> ObjectProvider<T> provider(T bean) {
+        ObjectProvider<T> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(bean);
+        return provider;
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProcessInstance<Object> waitingInstance() {
+        ProcessInstance<Object> instance = mock(ProcessInstance.class);
+        WorkItem waiting = mock(WorkItem.class);
+        when(waiting.getId()).thenReturn("w1");
+        when(instance.workItems()).thenReturn(List.of(waiting));
+        when(instance.status()).thenReturn(ProcessInstance.STATE_ACTIVE);
+        return instance;
+    }
+
+    private double pending() {
+        return meterRegistry.get("fhir.appointment.async.pending").gauge().value();
+    }
+
+    @Test
+    void testDoneLookupCompletesInline() throws Throwable {
+        AppointmentDTO dto = new AppointmentDTO();
+        when(service.getAppointmentAttributesAsync(URL)).thenReturn(CompletableFuture.completedFuture(dto));
+
+        assertNull(interceptor.invoke(invocation));
+
+        verify(manager).completeWorkItem("w1", Map.of(AsyncAppointmentWorkItemInterceptor.APPOINTMENT_DTO, dto));
+        verifyNoInteractions(instances);
+        assertEquals(0.0, pending());
+    }
+
+    @Test
+    void testLateResultCompletesWorkItemOnceInstanceIsVisible() throws Throwable {
+        CompletableFuture<AppointmentDTO> lookup = new CompletableFuture<>();
+        when(service.getAppointmentAttributesAsync(URL)).thenReturn(lookup);
+        ProcessInstance<Object> instance = waitingInstance();
+        AtomicInteger lookups = new AtomicInteger();
+        // The starting unit of work has not committed yet for the first few attempts
+        when(instances.findById("p1"))
+                .thenAnswer(call -> lookups.incrementAndGet() < 3 ? Optional.empty() : Optional.of(instance));
+
+        assertNull(interceptor.invoke(invocation));
+        verifyNoInteractions(manager);
+        assertEquals(1.0, pending());
+
+        AppointmentDTO dto = new AppointmentDTO();
+        lookup.complete(dto);
+
+        verify(instance, timeout(5000)).completeWorkItem("w1",
+                Map.of(AsyncAppointmentWorkItemInterceptor.APPOINTMENT_DTO, dto));
+        assertTrue(lookups.get() >= 3);
+        verify(instance, never()).retriggerNodeInstance(anyString());
+        verifyNoInteractions(manager);
+    }
+
+    @Test
+    void testFailedLookupRetriggersNodeAndFailsInline() throws Throwable {
+        CompletableFuture<AppointmentDTO> lookup = new CompletableFuture<>();
+        when(service.getAppointmentAttributesAsync(URL)).thenReturn(lookup);
+        ProcessInstance<Object> instance = waitingInstance();
+        when(instances.findById("p1")).thenReturn(Optional.of(instance));
+        // As the engine does: the retriggered node runs the handler again and an error leaves the instance in error
+        AtomicReference<Throwable> handlerError = new AtomicReference<>();
+        doAnswer(call -> {
+            try {
+                interceptor.invoke(invocation);
+            } catch (Throwable e) {
+                handlerError.set(e);
+                when(instance.status()).thenReturn(ProcessInstance.STATE_ERROR);
+            }
+            return null;
+        }).when(instance).retriggerNodeInstance("n1");
+
+        interceptor.invoke(invocation);
+        RuntimeException failure = new IllegalStateException("FHIR server down");
+        lookup.completeExceptionally(failure);
+
+        verify(instance, timeout(5000)).retriggerNodeInstance("n1");
+        assertSame(failure, handlerError.get());
+        assertEquals(ProcessInstance.STATE_ERROR, instance.status());
+        verify(instance, never()).completeWorkItem(anyString(), any());
+
+        // The stored failure is consumed: retrying the node from process management starts a new lookup
+        CompletableFuture<AppointmentDTO> retry = CompletableFuture.completedFuture(new AppointmentDTO());
+        when(service.getAppointmentAttributesAsync(URL)).thenReturn(retry);
+        assertNull(interceptor.invoke(invocation));
+        verify(manager).completeWorkItem(eq("w1"), any());
+    }
+}
@@ -0,0 +1,52 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Unit tests for FhirClientRegistry. No FHIR server is contacted: HAPI clients
+ * are created lazily and only connect when a request is executed.
+ */
+class FhirClientRegistryTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FhirClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        FhirProperties properties = new FhirProperties();
+        properties.getClient().setMaxClients(2);
+        meterRegistry = new SimpleMeterRegistry();
+        registry = new FhirClientRegistry(FhirContext.forR5Cached(), properties, meterRegistry);
+    }
+
+    @Test
+    void testSameServerBaseReusesClient() {
+        IGenericClient first = registry.getClient("http://localhost:8888/fhir/");
+        IGenericClient second = registry.getClient("http://localhost:8888/fhir");
+
+        assertSame(first, second, "Trailing slash should not create a second client");
+        assertEquals(1, registry.size());
+        assertEquals(1.0, meterRegistry.get("fhir.client.registry.lookups").tag("outcome", "created").counter().count());
+        assertEquals(1.0, meterRegistry.get("fhir.client.registry.lookups").tag("outcome", "reused").counter().count());
+    }
+
+    @Test
+    void testLeastRecentlyUsedClientIsEvicted() {
+        IGenericClient a = registry.getClient("http://a.example/fhir");
+        registry.getClient("http://b.example/fhir");
+        registry.getClient("http://a.example/fhir");
+        registry.getClient("http://c.example/fhir");
+
+        assertEquals(2, registry.size());
+        assertSame(a, registry.getClient("http://a.example/fhir"), "Recently used client should survive eviction");
+        assertEquals(1.0, meterRegistry.get("fhir.client.registry.evictions").counter().count());
+    }
+}
@@ -0,0 +1,140 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AppointmentDTO;
+
+/**
+ * Tests for the FHIR resilience layer: circuit breaker and timeouts against a
+ * local stub server, and hedging on plain suppliers.
+ */
+class FhirResilienceTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final FhirProperties properties = new FhirProperties();
+    private FhirStubServer stub;
+    private String serverBase;
+    private FhirResilience resilience;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        stub = FhirStubServer.start();
+        serverBase = stub.baseUrl();
+
+        properties.getCache().setEnabled(false);
+        properties.getClient().setServerValidation(ServerValidationModeEnum.NEVER);
+        FhirProperties.Resilience config = properties.getResilience();
+        config.setSlidingWindowSize(2);
+        config.setMinimumCalls(2);
+        config.setHalfOpenCalls(1);
+        config.setOpenDuration(Duration.ofMillis(200));
+        config.setTimeout(Duration.ofMillis(300));
+    }
+
+    @AfterEach
+    void tearDown() {
+        stub.close();
+        if (resilience != null) {
+            resilience.shutdown();
+        }
+    }
+
+    private AppointmentDAOService createService() {
+        resilience = new FhirResilience(properties, meterRegistry);
+        FhirClientRegistry registry = new FhirClientRegistry(FhirContext.forR5Cached(), properties, meterRegistry);
+        return new AppointmentDAOService(registry, new AppointmentCache(properties, meterRegistry), properties,
+                meterRegistry, null, resilience);
+    }
+
+    private double transitions(String from, String to) {
+        return meterRegistry.get("fhir.resilience.breaker.transitions")
+                .tag("from", from).tag("to", to).counter().count();
+    }
+
+    @Test
+    void testCircuitOpensOnServerErrorsAndClosesAfterTrialCall() throws InterruptedException {
+        // The first call also initialises the HAPI model, so allow it more time
+        properties.getResilience().setTimeout(Duration.ofSeconds(30));
+        AppointmentDAOService service = createService();
+        String url = serverBase + "Appointment/7";
+        stub.setErrorRate(1.0);
+
+        assertThrows(RuntimeException.class, () -> service.getAppointmentAttributes(url));
+        assertThrows(RuntimeException.class, () -> service.getAppointmentAttributes(url));
+        assertEquals(FhirResilience.State.OPEN, resilience.state(serverBase));
+
+        RuntimeException rejected = assertThrows(RuntimeException.class, () -> service.getAppointmentAttributes(url));
+        assertInstanceOf(FhirUnavailableException.class, rejected.getCause());
+        assertEquals(2, stub.requests(), "An open circuit must not reach the server");
+        assertEquals(1.0, transitions("closed", "open"));
+
+        stub.setErrorRate(0.0);
+        Thread.sleep(250);
+        AppointmentDTO dto = service.getAppointmentAttributes(url);
+
+        assertEquals("Chalmers, Peter", dto.getPatient());
+        assertEquals(FhirResilience.State.CLOSED, resilience.state(serverBase));
+        assertEquals(1.0, transitions("open", "half_open"));
+        assertEquals(1.0, transitions("half_open", "closed"));
+    }
+
+    @Test
+    void testSlowServerTimesOut() {
+        AppointmentDAOService service = createService();
+        stub.setLatency(Duration.ofSeconds(2), Duration.ZERO);
+
+        long start = System.nanoTime();
+        RuntimeException error = assertThrows(RuntimeException.class,
+                () -> service.getAppointmentAttributes(serverBase + "Appointment/7"));
+
+        assertInstanceOf(FhirUnavailableException.class, error.getCause());
+        assertTrue(System.nanoTime() - start < 1_500_000_000L, "The caller must not wait for the slow server");
+        assertEquals(1.0, meterRegistry.get("fhir.resilience.timeouts").counter().count());
+    }
+
+    @Test
+    void testSlowCallIsHedgedAfterP95() {
+        properties.getResilience().setHedgeEnabled(true);
+        properties.getResilience().setHedgeMinSamples(5);
+        properties.getResilience().setHedgeMinDelay(Duration.ofMillis(10));
+        properties.getResilience().setTimeout(Duration.ofSeconds(5));
+        resilience = new FhirResilience(properties, meterRegistry);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("fast", resilience.call(serverBase, () -> "fast"));
+        }
+
+        AtomicInteger attempts = new AtomicInteger();
+        long start = System.nanoTime();
+        String result = resilience.call(serverBase, () -> {
+            if (attempts.incrementAndGet() == 1) {
+                sleep(3000);
+                return "slow";
+            }
+            return "hedged";
+        });
+
+        assertEquals("hedged", result);
+        assertTrue(System.nanoTime() - start < 1_000_000_000L, "The hedged call must answer first");
+        assertEquals(1.0, meterRegistry.get("fhir.resilience.hedges").tag("outcome", "won").counter().count());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for a FHIR R5 server, serving the
+ * {@code resources/FHIRResources/*.json} fixtures under {@code /fhir/}.
+ * <p>
+ * Supports what the appointment resolution path uses:
+ * <ul>
+ * <li>{@code GET /fhir/metadata};</li>
+ * <li>{@code GET /fhir/Type/id}, with {@code ETag} and {@code If-None-Match}
+ * (304) for conditional reads;</li>
+ * <li>{@code GET /fhir/Type?_id=a,b} with {@code _include=Type:param[:Target]},
+ * {@code _elements} and {@code _count} (only as page size; results that do
+ * not fit are dropped, there is no paging);</li>
+ * <li>{@code POST /fhir} with a {@code batch} Bundle of reads, honouring
+ * each entry's {@code ifNoneMatch}.</li>
+ * </ul>
+ * Latency, jitter and a server error rate can be injected to test timeouts
+ * and failure handling. The transaction {@code Bundle.json} fixture is not
+ * loaded.
+ */
+final class FhirStubServer implements AutoCloseable {
+
+    static final Path FIXTURES = Path.of("resources", "FHIRResources");
+
+    private static final ObjectMapper JSON = new ObjectMapper();
+
+    static {
+        // Without TCP_NODELAY the separate header and body writes of the JDK
+        // server hit Nagle + delayed ACK and add ~40 ms to every response
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    /** Resources by "Type/id". */
+    private final Map<String, ObjectNode> resources = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long latencyNanos;
+    private volatile long jitterNanos;
+    private volatile double errorRate;
+
+    private FhirStubServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "fhir-stub-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/fhir", this::handle);
+    }
+
+    /** Starts a stub on a free local port with all the individual resource fixtures loaded. */
+    static FhirStubServer start() throws IOException {
+        FhirStubServer stub = new FhirStubServer();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(FIXTURES, "*.json")) {
+            for (Path file : files) {
+                JsonNode resource = JSON.readTree(file.toFile());
+                if (!"Bundle".equals(resource.path("resourceType").asText())) {
+                    stub.put((ObjectNode) resource);
+                }
+            }
+        }
+        stub.server.start();
+        return stub;
+    }
+
+    /** Base URL, with trailing slash ({@code http://localhost:port/fhir/}). */
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort() + "/fhir/";
+    }
+
+    /** Fixed delay plus a uniformly distributed extra of up to {@code jitter} before each response. */
+    void setLatency(Duration latency, Duration jitter) {
+        this.latencyNanos = latency.toNanos();
+        this.jitterNanos = jitter.toNanos();
+    }
+
+    /** Fraction of requests (0..1) answered with HTTP 500. */
+    void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    /** Adds or replaces a resource; a replacement gets the next version id. */
+    void put(ObjectNode resource) {
+        String key = resource.path("resourceType").asText() + "/" + resource.path("id").asText();
+        ObjectNode previous = resources.get(key);
+        int version = previous != null ? previous.path("meta").path("versionId").asInt() + 1 : 1;
+        ObjectNode copy = resource.deepCopy();
+        ObjectNode meta = copy.has("meta") ? (ObjectNode) copy.get("meta") : copy.putObject("meta");
+        meta.put("versionId", String.valueOf(version));
+        resources.put(key, copy);
+    }
+
+    /** Copy of a stored resource, for building variants. */
+    ObjectNode get(String reference) {
+        ObjectNode resource = resources.get(reference);
+        return resource != null ? resource.deepCopy() : null;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                respond(exchange, 500, outcome("Injected server error"));
+                return;
+            }
+            // HAPI posts batches to the base URL without the trailing slash
+            String path = exchange.getRequestURI().getPath().replaceFirst("^/fhir/?", "");
+            String[] parts = path.split("/");
+            Map<String, List<String>> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            if (path.isEmpty() && "POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 200, batch(JSON.readTree(exchange.getRequestBody())));
+            } else if (parts.length == 1 && "metadata".equals(parts[0])) {
+                respond(exchange, 200, capabilityStatement());
+            } else if (parts.length == 1) {
+                respond(exchange, 200, search(parts[0], query, exchange));
+            } else if (parts.length == 2) {
+                read(exchange, parts[0] + "/" + parts[1]);
+            } else {
+                respond(exchange, 400, outcome("Unsupported path " + path));
+            }
+        } catch (RuntimeException e) {
+            respond(exchange, 500, outcome(e.toString()));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void delay() {
+        long nanos = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos + 1) : 0);
+        if (nanos > 0) {
+            try {
+                Thread.sleep(nanos / 1_000_000, (int) (nanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void read(HttpExchange exchange, String reference) throws IOException {
+        ObjectNode resource = resources.get(reference);
+        if (resource == null) {
+            respond(exchange, 404, outcome("Resource " + reference + " is not known"));
+            return;
+        }
+        String version = resource.path("meta").path("versionId").asText();
+        exchange.getResponseHeaders().add("ETag", "W/\"" + version + "\"");
+        String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (ifNoneMatch != null && ifNoneMatch.replace("W/", "").replace("\"", "").trim().equals(version)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        respond(exchange, 200, resource);
+    }
+
+    private ObjectNode batch(JsonNode request) {
+        ObjectNode bundle = JSON.createObjectNode();
+        bundle.put("resourceType", "Bundle");
+        bundle.put("type", "batch-response");
+        ArrayNode entries = bundle.putArray("entry");
+        for (JsonNode entry : request.path("entry")) {
+            String reference = entry.path("request").path("url").asText();
+            String ifNoneMatch = entry.path("request").path("ifNoneMatch").asText(null);
+            ObjectNode result = entries.addObject();
+            ObjectNode resource = resources.get(reference);
+            if (resource == null) {
+                result.putObject("response").put("status", "404 Not Found");
+                continue;
+            }
+            String version = resource.path("meta").path("versionId").asText();
+            ObjectNode response = result.putObject("response").put("etag", "W/\"" + version + "\"");
+            if (ifNoneMatch != null && ifNoneMatch.replace("W/", "").replace("\"", "").trim().equals(version)) {
+                response.put("status", "304 Not Modified");
+            } else {
+                response.put("status", "200 OK");
+                result.set("resource", resource);
+            }
+        }
+        return bundle;
+    }
+
+    private ObjectNode search(String type, Map<String, List<String>> query, HttpExchange exchange) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (String value : query.getOrDefault("_id", List.of())) {
+            ids.addAll(Arrays.asList(value.split(",")));
+        }
+        int count = query.containsKey("_count") ? Integer.parseInt(query.get("_count").get(0)) : Integer.MAX_VALUE;
+        Set<String> elements = new LinkedHashSet<>();
+        for (String value : query.getOrDefault("_elements", List.of())) {
+            elements.addAll(Arrays.asList(value.split(",")));
+        }
+
+        List<ObjectNode> matches = new ArrayList<>();
+        for (Map.Entry<String, ObjectNode> entry : resources.entrySet()) {
+            ObjectNode resource = entry.getValue();
+            if (entry.getKey().startsWith(type + "/")
+                    && (ids.isEmpty() || ids.contains(resource.path("id").asText()))
+                    && matches.size() < count) {
+                matches.add(resource);
+            }
+        }
+
+        Map<String, ObjectNode> included = new LinkedHashMap<>();
+        for (String include : query.getOrDefault("_include", List.of())) {
+            String[] spec = include.split(":");
+            if (spec.length < 2 || !spec[0].equals(type)) {
+                continue;
+            }
+            for (ObjectNode match : matches) {
+                for (String reference : references(match, spec[1])) {
+                    ObjectNode target = resources.get(reference);
+                    if (target != null && (spec.length < 3 || reference.startsWith(spec[2] + "/"))) {
+                        included.putIfAbsent(reference, target);
+                    }
+                }
+            }
+        }
+
+        ObjectNode bundle = JSON.createObjectNode();
+        bundle.put("resourceType", "Bundle");
+        bundle.put("type", "searchset");
+        bundle.put("total", matches.size());
+        bundle.putArray("link").addObject()
+                .put("relation", "self")
+                .put("url", baseUrl() + type + "?" + exchange.getRequestURI().getRawQuery());
+        ArrayNode entries = bundle.putArray("entry");
+        for (ObjectNode match : matches) {
+            addEntry(entries, subset(match, elements), "match");
+        }
+        for (ObjectNode include : included.values()) {
+            addEntry(entries, subset(include, elements), "include");
+        }
+        return bundle;
+    }
+
+    /** Relative references ("Type/id") held by the search parameter of a resource. */
+    private static List<String> references(JsonNode resource, String parameter) {
+        List<JsonNode> holders = new ArrayList<>();
+        if ("actor".equals(parameter)) {
+            resource.path("participant").forEach(participant -> holders.add(participant.path("actor")));
+        } else {
+            holders.add(resource.path(parameter));
+        }
+        List<String> references = new ArrayList<>();
+        for (JsonNode holder : holders) {
+            String reference = holder.path("reference").asText(null);
+            if (reference != null) {
+                String[] parts = reference.split("/");
+                if (parts.length >= 2) {
+                    references.add(parts[parts.length - 2] + "/" + parts[parts.length - 1]);
+                }
+            }
+        }
+        return references;
+    }
+
+    private static ObjectNode subset(ObjectNode resource, Set<String> elements) {
+        if (elements.isEmpty()) {
+            return resource;
+        }
+        ObjectNode subset = JSON.createObjectNode();
+        resource.fields().forEachRemaining(field -> {
+            String name = field.getKey();
+            if ("resourceType".equals(name) || "id".equals(name) || "meta".equals(name) || elements.contains(name)) {
+                subset.set(name, field.getValue());
+            }
+        });
+        return subset;
+    }
+
+    private void addEntry(ArrayNode entries, ObjectNode resource, String mode) {
+        ObjectNode entry = entries.addObject();
+        entry.put("fullUrl", baseUrl() + resource.path("resourceType").asText() + "/" + resource.path("id").asText());
+        entry.set("resource", resource);
+        entry.putObject("search").put("mode", mode);
+    }
+
+    private static ObjectNode capabilityStatement() {
+        ObjectNode capability = JSON.createObjectNode();
+        capability.put("resourceType", "CapabilityStatement");
+        capability.put("status", "active");
+        capability.put("kind", "instance");
+        capability.put("fhirVersion", "5.0.0");
+        capability.putArray("format").add("json");
+        return capability;
+    }
+
+    private static ObjectNode outcome(String message) {
+        ObjectNode outcome = JSON.createObjectNode();
+        outcome.put("resourceType", "OperationOutcome");
+        outcome.putArray("issue").addObject()
+                .put("severity", "error")
+                .put("code", "exception")
+                .put("diagnostics", message);
+        return outcome;
+    }
+
+    private static Map<String, List<String>> parseQuery(String rawQuery) {
+        Map<String, List<String>> query = new LinkedHashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals < 0 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals < 0 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            query.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return query;
+    }
+
+    private static void respond(HttpExchange exchange, int status, JsonNode body) throws IOException {
+        byte[] bytes = JSON.writeValueAsBytes(body);
+        exchange.getResponseHeaders().add("Content-Type", "application/fhir+json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.hl7.fhir.r5.model.Bundle;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+
+/**
+ * Compares full HAPI parsing against the lean streaming reader on the
+ * {@code resources/FHIRResources/Bundle.json} fixture. Excluded from the
+ * default build; run with {@code mvn test -Pbenchmark}.
+ */
+@Tag("benchmark")
+class LeanAppointmentReaderBenchmarkTest {
+
+    private static final String SERVER = "http://localhost:8888/fhir/";
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+
+    @Test
+    void compareFullAndLeanResolution() throws Exception {
+        byte[] json = Files.readAllBytes(LeanAppointmentReaderTest.FIXTURE);
+        IParser parser = FhirContext.forR5Cached().newJsonParser();
+
+        Callable<Map<String, ResolvedAppointment>> full = () -> {
+            Bundle bundle = parser.parseResource(Bundle.class,
+                    new InputStreamReader(new ByteArrayInputStream(json), StandardCharsets.UTF_8));
+            return AppointmentDAOService.resolveEntries(SERVER, bundle.getEntry());
+        };
+        Callable<Map<String, ResolvedAppointment>> lean = () -> {
+            LeanAppointmentReader reader = new LeanAppointmentReader();
+            reader.readPage(new ByteArrayInputStream(json));
+            return reader.resolve(SERVER);
+        };
+
+        double fullMicros = measure("full", full);
+        double leanMicros = measure("lean", lean);
+        System.out.printf("Bundle.json (%d bytes): full %.1f us/op, lean %.1f us/op (x%.1f)%n",
+                json.length, fullMicros, leanMicros, fullMicros / leanMicros);
+        assertEquals(full.call().keySet(), lean.call().keySet());
+    }
+
+    private static double measure(String name, Callable<Map<String, ResolvedAppointment>> resolution)
+            throws Exception {
+        int sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += resolution.call().size();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += resolution.call().size();
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(sink > 0, name + " resolved no appointments");
+        return elapsed / 1_000.0 / ITERATIONS;
+    }
+}
@@ -0,0 +1,121 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.hl7.fhir.r5.model.Appointment;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Patient;
+import org.hl7.fhir.r5.model.Practitioner;
+import org.hl7.fhir.r5.model.Reference;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+
+/**
+ * Checks that the streaming reader resolves appointments exactly as the full
+ * HAPI model does.
+ */
+class LeanAppointmentReaderTest {
+
+    static final Path FIXTURE = Path.of("resources", "FHIRResources", "Bundle.json");
+    private static final String SERVER = "http://localhost:8888/fhir/";
+
+    private static Map<String, ResolvedAppointment> readLean(String... pages) throws IOException {
+        LeanAppointmentReader reader = new LeanAppointmentReader();
+        for (String page : pages) {
+            reader.readPage(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)));
+        }
+        return reader.resolve(SERVER);
+    }
+
+    private static Map<String, ResolvedAppointment> readFull(String json) {
+        Bundle bundle = FhirContext.forR5Cached().newJsonParser().parseResource(Bundle.class, json);
+        return AppointmentDAOService.resolveEntries(SERVER, bundle.getEntry());
+    }
+
+    private static void assertSameResolution(Map<String, ResolvedAppointment> expected,
+            Map<String, ResolvedAppointment> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((id, appointment) -> {
+            ResolvedAppointment lean = actual.get(id);
+            assertEquals(appointment.toDTO().getPatient(), lean.toDTO().getPatient());
+            assertEquals(appointment.toDTO().getPractitioner(), lean.toDTO().getPractitioner());
+            assertEquals(appointment.getVersions(), lean.getVersions());
+        });
+    }
+
+    @Test
+    void testFixtureBundleMatchesFullModel() throws IOException {
+        String json = Files.readString(FIXTURE);
+
+        Map<String, ResolvedAppointment> lean = readLean(json);
+
+        assertSameResolution(readFull(json), lean);
+        ResolvedAppointment appointment = lean.values().iterator().next();
+        assertEquals("Chalmers, Peter", appointment.toDTO().getPatient());
+        assertEquals("doctorWho", appointment.toDTO().getPractitioner());
+    }
+
+    @Test
+    void testReaderCountsEntriesAndBytes() throws IOException {
+        byte[] json = Files.readAllBytes(FIXTURE);
+        LeanAppointmentReader reader = new LeanAppointmentReader();
+
+        reader.readPage(new ByteArrayInputStream(json));
+
+        Bundle bundle = FhirContext.forR5Cached().newJsonParser().parseResource(Bundle.class, new String(json,
+                StandardCharsets.UTF_8));
+        assertEquals(bundle.getEntry().size(), reader.entriesRead());
+        assertTrue(reader.bytesRead() > json.length - 8 && reader.bytesRead() <= json.length,
+                "Byte count must cover the whole JSON document");
+    }
+
+    @Test
+    void testPagedSearchBundleMatchesFullModel() throws IOException {
+        Appointment appointment = new Appointment();
+        appointment.setId("Appointment/7/_history/2");
+        appointment.setSubject(new Reference("Patient/2"));
+        appointment.addParticipant().setActor(new Reference(SERVER + "Practitioner/3"));
+        Patient patient = new Patient();
+        patient.setId("Patient/2/_history/5");
+        patient.addName().setFamily("Chalmers").addGiven("Peter").addGiven("James");
+        Practitioner practitioner = new Practitioner();
+        practitioner.setId("Practitioner/3/_history/1");
+        practitioner.addName().setFamily("Careful");
+        practitioner.addIdentifier().setSystem("KOGITO").setValue("doctorWho");
+
+        Bundle first = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+        first.addLink().setRelation(Bundle.LinkRelationTypes.NEXT).setUrl(SERVER + "?page=2");
+        first.addEntry().setFullUrl(SERVER + "Appointment/7").setResource(appointment);
+        first.addEntry().setFullUrl(SERVER + "Patient/2").setResource(patient);
+        Bundle second = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+        second.addEntry().setFullUrl(SERVER + "Practitioner/3").setResource(practitioner);
+
+        FhirContext fhirContext = FhirContext.forR5Cached();
+        String firstJson = fhirContext.newJsonParser().encodeResourceToString(first);
+        String secondJson = fhirContext.newJsonParser().encodeResourceToString(second);
+        LeanAppointmentReader reader = new LeanAppointmentReader();
+        assertEquals(SERVER + "?page=2",
+                reader.readPage(new ByteArrayInputStream(firstJson.getBytes(StandardCharsets.UTF_8))));
+
+        Bundle merged = fhirContext.newJsonParser().parseResource(Bundle.class, firstJson);
+        merged.getEntry().addAll(fhirContext.newJsonParser().parseResource(Bundle.class, secondJson).getEntry());
+        Map<String, ResolvedAppointment> lean = readLean(firstJson, secondJson);
+
+        assertSameResolution(AppointmentDAOService.resolveEntries(SERVER, merged.getEntry()), lean);
+        assertEquals("doctorWho", lean.get("7").toDTO().getPractitioner());
+        assertEquals(Map.of("Appointment/7", "2", "Patient/2", "5", "Practitioner/3", "1"), lean.get("7").getVersions());
+    }
+
+    @Test
+    void testNonBundlePayloadIsRejected() {
+        assertThrows(IOException.class, () -> readLean("{\"resourceType\":\"OperationOutcome\"}"));
+    }
+}
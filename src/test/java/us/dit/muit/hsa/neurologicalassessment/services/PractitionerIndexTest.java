@@ -0,0 +1,127 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.hl7.fhir.r5.model.Appointment;
+import org.hl7.fhir.r5.model.Bundle;
+import org.hl7.fhir.r5.model.Bundle.BundleEntryComponent;
+import org.hl7.fhir.r5.model.Patient;
+import org.hl7.fhir.r5.model.Practitioner;
+import org.hl7.fhir.r5.model.Reference;
+import org.junit.jupiter.api.Test;
+
+import ca.uhn.fhir.context.FhirContext;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.FhirProperties;
+
+/**
+ * Unit tests for the practitioner index, applying preload and history pages
+ * directly so that no FHIR server is needed.
+ */
+class PractitionerIndexTest {
+
+    private static final String SERVER = "http://localhost:8888/fhir/";
+
+    private static PractitionerIndex createIndex(Duration maxLag) {
+        FhirProperties properties = new FhirProperties();
+        properties.getPractitionerIndex().setEnabled(true);
+        properties.getPractitionerIndex().setServers(List.of(SERVER));
+        properties.getPractitionerIndex().setMaxLag(maxLag);
+        return new PractitionerIndex(FhirClientRegistry.createDefault(), properties, new SimpleMeterRegistry());
+    }
+
+    private static Practitioner practitioner(String id, String kogitoId) {
+        Practitioner practitioner = new Practitioner();
+        practitioner.setId(id);
+        practitioner.addName().setFamily("Careful");
+        if (kogitoId != null) {
+            practitioner.addIdentifier().setSystem("kogito").setValue(kogitoId);
+        }
+        return practitioner;
+    }
+
+    private static PractitionerIndex preloadedIndex() {
+        PractitionerIndex index = createIndex(Duration.ofMinutes(10));
+        Bundle preload = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+        preload.addEntry().setResource(practitioner("Practitioner/3/_history/1", "doctorWho"));
+        preload.addEntry().setResource(practitioner("Practitioner/4/_history/1", null));
+        index.apply(SERVER, preload.getEntry(), false);
+        index.synced(SERVER, Instant.now());
+        return index;
+    }
+
+    @Test
+    void testHistoryAppliesNewestVersionAndDeletes() {
+        PractitionerIndex index = preloadedIndex();
+        assertEquals(2, index.size());
+        assertEquals(LeanAppointmentReader.UNKNOWN_PRACTITIONER,
+                index.resolver(SERVER).apply("Practitioner/4").getPractitionerId());
+
+        // _history devuelve primero la versión más reciente
+        Bundle history = new Bundle().setType(Bundle.BundleType.HISTORY);
+        history.addEntry().setResource(practitioner("Practitioner/3/_history/3", "doctorNo"))
+                .getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Practitioner/3");
+        history.addEntry().setResource(practitioner("Practitioner/3/_history/2", "doctorOld"))
+                .getRequest().setMethod(Bundle.HTTPVerb.PUT).setUrl("Practitioner/3");
+        history.addEntry().getRequest().setMethod(Bundle.HTTPVerb.DELETE).setUrl("Practitioner/4/_history/2");
+        index.apply(SERVER, history.getEntry(), true);
+
+        assertEquals(1, index.size());
+        PractitionerIndex.Identity identity = index.resolver(SERVER).apply("Practitioner/3");
+        assertEquals("doctorNo", identity.getPractitionerId());
+        assertEquals("3", identity.getVersionId());
+    }
+
+    @Test
+    void testResolverUnavailableUntilSyncedOrWhenStale() {
+        assertNull(createIndex(Duration.ofMinutes(10)).resolver(SERVER), "Cold index must not be used");
+        assertNull(preloadedIndex().resolver("http://other:8080/fhir/"), "Servers not indexed must include practitioners");
+
+        PractitionerIndex stale = createIndex(Duration.ZERO);
+        stale.synced(SERVER, Instant.now());
+        assertNull(stale.resolver(SERVER), "An index older than max-lag must not be used");
+    }
+
+    @Test
+    void testAppointmentsResolvePractitionerFromIndex() throws IOException {
+        Appointment appointment = new Appointment();
+        appointment.setId("Appointment/7/_history/2");
+        appointment.setSubject(new Reference("Patient/2"));
+        appointment.addParticipant().setActor(new Reference("Patient/2"));
+        appointment.addParticipant().setActor(new Reference(SERVER + "Practitioner/3"));
+        Patient patient = new Patient();
+        patient.setId("Patient/2/_history/5");
+        patient.addName().setFamily("Chalmers").addGiven("Peter");
+
+        // Búsqueda con _include=Appointment:actor:Patient: el practitioner no viene en el Bundle
+        Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+        bundle.addEntry().setFullUrl(SERVER + "Appointment/7").setResource(appointment);
+        bundle.addEntry().setFullUrl(SERVER + "Patient/2").setResource(patient);
+        List<BundleEntryComponent> entries = bundle.getEntry();
+        Function<String, PractitionerIndex.Identity> practitioners = preloadedIndex().resolver(SERVER);
+
+        ResolvedAppointment full = AppointmentDAOService.resolveEntries(SERVER, entries, practitioners).get("7");
+        LeanAppointmentReader reader = new LeanAppointmentReader();
+        String json = FhirContext.forR5Cached().newJsonParser().encodeResourceToString(bundle);
+        reader.readPage(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        ResolvedAppointment lean = reader.resolve(SERVER, practitioners).get("7");
+
+        Map<String, String> versions = Map.of("Appointment/7", "2", "Patient/2", "5", "Practitioner/3", "1");
+        for (ResolvedAppointment resolved : List.of(full, lean)) {
+            assertEquals("doctorWho", resolved.toDTO().getPractitioner());
+            assertEquals("Chalmers, Peter", resolved.toDTO().getPatient());
+            assertEquals(versions, resolved.getVersions());
+        }
+        assertNull(AppointmentDAOService.resolveEntries(SERVER, entries).get("7").toDTO().getPractitioner(),
+                "Without the index a missing practitioner stays unresolved");
+    }
+}
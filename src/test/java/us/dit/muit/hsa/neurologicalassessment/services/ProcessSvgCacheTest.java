@@ -0,0 +1,249 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import org.jbpm.ruleflow.core.RuleFlowProcess;
+import org.jbpm.ruleflow.instance.RuleFlowProcessInstance;
+import org.jbpm.workflow.core.node.ActionNode;
+import org.junit.jupiter.api.Test;
+import org.kie.api.event.process.ProcessNodeLeftEvent;
+import org.kie.api.event.process.ProcessNodeTriggeredEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.internal.process.runtime.KogitoNodeInstance;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstanceReadMode;
+import org.kie.kogito.process.ProcessInstances;
+import org.kie.kogito.process.Processes;
+import org.kie.kogito.process.impl.AbstractProcessInstance;
+import org.kie.kogito.svg.ProcessSvgService;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.NodeStateOverlay;
+
+/**
+ * Unit tests for the process and instance SVG cache and the node-state
+ * overlay.
+ */
+class ProcessSvgCacheTest {
+
+    private static final String PROCESS_ID = "neurologicalassessment.assessment";
+    /** User task in assessment.bpmn, waiting for the DN4 questionnaire. */
+    private static final String USER_TASK = "_5DC23A05-EA2B-42D9-A75F-A293C02B5775";
+    /** Task that runs before it. */
+    private static final String PREVIOUS_TASK = "_0BBAD683-A612-4653-9EB3-22D2568180AD";
+
+    private final Processes processes = mock(Processes.class);
+    private final ProcessSvgService service = mock(ProcessSvgService.class);
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ProcessSvgCache cache = new ProcessSvgCache(() -> processes, () -> service,
+            new AssessmentProperties(), registry);
+
+    ProcessSvgCacheTest() {
+        when(processes.processIds()).thenReturn(List.of(PROCESS_ID));
+        when(service.getProcessSvg(PROCESS_ID)).thenReturn(Optional.of("<svg id='definition'/>"));
+    }
+
+    private static ProcessNodeTriggeredEvent nodeTriggered(String instanceId) {
+        ProcessInstance instance = mock(ProcessInstance.class);
+        when(instance.getId()).thenReturn(instanceId);
+        ProcessNodeTriggeredEvent event = mock(ProcessNodeTriggeredEvent.class);
+        when(event.getProcessInstance()).thenReturn(instance);
+        return event;
+    }
+
+    private static ProcessNodeLeftEvent nodeLeft(String instanceId) {
+        ProcessInstance instance = mock(ProcessInstance.class);
+        when(instance.getId()).thenReturn(instanceId);
+        when(instance.getProcessId()).thenReturn(PROCESS_ID);
+        ProcessNodeLeftEvent event = mock(ProcessNodeLeftEvent.class);
+        when(event.getProcessInstance()).thenReturn(instance);
+        return event;
+    }
+
+    private static String gunzip(byte[] gzip) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    void testDefinitionRenderedOnceAndFoundByAlias() {
+        cache.start();
+
+        assertEquals(Optional.of(PROCESS_ID), cache.resolve("assessment"));
+        assertEquals("<svg id='definition'/>", cache.processSvg("assessment").orElseThrow().text());
+        assertSame(cache.processSvg("assessment").orElseThrow(), cache.processSvg(PROCESS_ID).orElseThrow());
+        assertEquals(Optional.empty(), cache.resolve("unknown"));
+        verify(service, times(1)).getProcessSvg(PROCESS_ID);
+    }
+
+    @Test
+    void testInstanceSvgCachedUntilInstanceMoves() throws IOException {
+        instances(instance("i1", ProcessInstance.STATE_ACTIVE));
+
+        assertNull(cache.cachedInstanceSvg(PROCESS_ID, "i1"));
+        ProcessSvgCache.Svg rendered = cache.renderInstanceSvg(PROCESS_ID, "i1");
+        // No node to mark: the definition SVG as is
+        assertEquals("<svg id='definition'/>", rendered.text());
+        assertSame(rendered, cache.cachedInstanceSvg(PROCESS_ID, "i1"));
+        // Compressed once per version, with its own strong ETag
+        assertSame(rendered.gzip(), rendered.gzip());
+        assertEquals("<svg id='definition'/>", gunzip(rendered.gzip()));
+        assertNotEquals(rendered.etag(false), rendered.etag(true));
+
+        cache.afterNodeLeft(nodeLeft("i1"));
+        assertNull(cache.cachedInstanceSvg(PROCESS_ID, "i1"));
+
+        assertEquals(1.0, registry.get("assessment.svg.cache.requests").tag("result", "hit").counter().count());
+        assertEquals(2.0, registry.get("assessment.svg.cache.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void testSvgRenderedWhileInstanceMovesIsNotCached() {
+        ProcessInstances instances = instances(instance("i1", ProcessInstance.STATE_ACTIVE));
+        when(instances.findById("i1", ProcessInstanceReadMode.READ_ONLY)).thenAnswer(invocation -> {
+            cache.afterNodeLeft(nodeLeft("i1"));
+            return Optional.of(instance("i1", ProcessInstance.STATE_ACTIVE));
+        });
+
+        assertNotNull(cache.renderInstanceSvg(PROCESS_ID, "i1"));
+        assertNull(cache.cachedInstanceSvg(PROCESS_ID, "i1"));
+    }
+
+    @Test
+    void testInstanceSvgFollowsStoreNotLaggingSvgService() throws IOException {
+        String definition = new String(getClass().getResourceAsStream("/META-INF/processSVG/assessment.svg")
+                .readAllBytes(), StandardCharsets.UTF_8);
+        when(service.getProcessSvg(PROCESS_ID)).thenReturn(Optional.of(definition));
+        // The Data Index behind the SVG service has not seen the instance reach the user task yet
+        when(service.getProcessInstanceSvg(anyString(), anyString(), anyString()))
+                .thenReturn(Optional.of("<svg id='data-index-lagging'/>"));
+        instances(waitingInUserTask("i1"));
+        cache.afterNodeTriggered(nodeTriggered("i1"));
+
+        ProcessSvgCache.Svg svg = cache.renderInstanceSvg(PROCESS_ID, "i1");
+
+        assertEquals("#FF0000", borderStroke(svg, USER_TASK));
+        // The engine records completed nodes by internal id; the SVG is marked by BPMN id
+        assertEquals("#030303", borderStroke(svg, PREVIOUS_TASK));
+        assertSame(svg, cache.cachedInstanceSvg(PROCESS_ID, "i1"));
+        verify(service, never()).getProcessInstanceSvg(anyString(), anyString(), anyString());
+        assertEquals(List.of(PREVIOUS_TASK), cache.overlay(PROCESS_ID, "i1").orElseThrow().completed());
+    }
+
+    /** Store state: the previous task completed and the user task active. */
+    @SuppressWarnings("rawtypes")
+    private static org.kie.kogito.process.ProcessInstance waitingInUserTask(String id) {
+        ActionNode previous = new ActionNode();
+        previous.setId(2);
+        previous.setMetaData("UniqueId", PREVIOUS_TASK);
+        RuleFlowProcess definition = new RuleFlowProcess();
+        definition.setId(PROCESS_ID);
+        definition.addNode(previous);
+        RuleFlowProcessInstance internal = new RuleFlowProcessInstance();
+        internal.setProcess(definition);
+        internal.addCompletedNodeId(previous.getUniqueId());
+
+        KogitoNodeInstance waiting = mock(KogitoNodeInstance.class);
+        when(waiting.getNodeDefinitionId()).thenReturn(USER_TASK);
+        AbstractProcessInstance instance = mock(AbstractProcessInstance.class);
+        when(instance.id()).thenReturn(id);
+        when(instance.status()).thenReturn(ProcessInstance.STATE_ACTIVE);
+        when(instance.findNodes(any())).thenReturn(List.of(waiting));
+        when(instance.internalGetProcessInstance()).thenReturn(internal);
+        return instance;
+    }
+
+    private static String borderStroke(ProcessSvgCache.Svg svg, String nodeId) {
+        Matcher matcher = Pattern.compile("id=\"" + Pattern.quote(nodeId + "?shapeType=BORDER")
+                + "[^\"]*\"[^>]*? stroke=\"([^\"]*)\"").matcher(svg.text());
+        assertTrue(matcher.find(), nodeId);
+        return matcher.group(1);
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void testOverlayListsActiveNodesAndVersionFollowsNodeEvents() {
+        KogitoNodeInstance node = mock(KogitoNodeInstance.class);
+        when(node.getNodeDefinitionId()).thenReturn("_0BBAD683");
+        when(node.getTriggerTime()).thenReturn(new Date(1_000));
+        org.kie.kogito.process.ProcessInstance instance = mock(org.kie.kogito.process.ProcessInstance.class);
+        when(instance.status()).thenReturn(ProcessInstance.STATE_ACTIVE);
+        when(instance.findNodes(any())).thenReturn(List.of(node));
+        ProcessInstances instances = mock(ProcessInstances.class);
+        when(instances.findById("i1", ProcessInstanceReadMode.READ_ONLY)).thenReturn(Optional.of(instance));
+        Process process = mock(Process.class);
+        when(process.instances()).thenReturn(instances);
+        when(processes.processById(PROCESS_ID)).thenReturn(process);
+
+        NodeStateOverlay overlay = cache.overlay(PROCESS_ID, "i1").orElseThrow();
+        assertEquals("active", overlay.state());
+        assertEquals(List.of(new NodeStateOverlay.ActiveNode("_0BBAD683", new Date(1_000))), overlay.active());
+        assertEquals(Optional.empty(), cache.overlay(PROCESS_ID, "missing"));
+
+        long version = cache.instanceVersion("i1");
+        assertEquals(version, cache.instanceVersion("i1"));
+        cache.afterNodeLeft(nodeLeft("i1"));
+        assertNotEquals(version, cache.instanceVersion("i1"));
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void testBatchOverlaysReadStoreOnceAndFilterByState() {
+        org.kie.kogito.process.ProcessInstance active = instance("i1", ProcessInstance.STATE_ACTIVE);
+        org.kie.kogito.process.ProcessInstance suspended = instance("i2", ProcessInstance.STATE_SUSPENDED);
+        ProcessInstances instances = mock(ProcessInstances.class);
+        when(instances.stream(ProcessInstanceReadMode.READ_ONLY))
+                .thenAnswer(invocation -> Stream.of(active, suspended));
+        when(instances.findById("i2", ProcessInstanceReadMode.READ_ONLY)).thenReturn(Optional.of(suspended));
+        Process process = mock(Process.class);
+        when(process.instances()).thenReturn(instances);
+        when(processes.processById(PROCESS_ID)).thenReturn(process);
+
+        assertEquals(List.of("i1"), cache.overlays(PROCESS_ID, null, "active")
+                .map(NodeStateOverlay::processInstanceId).collect(Collectors.toList()));
+        assertEquals(List.of("i2"), cache.overlays(PROCESS_ID, List.of("i2", "missing"), null)
+                .map(NodeStateOverlay::processInstanceId).collect(Collectors.toList()));
+
+        // Many ids: one pass over the store instead of one lookup per id
+        List<String> many = IntStream.range(0, 50).mapToObj(i -> "i" + i).collect(Collectors.toList());
+        assertEquals(2, cache.overlays(PROCESS_ID, many, null).count());
+        verify(instances, times(2)).stream(ProcessInstanceReadMode.READ_ONLY);
+        verify(instances, never()).findById("i3", ProcessInstanceReadMode.READ_ONLY);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private ProcessInstances instances(org.kie.kogito.process.ProcessInstance instance) {
+        ProcessInstances instances = mock(ProcessInstances.class);
+        when(instances.findById(instance.id(), ProcessInstanceReadMode.READ_ONLY)).thenReturn(Optional.of(instance));
+        Process process = mock(Process.class);
+        when(process.instances()).thenReturn(instances);
+        when(processes.processById(PROCESS_ID)).thenReturn(process);
+        return instances;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static org.kie.kogito.process.ProcessInstance instance(String id, int state) {
+        org.kie.kogito.process.ProcessInstance instance = mock(org.kie.kogito.process.ProcessInstance.class);
+        when(instance.id()).thenReturn(id);
+        when(instance.status()).thenReturn(state);
+        when(instance.findNodes(any())).thenReturn(List.of());
+        return instance;
+    }
+}
@@ -0,0 +1,139 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstance;
+import org.kie.kogito.process.ProcessInstances;
+import org.kie.kogito.process.WorkItem;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.DN4;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskCompletion;
+
+/**
+ * Unit tests for single and bulk DN4 task completion against mocked process
+ * instances.
+ */
+class TaskCompletionServiceTest {
+
+    @SuppressWarnings("unchecked")
+    private final Process<Object> process = mock(Process.class);
+    @SuppressWarnings("unchecked")
+    private final ProcessInstances<Object> instances = mock(ProcessInstances.class);
+    private final TaskInbox inbox = new TaskInbox(() -> null, new AssessmentProperties(), new SimpleMeterRegistry());
+    private final TaskCompletionService service = new TaskCompletionService(() -> process, inbox,
+            new AssessmentProperties());
+
+    TaskCompletionServiceTest() {
+        when(process.instances()).thenReturn(instances);
+        when(instances.findById(anyString())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() {
+        service.shutdown();
+    }
+
+    @SuppressWarnings("unchecked")
+    private ProcessInstance<Object> instance(String id, Map<String, Map<String, Object>> tasks) {
+        ProcessInstance<Object> instance = mock(ProcessInstance.class);
+        List<WorkItem> workItems = new ArrayList<>();
+        tasks.forEach((taskId, assignment) -> {
+            WorkItem workItem = mock(WorkItem.class);
+            when(workItem.getId()).thenReturn(taskId);
+            when(workItem.getName()).thenReturn("painAssessment");
+            when(workItem.getParameters()).thenReturn(assignment);
+            workItems.add(workItem);
+        });
+        when(instance.workItems()).thenReturn(workItems);
+        when(instances.findById(id)).thenReturn(Optional.of(instance));
+        return instance;
+    }
+
+    @Test
+    void testSingleCompletionChecksAssignment() {
+        ProcessInstance<Object> p1 = instance("p1", Map.of(
+                "w1", Map.of("ActorId", "drNo"),
+                "w2", Map.of("GroupId", "neurology")));
+
+        assertEquals(403, service.complete("p1", "w1", new DN4(), "doctorWho", List.of("neurology")).getStatus());
+        assertEquals(404, service.complete("p1", "missing", new DN4(), "doctorWho", List.of()).getStatus());
+        assertEquals(404, service.complete("p9", "w1", new DN4(), "doctorWho", List.of()).getStatus());
+
+        TaskCompletionService.Outcome outcome = service.complete("p1", "w2", new DN4(), "doctorWho",
+                List.of("neurology"));
+        assertTrue(outcome.isCompleted());
+        assertEquals("doctorWho", outcome.getBody().get("completedBy"));
+        verify(p1).completeWorkItem(eq("w2"), anyMap());
+        verify(p1, never()).completeWorkItem(eq("w1"), anyMap());
+    }
+
+    @Test
+    void testBulkKeepsOrderAndSerializesEachInstance() {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger overlaps = new AtomicInteger();
+        List<String> p1Order = new ArrayList<>();
+        ProcessInstance<Object> p1 = instance("p1", Map.of(
+                "w1", Map.of("ActorId", "doctorWho"),
+                "w3", Map.of("ActorId", "doctorWho")));
+        doAnswer(invocation -> {
+            if (running.incrementAndGet() > 1) {
+                overlaps.incrementAndGet();
+            }
+            Thread.sleep(50);
+            synchronized (p1Order) {
+                p1Order.add(invocation.getArgument(0));
+            }
+            running.decrementAndGet();
+            return null;
+        }).when(p1).completeWorkItem(anyString(), anyMap());
+        instance("p2", Map.of("w2", Map.of("ActorId", "someoneElse")));
+
+        List<TaskCompletion> items = Arrays.asList(
+                new TaskCompletion("p1", "w1", new DN4()),
+                new TaskCompletion("p2", "w2", new DN4()),
+                new TaskCompletion("p1", "w3", new DN4()),
+                new TaskCompletion("p3", null, new DN4()));
+
+        List<Integer> statuses = service.completeAll(items, "doctorWho", List.of()).stream()
+                .map(TaskCompletionService.Outcome::getStatus)
+                .collect(Collectors.toList());
+
+        assertEquals(List.of(200, 403, 200, 400), statuses);
+        assertEquals(List.of("w1", "w3"), p1Order);
+        assertEquals(0, overlaps.get());
+        // One lookup per instance, however many of its tasks are in the batch
+        verify(instances, times(1)).findById("p1");
+        verify(instances, never()).findById("p3");
+    }
+
+    @Test
+    void testCompletionByTaskIdUsesTheInboxIndex() {
+        ProcessInstance<Object> p1 = instance("p1", Map.of("w1", Map.of("ActorId", "doctorWho")));
+        inbox.update(TaskInbox.Task.of("p1", "w1", "painAssessment", "active", "Ready",
+                Map.of("ActorId", "doctorWho"), new Date()));
+
+        assertEquals(403, service.complete("w1", new DN4(), "drNo", List.of()).getStatus());
+        assertEquals(404, service.complete("w9", new DN4(), "doctorWho", List.of()).getStatus());
+        assertTrue(service.complete("w1", new DN4(), "doctorWho", List.of()).isCompleted());
+
+        verify(p1).completeWorkItem(eq("w1"), anyMap());
+        // Resolved from the index: the instance work items were never scanned
+        verify(p1, never()).workItems();
+    }
+}
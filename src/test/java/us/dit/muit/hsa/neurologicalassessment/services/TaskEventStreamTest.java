@@ -0,0 +1,131 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+
+/**
+ * Unit tests for the task event stream, driving the inbox directly and
+ * capturing what each connection would receive.
+ */
+class TaskEventStreamTest {
+
+    private final AssessmentProperties properties = new AssessmentProperties();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final TaskInbox inbox = new TaskInbox(() -> null, properties, registry);
+    private TaskEventStream stream;
+
+    @AfterEach
+    void tearDown() {
+        if (stream != null) {
+            stream.shutdown();
+        }
+    }
+
+    /** Emitter that records the event names it is asked to send, optionally waiting on a gate first. */
+    private static class RecordingEmitter extends SseEmitter {
+        final BlockingQueue<String> events = new LinkedBlockingQueue<>();
+        final CountDownLatch gate;
+
+        RecordingEmitter(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            String text = builder.build().stream()
+                    .map(part -> String.valueOf(part.getData()))
+                    .collect(Collectors.joining());
+            for (String line : text.split("\n")) {
+                if (line.startsWith("event:")) {
+                    events.add(line.substring("event:".length()));
+                }
+            }
+        }
+
+        String next() throws InterruptedException {
+            return events.poll(5, TimeUnit.SECONDS);
+        }
+    }
+
+    private static TaskInbox.Task task(String id, String phase, String phaseStatus, Map<String, Object> assignment) {
+        return TaskInbox.Task.of("p1", id, "Pain Assessment", phase, phaseStatus, assignment, new Date(0));
+    }
+
+    @Test
+    void testEventsFollowAssignment() throws Exception {
+        stream = new TaskEventStream(inbox, properties, registry);
+        RecordingEmitter doctor = new RecordingEmitter(new CountDownLatch(0));
+        RecordingEmitter nurse = new RecordingEmitter(new CountDownLatch(0));
+        stream.subscribe("doctorWho", List.of("neurology"), doctor);
+        stream.subscribe("nurse", List.of("nursing"), nurse);
+
+        inbox.update(task("w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+        assertEquals(TaskEventStream.TASK_CREATED, doctor.next());
+
+        // Reassigned to the nurse: it leaves one list and enters the other
+        inbox.update(task("w1", "active", "Ready", Map.of("ActorId", "nurse")));
+        assertEquals(TaskEventStream.TASK_COMPLETED, doctor.next());
+        assertEquals(TaskEventStream.TASK_CREATED, nurse.next());
+
+        inbox.update(task("w1", "complete", "Completed", Map.of("ActorId", "nurse")));
+        assertEquals(TaskEventStream.TASK_COMPLETED, nurse.next());
+
+        assertNull(doctor.events.poll(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, stream.subscriberCount());
+    }
+
+    @Test
+    void testSlowClientGetsResyncInsteadOfBacklog() throws Exception {
+        properties.getStream().setQueueCapacity(3);
+        stream = new TaskEventStream(inbox, properties, registry);
+        CountDownLatch gate = new CountDownLatch(1);
+        RecordingEmitter slow = new RecordingEmitter(gate);
+        stream.subscribe("doctorWho", List.of(), slow);
+
+        for (int i = 0; i < 10; i++) {
+            inbox.update(task("w" + i, "active", "Ready", Map.of("ActorId", "doctorWho")));
+        }
+        gate.countDown();
+
+        List<String> received = new ArrayList<>();
+        String event;
+        while ((event = slow.events.poll(500, TimeUnit.MILLISECONDS)) != null) {
+            received.add(event);
+        }
+        // The backlog was dropped: far fewer events than changes, and a resync among them
+        assertTrue(received.contains(TaskEventStream.RESYNC), received.toString());
+        assertTrue(received.size() <= 3, received.toString());
+        assertTrue(registry.counter("assessment.stream.overflows").count() >= 1);
+    }
+
+    @Test
+    void testSubscribersAreCapped() {
+        properties.getStream().setMaxSubscribers(1);
+        stream = new TaskEventStream(inbox, properties, registry);
+
+        assertNotNull(stream.subscribe("doctorWho", List.of(), new RecordingEmitter(new CountDownLatch(0))));
+        assertNull(stream.subscribe("nurse", List.of(), new RecordingEmitter(new CountDownLatch(0))));
+    }
+}
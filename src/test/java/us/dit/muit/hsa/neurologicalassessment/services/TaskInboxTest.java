@@ -0,0 +1,145 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.TaskSummary;
+
+/**
+ * Unit tests for the task inbox index, feeding task snapshots directly so that
+ * no Kogito runtime is needed.
+ */
+class TaskInboxTest {
+
+    private final TaskInbox inbox = new TaskInbox(() -> null, new AssessmentProperties(), new SimpleMeterRegistry());
+
+    private static TaskInbox.Task task(String processInstanceId, String id, String phase, String phaseStatus,
+            Map<String, Object> assignment) {
+        return task(processInstanceId, id, phase, phaseStatus, assignment, 0);
+    }
+
+    private static TaskInbox.Task task(String processInstanceId, String id, String phase, String phaseStatus,
+            Map<String, Object> assignment, long created) {
+        return TaskInbox.Task.of(processInstanceId, id, "Pain Assessment", phase, phaseStatus, assignment,
+                new Date(created));
+    }
+
+    private List<String> idsFor(String userName, String... roles) {
+        return inbox.tasksFor(userName, List.of(roles)).stream()
+                .map(TaskInbox.Task::getId)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testTasksIndexedByActorAndGroup() {
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+        inbox.update(task("p2", "w2", "active", "Ready", Map.of("GroupId", "neurology")));
+        inbox.update(task("p3", "w3", "active", "Ready", Map.of("ActorId", "someoneElse")));
+        // Service tasks carry no assignment and never reach the inbox
+        inbox.update(task("p3", "w4", "active", "Ready", Collections.emptyMap()));
+
+        assertEquals(List.of("w1", "w2"), idsFor("doctorWho", "neurology"));
+        assertEquals(List.of("w2"), idsFor("nurse", "neurology"));
+        assertEquals(3, inbox.size());
+    }
+
+    @Test
+    void testTransitionsMoveAndRemoveTasks() {
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+
+        // Reassigned: the old actor index entry must go away
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "drNo")));
+        assertEquals(List.of(), idsFor("doctorWho"));
+        assertEquals(List.of("w1"), idsFor("drNo"));
+
+        inbox.update(task("p1", "w1", "complete", "Completed", Map.of("ActorId", "drNo")));
+        assertEquals(List.of(), idsFor("drNo"));
+        assertEquals(0, inbox.size());
+    }
+
+    @Test
+    void testFinishedInstanceDropsItsTasks() {
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+        inbox.update(task("p1", "w2", "active", "Ready", Map.of("GroupId", "neurology")));
+        inbox.update(task("p2", "w3", "active", "Ready", Map.of("ActorId", "doctorWho")));
+
+        inbox.replaceInstance("p1", Collections.emptyList());
+
+        assertEquals(List.of("w3"), idsFor("doctorWho", "neurology"));
+    }
+
+    @Test
+    void testPagesFollowCreationOrderAcrossActorAndGroup() {
+        inbox.update(task("p1", "w-c", "active", "Ready", Map.of("ActorId", "doctorWho"), 3000));
+        inbox.update(task("p2", "w-a", "active", "Ready", Map.of("GroupId", "neurology"), 1000));
+        inbox.update(task("p3", "w-b", "active", "Ready", Map.of("ActorId", "doctorWho", "GroupId", "neurology"),
+                2000));
+
+        Iterator<TaskInbox.Task> firstPage = inbox.tasksFor("doctorWho", List.of("neurology"), null);
+        assertEquals("w-a", firstPage.next().getId());
+        TaskInbox.Task last = firstPage.next();
+        assertEquals("w-b", last.getId());
+
+        // The cursor survives a round trip through its token and skips what was already read
+        TaskInbox.Cursor after = TaskInbox.Cursor.parse(last.cursor().token());
+        Iterator<TaskInbox.Task> secondPage = inbox.tasksFor("doctorWho", List.of("neurology"), after);
+        assertEquals("w-c", secondPage.next().getId());
+        assertFalse(secondPage.hasNext());
+
+        assertThrows(IllegalArgumentException.class, () -> TaskInbox.Cursor.parse("not a cursor"));
+    }
+
+    @Test
+    void testSummaryOnlyCarriesRequestedFields() throws Exception {
+        TaskInbox.Task task = task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho"));
+        ObjectMapper mapper = new ObjectMapper();
+
+        String lean = mapper.writeValueAsString(task.toSummary(TaskSummary.fields("id,name,processInstanceId")));
+        assertEquals("{\"id\":\"w1\",\"name\":\"Pain Assessment\",\"processInstanceId\":\"p1\"}", lean);
+
+        Map<?, ?> full = mapper.readValue(mapper.writeValueAsString(task.toSummary()), Map.class);
+        assertEquals(TaskSummary.FIELDS, List.copyOf(full.keySet()));
+        assertEquals(Map.of("ActorId", "doctorWho"), full.get("parameters"));
+
+        assertThrows(IllegalArgumentException.class, () -> TaskSummary.fields("id,secret"));
+    }
+
+    @Test
+    void testVersionsMoveOnlyWithRelevantChanges() {
+        assertEquals(0, inbox.versionFor("doctorWho", List.of("neurology")));
+
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+        long doctor = inbox.versionFor("doctorWho", List.of("neurology"));
+        long instance = inbox.instanceVersion("p1");
+        assertTrue(doctor > 0);
+        assertTrue(instance > 0);
+
+        // Re-reading the same task, or a change in somebody else's inbox, keeps the version
+        inbox.update(task("p1", "w1", "active", "Ready", Map.of("ActorId", "doctorWho")));
+        inbox.update(task("p2", "w2", "active", "Ready", Map.of("ActorId", "drNo")));
+        assertEquals(doctor, inbox.versionFor("doctorWho", List.of("neurology")));
+        assertEquals(instance, inbox.instanceVersion("p1"));
+
+        // A group task reaches the user through their role
+        inbox.update(task("p3", "w3", "active", "Ready", Map.of("GroupId", "neurology")));
+        long withGroup = inbox.versionFor("doctorWho", List.of("neurology"));
+        assertTrue(withGroup > doctor);
+        assertEquals(doctor, inbox.versionFor("doctorWho", List.of()));
+
+        inbox.update(task("p1", "w1", "complete", "Completed", Map.of("ActorId", "doctorWho")));
+        assertTrue(inbox.versionFor("doctorWho", List.of("neurology")) > withGroup);
+        assertEquals(0, inbox.instanceVersion("p1"));
+    }
+}
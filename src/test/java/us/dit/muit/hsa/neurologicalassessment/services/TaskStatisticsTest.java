@@ -0,0 +1,115 @@
+package us.dit.muit.hsa.neurologicalassessment.services;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.kie.api.event.process.ProcessCompletedEvent;
+import org.kie.api.event.process.ProcessStartedEvent;
+import org.kie.api.runtime.process.ProcessInstance;
+import org.kie.kogito.process.Process;
+import org.kie.kogito.process.ProcessInstances;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import us.dit.muit.hsa.neurologicalassessment.config.AssessmentProperties;
+import us.dit.muit.hsa.neurologicalassessment.entities.AssessmentStats;
+
+/**
+ * Unit tests for the event-maintained task and instance counters.
+ */
+class TaskStatisticsTest {
+
+    private final TaskInbox inbox = new TaskInbox(() -> null, new AssessmentProperties(), new SimpleMeterRegistry());
+    private final TaskStatistics statistics = new TaskStatistics(() -> null, inbox, new SimpleMeterRegistry());
+
+    private static TaskInbox.Task task(String id, String phase, Map<String, Object> assignment, long created) {
+        return TaskInbox.Task.of("p1", id, "Pain Assessment", phase, "Ready", assignment, new Date(created));
+    }
+
+    @Test
+    void testPendingCountsFollowInboxTransitions() {
+        inbox.update(task("w1", "active", Map.of("GroupId", "neurology"), 10_000));
+        inbox.update(task("w2", "active", Map.of("GroupId", "neurology"), 40_000));
+        inbox.update(task("w3", "active", Map.of("ActorId", "doctorWho"), 20_000));
+        // Reassigned from the group to a practitioner, then the oldest one is completed
+        inbox.update(task("w2", "active", Map.of("ActorId", "doctorWho"), 40_000));
+        inbox.update(task("w1", "complete", Map.of("GroupId", "neurology"), 10_000));
+
+        AssessmentStats stats = statistics.snapshot(100_000);
+
+        assertEquals(2, stats.pendingTasks());
+        assertFalse(stats.groups().containsKey("neurology"));
+        assertEquals(new AssessmentStats.Pending(2, 80L), stats.actors().get("doctorWho"));
+        assertEquals(80L, stats.oldestPendingAgeSeconds());
+    }
+
+    @Test
+    void testInstanceCountsFollowProcessEvents() {
+        statistics.start();
+        statistics.afterProcessStarted(started("p1"));
+        statistics.afterProcessStarted(started("p2"));
+        statistics.afterProcessStarted(started("p3"));
+        statistics.afterProcessCompleted(completed("p1", ProcessInstance.STATE_COMPLETED));
+        statistics.afterProcessCompleted(completed("p2", ProcessInstance.STATE_ABORTED));
+
+        AssessmentStats stats = statistics.snapshot(0);
+
+        assertEquals(Map.of("active", 1L, "completed", 1L, "aborted", 1L), stats.instances());
+        assertNull(stats.oldestPendingAgeSeconds());
+    }
+
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    void testEventsBeforeStartAreReconciledWithTheScan() {
+        Process<Object> process = mock(Process.class);
+        ProcessInstances<Object> instances = mock(ProcessInstances.class);
+        when(process.instances()).thenReturn(instances);
+        TaskStatistics statistics = new TaskStatistics(() -> (Process) process, inbox, new SimpleMeterRegistry());
+        // Started while the context was refreshing: p1 still runs, p2 has already finished
+        statistics.afterProcessStarted(started("p1"));
+        statistics.afterProcessStarted(started("p2"));
+        statistics.afterProcessCompleted(completed("p2", ProcessInstance.STATE_COMPLETED));
+        // p0 was persisted before the restart; p1 is found by the scan as well
+        when(instances.stream()).thenAnswer(call -> Stream.of(active("p0"), active("p1")));
+
+        statistics.start();
+        statistics.afterProcessStarted(started("p3"));
+        statistics.afterProcessCompleted(completed("p0", ProcessInstance.STATE_ABORTED));
+
+        assertEquals(Map.of("active", 2L, "completed", 1L, "aborted", 1L), statistics.snapshot(0).instances());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static org.kie.kogito.process.ProcessInstance<Object> active(String id) {
+        org.kie.kogito.process.ProcessInstance<Object> instance = mock(org.kie.kogito.process.ProcessInstance.class);
+        when(instance.id()).thenReturn(id);
+        when(instance.status()).thenReturn(org.kie.kogito.process.ProcessInstance.STATE_ACTIVE);
+        return instance;
+    }
+
+    private static ProcessInstance instance(String id, int state) {
+        ProcessInstance instance = mock(ProcessInstance.class);
+        when(instance.getId()).thenReturn(id);
+        when(instance.getProcessId()).thenReturn(TaskInbox.PROCESS_ID);
+        when(instance.getState()).thenReturn(state);
+        return instance;
+    }
+
+    private static ProcessStartedEvent started(String id) {
+        ProcessInstance instance = instance(id, ProcessInstance.STATE_ACTIVE);
+        ProcessStartedEvent event = mock(ProcessStartedEvent.class);
+        when(event.getProcessInstance()).thenReturn(instance);
+        return event;
+    }
+
+    private static ProcessCompletedEvent completed(String id, int state) {
+        ProcessInstance instance = instance(id, state);
+        ProcessCompletedEvent event = mock(ProcessCompletedEvent.class);
+        when(event.getProcessInstance()).thenReturn(instance);
+        return event;
+    }
+}